@@ -19,13 +19,24 @@
 package org.apache.maven.plugins.jarsigner;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.ResourceBundle;
 
@@ -37,9 +48,11 @@ import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.settings.Settings;
+import org.apache.maven.shared.jarsigner.DefaultJarSigner;
 import org.apache.maven.shared.jarsigner.JarSigner;
 import org.apache.maven.shared.jarsigner.JarSignerRequest;
 import org.apache.maven.shared.jarsigner.JarSignerUtil;
+import org.apache.maven.shared.jarsigner.JarSignerVerifyRequest;
 import org.apache.maven.shared.utils.ReaderFactory;
 import org.apache.maven.shared.utils.StringUtils;
 import org.apache.maven.shared.utils.cli.Commandline;
@@ -165,6 +178,31 @@ public abstract class AbstractJarsignerMojo extends AbstractMojo {
     @Parameter(property = "jarsigner.arguments")
     private String[] arguments;
 
+    /**
+     * Maximum number of jarsigner processes running at the same time, counted over all executions of this plugin in
+     * the Maven session. Limits the total load on the machine and on TSA servers in parallel builds
+     * ({@code mvn -T}), where every module otherwise uses its own {@code threadCount} threads. The requests to TSA
+     * servers of {@code deferTimestamping}, made without jarsigner, count as processes too. The value of the first
+     * execution using the limit is used for the whole session. Default value 0 means no limit.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.sessionForkLimit", defaultValue = "0")
+    private int sessionForkLimit;
+
+    /**
+     * File to write metrics of the execution to, in the Prometheus text exposition format, like the number of
+     * archives processed, the requests to each TSA server and their duration, and the retries. Meant for the textfile
+     * collector of the Prometheus node exporter, which reads the files with extension {@code .prom} of a directory.
+     * The file is replaced at the end of each execution, also if it fails, so use a file per module and execution.
+     * Archives signed in the background using {@code sessionQueue} are not included. No metrics are written if not
+     * set.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.metricsFile")
+    private File metricsFile;
+
     /**
      * Set to {@code true} to disable the plugin.
      */
@@ -265,6 +303,21 @@ public abstract class AbstractJarsignerMojo extends AbstractMojo {
     @Component(hint = "mng-4384")
     private SecDispatcher securityDispatcher;
 
+    /** The time a jarsigner process is given to terminate when abandoned, before it is killed */
+    private static final long PROCESS_DESTROY_GRACE_MILLIS = 5000;
+
+    /** The metrics of the execution, written to {@link #metricsFile} if set */
+    private final SigningMetrics metrics = new SigningMetrics();
+
+    /** The JarSigner used for processing, {@link #jarSigner} possibly limited by {@link #sessionForkLimit} */
+    private JarSigner limitedJarSigner;
+
+    /** The arguments to give jarsigner for every archive, or {@code null} if none, see {@link #prepareRequests()} */
+    private String[] additionalArguments;
+
+    /** The decrypted {@link #storepass}, see {@link #prepareRequests()} */
+    private String decryptedStorepass;
+
     @Override
     public final void execute() throws MojoExecutionException {
         if (this.skip) {
@@ -274,24 +327,57 @@ public abstract class AbstractJarsignerMojo extends AbstractMojo {
 
         validateParameters();
 
+        JarSigner trackingJarSigner = jarSigner;
+        if (jarSigner.getClass() == DefaultJarSigner.class) {
+            // Same JarSigner, but making sure the jarsigner processes do not outlive the execution
+            trackingJarSigner = new ProcessTrackingJarSigner(PROCESS_DESTROY_GRACE_MILLIS);
+        }
+
         Toolchain toolchain = getToolchain();
         if (toolchain != null) {
             getLog().info("Toolchain in maven-jarsigner-plugin: " + toolchain);
-            jarSigner.setToolchain(toolchain);
+            trackingJarSigner.setToolchain(toolchain);
+        }
+
+        limitedJarSigner = trackingJarSigner;
+        if (sessionForkLimit > 0) {
+            SessionForkLimiter forkLimiter = SessionScoped.computeIfAbsent(
+                    session, SessionForkLimiter.class, () -> new SessionForkLimiter(sessionForkLimit));
+            if (forkLimiter.getLimit() != sessionForkLimit) {
+                getLog().warn(getMessage("warnSessionForkLimitInUse", sessionForkLimit, forkLimiter.getLimit()));
+            }
+            limitedJarSigner = forkLimiter.limit(trackingJarSigner);
         }
 
+        prepareRequests();
+
         List<File> archives = findJarfiles();
-        processArchives(archives);
+        try {
+            processArchives(archives);
+        } finally {
+            writeMetrics();
+        }
         getLog().info(getMessage("processed", archives.size()));
     }
 
+    /** Writes the metrics to {@link #metricsFile}, if set. A failure to write them does not fail the build */
+    private void writeMetrics() {
+        if (metricsFile != null) {
+            try {
+                metrics.write(metricsFile);
+            } catch (IOException e) {
+                getLog().warn(getMessage("metricsFailure", metricsFile, e.getMessage()));
+            }
+        }
+    }
+
     /**
      * Finds all jar files, by looking at the Maven project and user configuration.
      *
      * @return a List of File objects
      * @throws MojoExecutionException if it was not possible to build a list of jar files
      */
-    private List<File> findJarfiles() throws MojoExecutionException {
+    protected List<File> findJarfiles() throws MojoExecutionException {
         if (this.archive != null) {
             // Only process this, but nothing more
             return Arrays.asList(this.archive);
@@ -384,6 +470,97 @@ public abstract class AbstractJarsignerMojo extends AbstractMojo {
         return storepass;
     }
 
+    /**
+     * Gets the keystore alias to use.
+     *
+     * @return the alias, or {@code null} if not configured
+     */
+    protected String getAlias() {
+        return alias;
+    }
+
+    /**
+     * Gets the proxy to use for connections made by the plugin itself (not by jarsigner), from the active proxy of the
+     * Maven settings.
+     *
+     * @param url the URL to connect to
+     * @return the proxy to use, {@link Proxy#NO_PROXY} if no proxy is configured or the host is a non proxy host
+     */
+    protected Proxy getProxy(URL url) {
+        org.apache.maven.settings.Proxy activeProxy = settings != null ? settings.getActiveProxy() : null;
+        if (activeProxy == null || StringUtils.isEmpty(activeProxy.getHost())) {
+            return Proxy.NO_PROXY;
+        }
+        if (StringUtils.isNotEmpty(activeProxy.getNonProxyHosts())) {
+            for (String nonProxyHost : activeProxy.getNonProxyHosts().split("[|,]")) {
+                String pattern = nonProxyHost.trim().replace(".", "\\.").replace("*", ".*");
+                if (!pattern.isEmpty()
+                        && url.getHost().toLowerCase(Locale.ENGLISH).matches(pattern.toLowerCase(Locale.ENGLISH))) {
+                    return Proxy.NO_PROXY;
+                }
+            }
+        }
+        int port = activeProxy.getPort() > 0 ? activeProxy.getPort() : 80;
+        return new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved(activeProxy.getHost(), port));
+    }
+
+    /**
+     * Gets the current build session.
+     *
+     * @return the current build session
+     */
+    protected MavenSession getSession() {
+        return session;
+    }
+
+    /**
+     * Gets the Maven project.
+     *
+     * @return the Maven project
+     */
+    protected MavenProject getProject() {
+        return project;
+    }
+
+    /**
+     * Gets the additional arguments configured for jarsigner.
+     *
+     * @return the arguments, or {@code null} if none
+     */
+    protected String[] getArguments() {
+        return arguments;
+    }
+
+    /** Gets the metrics of the execution, to record in */
+    SigningMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Waits for a free slot of {@link #sessionForkLimit}, for work that counts like a jarsigner process.
+     *
+     * @return the permit holding the slot until it is closed
+     * @throws InterruptedException if interrupted while waiting for a slot
+     */
+    SessionForkLimiter.Permit acquireForkPermit() throws InterruptedException {
+        return SessionForkLimiter.acquire(limitedJarSigner);
+    }
+
+    /**
+     * Gets the archives signed within the current build session.
+     *
+     * @return the signed archives, or {@code null} if there is no session
+     */
+    SessionSignedArchives getSessionSignedArchives() {
+        if (session == null) {
+            return null;
+        }
+        return SessionScoped.computeIfAbsent(
+                session,
+                SessionSignedArchives.class,
+                () -> new SessionSignedArchives(SessionSignedArchives.isReuseConfigured(session)));
+    }
+
     /**
      * Checks whether the specified artifact is a ZIP file.
      *
@@ -401,7 +578,7 @@ public abstract class AbstractJarsignerMojo extends AbstractMojo {
      * @return An Optional containing the File, or Optional.empty() if the File is not a jar file.
      * @throws NullPointerException if {@code artifact} is {@code null}
      */
-    private Optional<File> getFileFromArtifact(final Artifact artifact) {
+    protected Optional<File> getFileFromArtifact(final Artifact artifact) {
         if (artifact == null) {
             throw new NullPointerException("artifact");
         }
@@ -437,6 +614,209 @@ public abstract class AbstractJarsignerMojo extends AbstractMojo {
         // Default implementation does nothing
     }
 
+    /**
+     * Computes the parts of the jarsigner requests that are the same for all archives, once before the archives are
+     * processed, so processing an archive (possibly in parallel) only copies them to its request.
+     *
+     * @throws MojoExecutionException if the parts could not be computed, like a password that could not be decrypted
+     */
+    protected void prepareRequests() throws MojoExecutionException {
+        // Preserves 'file.encoding' the plugin is executed with.
+        final List<String> arguments = new ArrayList<>();
+
+        boolean fileEncodingSeen = false;
+
+        if (this.arguments != null) {
+            for (final String argument : this.arguments) {
+                if (argument.trim().startsWith("-J-Dfile.encoding=")) {
+                    fileEncodingSeen = true;
+                }
+
+                arguments.add(argument);
+            }
+        }
+
+        if (!fileEncodingSeen) {
+            arguments.add("-J-Dfile.encoding=" + ReaderFactory.FILE_ENCODING);
+        }
+
+        // Adds proxy information.
+        org.apache.maven.settings.Proxy activeProxy = this.settings != null ? this.settings.getActiveProxy() : null;
+        if (activeProxy != null && StringUtils.isNotEmpty(activeProxy.getHost())) {
+            arguments.add("-J-Dhttp.proxyHost=" + activeProxy.getHost());
+            arguments.add("-J-Dhttps.proxyHost=" + activeProxy.getHost());
+            arguments.add("-J-Dftp.proxyHost=" + activeProxy.getHost());
+
+            if (activeProxy.getPort() > 0) {
+                arguments.add("-J-Dhttp.proxyPort=" + activeProxy.getPort());
+                arguments.add("-J-Dhttps.proxyPort=" + activeProxy.getPort());
+                arguments.add("-J-Dftp.proxyPort=" + activeProxy.getPort());
+            }
+
+            if (StringUtils.isNotEmpty(activeProxy.getNonProxyHosts())) {
+                arguments.add("-J-Dhttp.nonProxyHosts=\"" + activeProxy.getNonProxyHosts() + "\"");
+
+                arguments.add("-J-Dftp.nonProxyHosts=\"" + activeProxy.getNonProxyHosts() + "\"");
+            }
+        }
+
+        additionalArguments = !arguments.isEmpty() ? arguments.toArray(new String[0]) : null;
+
+        // Special handling for passwords through the Maven Security Dispatcher
+        decryptedStorepass = decrypt(storepass);
+    }
+
+    /**
+     * Checks that the keystore can be opened with the storepass, and that the alias holds a private key that can be
+     * recovered with the given key password. The check is done in this JVM, so it is skipped when jarsigner would open
+     * the keystore in a way this JVM cannot reproduce.
+     *
+     * @param keypass the decrypted key password, or {@code null} to use the storepass
+     * @return {@code true} if the keystore was checked, {@code false} if the check was skipped
+     * @throws MojoExecutionException if the keystore cannot be used to sign with the alias
+     * @since 3.1.1
+     */
+    protected boolean checkKeystore(String keypass) throws MojoExecutionException {
+        return checkKeystore(alias, keypass);
+    }
+
+    /**
+     * Checks that the keystore can be opened with the storepass, and that an alias holds a private key that can be
+     * recovered with the given key password, see {@link #checkKeystore(String)}.
+     *
+     * @param alias the alias to check, or {@code null} to only check the keystore
+     * @param keypass the decrypted key password, or {@code null} to use the storepass
+     * @return {@code true} if the keystore was checked, {@code false} if the check was skipped
+     * @throws MojoExecutionException if the keystore cannot be used to sign with the alias
+     * @since 3.1.1
+     */
+    protected boolean checkKeystore(String alias, String keypass) throws MojoExecutionException {
+        KeyStore keyStore = loadKeystore();
+        if (keyStore == null) {
+            return false;
+        }
+        if (alias == null) {
+            return true; // Let jarsigner report it
+        }
+
+        File keystoreFile = getKeystoreFile();
+        try {
+            if (!keyStore.containsAlias(alias)) {
+                throw new MojoExecutionException(getMessage("keystoreAliasNotFound", alias, keystoreFile));
+            }
+            if (!keyStore.isKeyEntry(alias)) {
+                throw new MojoExecutionException(getMessage("keystoreAliasNotPrivateKey", alias, keystoreFile));
+            }
+            String password = keypass != null ? keypass : decryptedStorepass;
+            if (!(keyStore.getKey(alias, password.toCharArray()) instanceof PrivateKey)) {
+                throw new MojoExecutionException(getMessage("keystoreAliasNotPrivateKey", alias, keystoreFile));
+            }
+        } catch (GeneralSecurityException e) {
+            throw new MojoExecutionException(getMessage("keystoreKeyFailure", alias, keystoreFile, e.getMessage()), e);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the SHA-256 fingerprint of the certificate of an alias in the keystore. Like {@link #checkKeystore(String)}
+     * this is done in this JVM, so it is not possible for all keystores.
+     *
+     * @param alias the alias
+     * @return the fingerprint as a hexadecimal string, or {@code null} if the keystore could not be opened in this JVM
+     *         or the alias has no certificate
+     * @throws MojoExecutionException if the keystore cannot be opened with the storepass
+     * @since 3.1.1
+     */
+    protected String getCertificateFingerprint(String alias) throws MojoExecutionException {
+        KeyStore keyStore = loadKeystore();
+        if (keyStore == null || alias == null) {
+            return null;
+        }
+        try {
+            Certificate certificate = keyStore.getCertificate(alias);
+            if (certificate == null) {
+                return null;
+            }
+            return FileDigests.toHex(FileDigests.newDigest("SHA-256").digest(certificate.getEncoded()));
+        } catch (GeneralSecurityException e) {
+            throw new MojoExecutionException(
+                    getMessage("keystoreKeyFailure", alias, getKeystoreFile(), e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Opens the keystore with the storepass.
+     *
+     * @return the keystore, or {@code null} if it cannot be opened the same way in this JVM as jarsigner opens it
+     * @throws MojoExecutionException if the keystore is not found, or cannot be opened with the storepass
+     */
+    private KeyStore loadKeystore() throws MojoExecutionException {
+        String skipReason = null;
+        if (keystore == null || decryptedStorepass == null) {
+            skipReason = "no keystore or storepass configured";
+        } else if ("NONE".equalsIgnoreCase(keystore) || keystore.contains(":/")) {
+            skipReason = "keystore is not a file";
+        } else if (providerName != null || providerClass != null || protectedAuthenticationPath) {
+            skipReason = "keystore uses a provider or protected authentication path";
+        }
+        if (skipReason != null) {
+            getLog().debug(getMessage("keystoreCheckSkipped", skipReason));
+            return null;
+        }
+
+        File keystoreFile = getKeystoreFile();
+        if (!keystoreFile.isFile()) {
+            throw new MojoExecutionException(getMessage("keystoreNotFound", keystoreFile));
+        }
+
+        KeyStore keyStore;
+        try {
+            keyStore = KeyStore.getInstance(storetype != null ? storetype : KeyStore.getDefaultType());
+        } catch (KeyStoreException e) {
+            // jarsigner may still support the type, for example when it is executed using a toolchain
+            getLog().debug(getMessage("keystoreCheckSkipped", e.getMessage()));
+            return null;
+        }
+        try (InputStream in = new FileInputStream(keystoreFile)) {
+            keyStore.load(in, decryptedStorepass.toCharArray());
+        } catch (IOException | GeneralSecurityException e) {
+            throw new MojoExecutionException(getMessage("keystoreFailure", keystoreFile, e.getMessage()), e);
+        }
+        return keyStore;
+    }
+
+    /**
+     * Gets the SHA-256 digest of the keystore file, so a keystore replaced at the same path can be told apart.
+     *
+     * @return the digest as a hexadecimal string, or {@code null} if no keystore is configured or it is not a file,
+     * like {@code NONE} for PKCS #11
+     * @throws MojoExecutionException if the keystore file could not be read
+     */
+    String getKeystoreDigest() throws MojoExecutionException {
+        if (keystore == null) {
+            return null;
+        }
+        File keystoreFile = getKeystoreFile();
+        if (!keystoreFile.isFile()) {
+            return null;
+        }
+        try {
+            return FileDigests.sha256(keystoreFile);
+        } catch (IOException e) {
+            throw new MojoExecutionException(getMessage("keystoreFailure", keystoreFile, e.getMessage()), e);
+        }
+    }
+
+    /** Gets the keystore file, resolved the way jarsigner resolves it */
+    private File getKeystoreFile() {
+        // jarsigner resolves a relative keystore path against the directory it is executed in
+        File keystoreFile = new File(keystore);
+        if (!keystoreFile.isAbsolute() && workingDirectory != null) {
+            keystoreFile = new File(workingDirectory, keystore);
+        }
+        return keystoreFile;
+    }
+
     /**
      * Process (sign/verify) a list of archives.
      *
@@ -461,6 +841,18 @@ public abstract class AbstractJarsignerMojo extends AbstractMojo {
             throw new NullPointerException("archive");
         }
 
+        FlightRecorderEvents.Event event = FlightRecorderEvents.ARCHIVE
+                .begin()
+                .set("archive", archive.getPath())
+                .set("size", archive.length());
+        try {
+            processArchive(archive, event);
+        } finally {
+            event.commit();
+        }
+    }
+
+    private void processArchive(File archive, FlightRecorderEvents.Event event) throws MojoExecutionException {
         preProcessArchive(archive);
 
         if (this.verbose) {
@@ -470,6 +862,7 @@ public abstract class AbstractJarsignerMojo extends AbstractMojo {
         }
 
         JarSignerRequest request = createRequest(archive);
+        event.set("goal", request instanceof JarSignerVerifyRequest ? "verify" : "sign");
         request.setVerbose(verbose);
         request.setAlias(alias);
         request.setArchive(archive);
@@ -482,64 +875,13 @@ public abstract class AbstractJarsignerMojo extends AbstractMojo {
         request.setMaxMemory(maxMemory);
         request.setProtectedAuthenticationPath(protectedAuthenticationPath);
 
-        // Preserves 'file.encoding' the plugin is executed with.
-        final List<String> additionalArguments = new ArrayList<>();
-
-        boolean fileEncodingSeen = false;
-
-        if (this.arguments != null) {
-            for (final String argument : this.arguments) {
-                if (argument.trim().startsWith("-J-Dfile.encoding=")) {
-                    fileEncodingSeen = true;
-                }
-
-                additionalArguments.add(argument);
-            }
-        }
-
-        if (!fileEncodingSeen) {
-            additionalArguments.add("-J-Dfile.encoding=" + ReaderFactory.FILE_ENCODING);
-        }
-
-        // Adds proxy information.
-        if (this.settings != null
-                && this.settings.getActiveProxy() != null
-                && StringUtils.isNotEmpty(this.settings.getActiveProxy().getHost())) {
-            additionalArguments.add(
-                    "-J-Dhttp.proxyHost=" + this.settings.getActiveProxy().getHost());
-            additionalArguments.add(
-                    "-J-Dhttps.proxyHost=" + this.settings.getActiveProxy().getHost());
-            additionalArguments.add(
-                    "-J-Dftp.proxyHost=" + this.settings.getActiveProxy().getHost());
-
-            if (this.settings.getActiveProxy().getPort() > 0) {
-                additionalArguments.add(
-                        "-J-Dhttp.proxyPort=" + this.settings.getActiveProxy().getPort());
-                additionalArguments.add(
-                        "-J-Dhttps.proxyPort=" + this.settings.getActiveProxy().getPort());
-                additionalArguments.add(
-                        "-J-Dftp.proxyPort=" + this.settings.getActiveProxy().getPort());
-            }
-
-            if (StringUtils.isNotEmpty(this.settings.getActiveProxy().getNonProxyHosts())) {
-                additionalArguments.add("-J-Dhttp.nonProxyHosts=\""
-                        + this.settings.getActiveProxy().getNonProxyHosts() + "\"");
-
-                additionalArguments.add("-J-Dftp.nonProxyHosts=\""
-                        + this.settings.getActiveProxy().getNonProxyHosts() + "\"");
-            }
-        }
-
-        request.setArguments(
-                !additionalArguments.isEmpty()
-                        ? additionalArguments.toArray(new String[additionalArguments.size()])
-                        : null);
-
-        // Special handling for passwords through the Maven Security Dispatcher
-        request.setStorepass(decrypt(storepass));
+        // Copied, the request may be modified when processing the archive
+        request.setArguments(additionalArguments != null ? additionalArguments.clone() : null);
+        request.setStorepass(decryptedStorepass);
 
         try {
-            executeJarSigner(jarSigner, request);
+            executeJarSigner(limitedJarSigner, request);
+            metrics.archiveProcessed();
         } catch (JavaToolException e) {
             throw new MojoExecutionException(getMessage("commandLineException", e.getMessage()), e);
         }
@@ -591,7 +933,7 @@ public abstract class AbstractJarsignerMojo extends AbstractMojo {
      *
      * @return Toolchain instance
      */
-    private Toolchain getToolchain() {
+    protected Toolchain getToolchain() {
         Toolchain tc = null;
         if (toolchainManager != null) {
             tc = toolchainManager.getToolchainFromBuildContext("jdk", session);
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Helper to rewrite archives, for changes that jarsigner does not do itself. The archive is written to a temporary
+ * file next to it, which then replaces the archive.
+ */
+final class ArchiveRewriter {
+
+    private ArchiveRewriter() {
+        // Utility class
+    }
+
+    /**
+     * Replaces entries of an archive with the content of files, in one pass over the archive. The order and the other
+     * properties of the entries are kept. Stored (uncompressed) entries remain stored, which is required for example
+     * for the nested jars of a Spring Boot application.
+     *
+     * @param archive the archive to update
+     * @param replacements the files to use as new content, by entry name
+     * @throws IOException if rewriting the archive fails
+     */
+    static void replaceEntries(File archive, Map<String, File> replacements) throws IOException {
+        rewrite(archive, replacements, Collections.emptySet(), Collections.emptyMap());
+    }
+
+    /**
+     * Removes entries from an archive, in one pass over the archive. The order and the properties of the other entries
+     * are kept.
+     *
+     * @param archive the archive to update
+     * @param names the names of the entries to remove
+     * @throws IOException if rewriting the archive fails
+     */
+    static void removeEntries(File archive, Set<String> names) throws IOException {
+        rewrite(archive, Collections.emptyMap(), names, Collections.emptyMap());
+    }
+
+    /**
+     * Sets the modification time of entries of an archive. The time is stored as the local time of UTC in the entries,
+     * so the archive is the same regardless of the time zone it is written in. Like in any archive, the time is stored
+     * with a precision of 2 seconds. The archive is only rewritten if the time of any of the entries differs.
+     *
+     * @param archive the archive to update
+     * @param names the names of the entries to update, entries that do not exist are ignored
+     * @param time the time, in milliseconds since the epoch
+     * @throws IOException if rewriting the archive fails
+     */
+    static void setEntryTimes(File archive, Set<String> names, long time) throws IOException {
+        long localTime = time - TimeZone.getDefault().getOffset(time);
+        localTime -= Math.floorMod(localTime, 2000); // The time as read back from the archive (MS-DOS time)
+        Map<String, Long> times = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            for (String name : names) {
+                ZipEntry entry = zipFile.getEntry(name);
+                if (entry != null && entry.getTime() != localTime) {
+                    times.put(name, localTime);
+                }
+            }
+        }
+        if (!times.isEmpty()) {
+            rewrite(archive, Collections.emptyMap(), Collections.emptySet(), times);
+        }
+    }
+
+    private static void rewrite(
+            File archive, Map<String, File> replacements, Set<String> removals, Map<String, Long> times)
+            throws IOException {
+        File tempArchive = new File(archive.getParentFile(), archive.getName() + ".rewrite");
+        try (ZipFile zipFile = new ZipFile(archive);
+                ZipOutputStream out =
+                        new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tempArchive.toPath())))) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (removals.contains(entry.getName())) {
+                    continue;
+                }
+                File replacement = replacements.get(entry.getName());
+                if (replacement == null) {
+                    copyEntry(zipFile, entry, times.get(entry.getName()), out);
+                } else {
+                    writeEntry(entry, replacement, out);
+                }
+            }
+        } catch (IOException e) {
+            tempArchive.delete();
+            throw e;
+        }
+        Files.move(tempArchive.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void copyEntry(ZipFile zipFile, ZipEntry entry, Long time, ZipOutputStream out) throws IOException {
+        ZipEntry newEntry = new ZipEntry(entry);
+        if (time != null) {
+            newEntry.setTime(time);
+        }
+        if (newEntry.getMethod() != ZipEntry.STORED) {
+            newEntry.setCompressedSize(-1); // Compressed size may differ when deflating again
+        }
+        out.putNextEntry(newEntry);
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            copy(in, out);
+        }
+        out.closeEntry();
+    }
+
+    /**
+     * Reads the content of an entry.
+     *
+     * @param zipFile the archive
+     * @param entry an entry of the archive
+     * @return the uncompressed content
+     * @throws IOException if the entry could not be read
+     */
+    static byte[] readEntry(ZipFile zipFile, ZipEntry entry) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 8192);
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            copy(in, out);
+        }
+        return out.toByteArray();
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static void writeEntry(ZipEntry entry, File content, ZipOutputStream out) throws IOException {
+        ZipEntry newEntry = new ZipEntry(entry.getName());
+        newEntry.setMethod(entry.getMethod());
+        newEntry.setTime(entry.getTime());
+        newEntry.setComment(entry.getComment());
+        newEntry.setExtra(entry.getExtra());
+        if (entry.getMethod() == ZipEntry.STORED) {
+            newEntry.setSize(content.length());
+            newEntry.setCompressedSize(content.length());
+            newEntry.setCrc(crc(content));
+        }
+        out.putNextEntry(newEntry);
+        Files.copy(content.toPath(), out);
+        out.closeEntry();
+    }
+
+    private static long crc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal DER (Distinguished Encoding Rules, ITU-T X.690) encoder and decoder. Sufficient for the ASN.1 structures of
+ * the Time-Stamp Protocol (RFC 3161) and of the PKCS #7 signature blocks (RFC 5652) of signed jar files. Only single
+ * byte tags and definite lengths are supported, which is all that DER encoded signature blocks use.
+ */
+final class Der {
+    static final int BOOLEAN = 0x01;
+    static final int INTEGER = 0x02;
+    static final int OCTET_STRING = 0x04;
+    static final int NULL = 0x05;
+    static final int OBJECT_IDENTIFIER = 0x06;
+    static final int GENERALIZED_TIME = 0x18;
+    static final int SEQUENCE = 0x30;
+    static final int SET = 0x31;
+
+    private Der() {
+        // Utility class
+    }
+
+    /** Gets the tag of a constructed, context-specific element, like {@code [0]} or {@code [1]} */
+    static int contextSpecific(int number) {
+        return 0xA0 | number;
+    }
+
+    /** A parsed DER element, referring to the bytes it was parsed from */
+    static final class Element {
+        private final byte[] buffer;
+        private final int offset;
+        private final int valueOffset;
+        private final int end;
+
+        private Element(byte[] buffer, int offset, int valueOffset, int end) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.valueOffset = valueOffset;
+            this.end = end;
+        }
+
+        int getTag() {
+            return buffer[offset] & 0xff;
+        }
+
+        /** Gets the content octets of the element */
+        byte[] getValue() {
+            return Arrays.copyOfRange(buffer, valueOffset, end);
+        }
+
+        /** Gets the complete encoding of the element, including tag and length */
+        byte[] getEncoded() {
+            return Arrays.copyOfRange(buffer, offset, end);
+        }
+
+        /** Parses the content octets of a constructed element as a sequence of elements */
+        List<Element> getChildren() throws IOException {
+            List<Element> children = new ArrayList<>();
+            int position = valueOffset;
+            while (position < end) {
+                Element child = parse(buffer, position, end);
+                children.add(child);
+                position = child.end;
+            }
+            return children;
+        }
+
+        /** Gets the child at the given index, checking that it has the expected tag */
+        Element getChild(int index, int expectedTag) throws IOException {
+            List<Element> children = getChildren();
+            if (index >= children.size() || children.get(index).getTag() != expectedTag) {
+                throw new IOException("Unexpected DER structure, expected tag " + Integer.toHexString(expectedTag)
+                        + " at index " + index);
+            }
+            return children.get(index);
+        }
+
+        /** Gets the value of an INTEGER element */
+        BigInteger getInteger() throws IOException {
+            if (getTag() != INTEGER || valueOffset == end) {
+                throw new IOException("Unexpected DER structure, expected an integer");
+            }
+            return new BigInteger(getValue());
+        }
+    }
+
+    /**
+     * Parses a complete DER encoding of a single element.
+     *
+     * @param encoded the encoding
+     * @return the element
+     * @throws IOException if the encoding is malformed or has trailing data
+     */
+    static Element parse(byte[] encoded) throws IOException {
+        Element element = parse(encoded, 0, encoded.length);
+        if (element.end != encoded.length) {
+            throw new IOException("Unexpected data after DER element");
+        }
+        return element;
+    }
+
+    private static Element parse(byte[] buffer, int offset, int limit) throws IOException {
+        if (offset + 2 > limit) {
+            throw new IOException("Truncated DER element");
+        }
+        if ((buffer[offset] & 0x1f) == 0x1f) {
+            throw new IOException("Multi-byte DER tags are not supported");
+        }
+
+        int position = offset + 1;
+        int length = buffer[position++] & 0xff;
+        if (length > 0x7f) {
+            int lengthBytes = length & 0x7f;
+            if (lengthBytes == 0 || lengthBytes > 4 || position + lengthBytes > limit) {
+                throw new IOException("Unsupported DER length encoding");
+            }
+            length = 0;
+            for (int i = 0; i < lengthBytes; i++) {
+                length = (length << 8) | (buffer[position++] & 0xff);
+            }
+        }
+        if (length < 0 || position + length > limit) {
+            throw new IOException("Truncated DER element");
+        }
+        return new Element(buffer, offset, position, position + length);
+    }
+
+    /** Encodes an element from its tag and content octets, given as the concatenation of the parts */
+    static byte[] encode(int tag, byte[]... contentParts) {
+        int length = 0;
+        for (byte[] part : contentParts) {
+            length += part.length;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 6);
+        out.write(tag);
+        if (length < 0x80) {
+            out.write(length);
+        } else {
+            int lengthBytes = (32 - Integer.numberOfLeadingZeros(length) + 7) / 8;
+            out.write(0x80 | lengthBytes);
+            for (int i = lengthBytes - 1; i >= 0; i--) {
+                out.write(length >>> (i * 8));
+            }
+        }
+        for (byte[] part : contentParts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] sequence(byte[]... elements) {
+        return encode(SEQUENCE, elements);
+    }
+
+    /** Encodes a SET OF, sorting the elements as required by DER */
+    static byte[] setOf(List<byte[]> elements) {
+        return setOf(SET, elements);
+    }
+
+    /** Encodes a SET OF with an implicit tag, like {@code [1] IMPLICIT SET OF}, sorting the elements */
+    static byte[] setOf(int tag, List<byte[]> elements) {
+        List<byte[]> sorted = new ArrayList<>(elements);
+        sorted.sort(Der::compareUnsigned);
+        return encode(tag, sorted.toArray(new byte[0][]));
+    }
+
+    static byte[] integer(BigInteger value) {
+        return encode(INTEGER, value.toByteArray());
+    }
+
+    static byte[] octetString(byte[] value) {
+        return encode(OCTET_STRING, value);
+    }
+
+    static byte[] booleanValue(boolean value) {
+        return encode(BOOLEAN, new byte[] {(byte) (value ? 0xff : 0x00)});
+    }
+
+    static byte[] nullValue() {
+        return encode(NULL);
+    }
+
+    /** Encodes an object identifier given in dotted form, like {@code 2.16.840.1.101.3.4.2.1} */
+    static byte[] objectIdentifier(String oid) {
+        String[] parts = oid.split("\\.");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeBase128(out, Long.parseLong(parts[0]) * 40 + Long.parseLong(parts[1]));
+        for (int i = 2; i < parts.length; i++) {
+            writeBase128(out, Long.parseLong(parts[i]));
+        }
+        return encode(OBJECT_IDENTIFIER, out.toByteArray());
+    }
+
+    private static void writeBase128(ByteArrayOutputStream out, long value) {
+        int groups = Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 6) / 7);
+        for (int i = groups - 1; i >= 0; i--) {
+            int group = (int) (value >>> (i * 7)) & 0x7f;
+            out.write(i > 0 ? group | 0x80 : group);
+        }
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int difference = (a[i] & 0xff) - (b[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return a.length - b.length;
+    }
+}
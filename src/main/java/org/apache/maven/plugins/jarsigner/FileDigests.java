@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Helper to compute message digests of files and strings, as lower case hexadecimal strings.
+ */
+final class FileDigests {
+
+    private static final String SHA_256 = "SHA-256";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private FileDigests() {
+        // Utility class
+    }
+
+    /** Computes the SHA-256 digest of the content of a file */
+    static String sha256(File file) throws IOException {
+        return digests(file, Collections.singletonList(SHA_256)).get(0);
+    }
+
+    /**
+     * Computes several digests of the content of a file, reading the file once.
+     *
+     * @param file the file
+     * @param algorithms the digest algorithms, like {@code SHA-512}
+     * @return the digests, in the order of the algorithms
+     * @throws IOException if the file could not be read
+     */
+    static List<String> digests(File file, List<String> algorithms) throws IOException {
+        List<MessageDigest> digests = new ArrayList<>();
+        for (String algorithm : algorithms) {
+            digests.add(newDigest(algorithm));
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (MessageDigest digest : digests) {
+            result.add(toHex(digest.digest()));
+        }
+        return result;
+    }
+
+    /** Computes the SHA-256 digest of the UTF-8 encoding of a string */
+    static String sha256(String value) {
+        return toHex(newDigest(SHA_256).digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported digest algorithm " + algorithm, e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
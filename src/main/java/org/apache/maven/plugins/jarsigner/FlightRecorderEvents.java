@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Java Flight Recorder (JFR) events of the plugin, to see the signing and verification of archives in JFR recordings of
+ * a build. The plugin runs on Java 8, where the JFR API is not available to compile against, so the event types are
+ * defined at runtime with {@code jdk.jfr.EventFactory} using reflection. Without JFR all events are no-ops.
+ *
+ * An event is only created if its type is enabled in a running recording, so when not recording the cost is a check of
+ * a flag.
+ */
+final class FlightRecorderEvents {
+
+    private static final String CATEGORY = "Maven Jarsigner Plugin";
+
+    /** The reflective JFR API, {@code null} if not available. Loaded before the types are defined */
+    private static final Api API = Api.load();
+
+    private static final Event NO_EVENT = new Event(null, null);
+
+    /** The processing of an archive by the sign or verify goal */
+    static final Type ARCHIVE = new Type(
+            "Archive",
+            "Jarsigner Archive",
+            "Processing of an archive",
+            field(String.class, "archive", "Archive"),
+            field(long.class, "size", "Size"),
+            field(String.class, "goal", "Goal"));
+
+    /** A single execution of jarsigner to sign an archive. Attempts are numbered from 1, as for all event types */
+    static final Type SIGN_ATTEMPT = new Type(
+            "SignAttempt",
+            "Jarsigner Sign Attempt",
+            "Execution of jarsigner to sign an archive",
+            field(String.class, "archive", "Archive"),
+            field(long.class, "size", "Size"),
+            field(String.class, "tsaUrl", "TSA URL"),
+            field(int.class, "attempt", "Attempt"),
+            field(int.class, "exitCode", "Exit Code"));
+
+    /** A single request to a TSA server to timestamp a signature, when timestamping is deferred */
+    static final Type TIMESTAMP_ATTEMPT = new Type(
+            "TimestampAttempt",
+            "Jarsigner Timestamp Attempt",
+            "Request to a TSA server to timestamp the signature of an archive",
+            field(String.class, "archive", "Archive"),
+            field(long.class, "size", "Size"),
+            field(String.class, "tsaUrl", "TSA URL"),
+            field(int.class, "attempt", "Attempt"),
+            field(boolean.class, "success", "Success"));
+
+    /** The wait before retrying after a failed attempt */
+    static final Type RETRY_WAIT = new Type(
+            "RetryWait",
+            "Jarsigner Retry Wait",
+            "Wait before retrying after a failed attempt",
+            field(int.class, "attempt", "Attempt"));
+
+    /** The selection of a TSA server */
+    static final Type TSA_SELECTION = new Type(
+            "TsaSelection",
+            "Jarsigner TSA Selection",
+            "Selection of the TSA server to use",
+            field(String.class, "tsaUrl", "TSA URL"),
+            field(long.class, "failureCount", "Failure Count"),
+            field(long.class, "latency", "Latency (ms)"),
+            field(boolean.class, "hedge", "Hedge"));
+
+    private FlightRecorderEvents() {}
+
+    private static Field field(Class<?> type, String name, String label) {
+        return new Field(type, name, label);
+    }
+
+    /** A field of an event type */
+    private static final class Field {
+        private final Class<?> type;
+        private final String name;
+        private final String label;
+
+        private Field(Class<?> type, String name, String label) {
+            this.type = type;
+            this.name = name;
+            this.label = label;
+        }
+    }
+
+    /** A type of event, with its fields */
+    static final class Type {
+        private final List<String> fieldNames = new ArrayList<>();
+
+        /** The {@code jdk.jfr.EventFactory}, {@code null} if JFR is not available */
+        private final Object factory;
+
+        /** The {@code jdk.jfr.EventType}, {@code null} if JFR is not available */
+        private final Object eventType;
+
+        private Type(String name, String label, String description, Field... fields) {
+            for (Field field : fields) {
+                fieldNames.add(field.name);
+            }
+            Object createdFactory = null;
+            Object createdEventType = null;
+            if (API != null) {
+                try {
+                    createdFactory = API.create(
+                            FlightRecorderEvents.class.getPackage().getName() + "." + name, label, description, fields);
+                    createdEventType = API.getEventType.invoke(createdFactory);
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    createdFactory = null;
+                }
+            }
+            this.factory = createdFactory;
+            this.eventType = createdFactory != null ? createdEventType : null;
+        }
+
+        /**
+         * Begins an event of this type, to be committed when what it is about has ended.
+         *
+         * @return the event, a no-op if the type is not enabled in a running recording
+         */
+        Event begin() {
+            if (factory == null) {
+                return NO_EVENT;
+            }
+            try {
+                if (!(Boolean) API.isEnabled.invoke(eventType)) {
+                    return NO_EVENT;
+                }
+                Object event = API.newEvent.invoke(factory);
+                API.begin.invoke(event);
+                return new Event(this, event);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return NO_EVENT;
+            }
+        }
+    }
+
+    /** An event being recorded */
+    static final class Event {
+        private final Type type;
+
+        /** The {@code jdk.jfr.Event}, {@code null} for a no-op */
+        private final Object event;
+
+        private Event(Type type, Object event) {
+            this.type = type;
+            this.event = event;
+        }
+
+        /**
+         * Sets a field of the event.
+         *
+         * @param name the name of the field, as defined by the type
+         * @param value the value, boxed as the type of the field
+         * @return this event
+         */
+        Event set(String name, Object value) {
+            if (event != null) {
+                try {
+                    API.set.invoke(event, type.fieldNames.indexOf(name), value);
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    // Field left unset
+                }
+            }
+            return this;
+        }
+
+        /** Ends the event and writes it to the recording */
+        void commit() {
+            if (event != null) {
+                try {
+                    API.commit.invoke(event);
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    // Event lost
+                }
+            }
+        }
+    }
+
+    /** The methods and constructors of the JFR API used */
+    private static final class Api {
+        private Class<?> nameAnnotation;
+        private Class<?> labelAnnotation;
+        private Class<?> descriptionAnnotation;
+        private Class<?> categoryAnnotation;
+        private Constructor<?> annotationElement;
+        private Constructor<?> valueDescriptor;
+        private Method create;
+        private Method getEventType;
+        private Method isEnabled;
+        private Method newEvent;
+        private Method begin;
+        private Method set;
+        private Method commit;
+
+        /** Loads the API, or returns {@code null} if not available */
+        static Api load() {
+            try {
+                Api api = new Api();
+                api.nameAnnotation = Class.forName("jdk.jfr.Name");
+                api.labelAnnotation = Class.forName("jdk.jfr.Label");
+                api.descriptionAnnotation = Class.forName("jdk.jfr.Description");
+                api.categoryAnnotation = Class.forName("jdk.jfr.Category");
+                api.annotationElement =
+                        Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+                api.valueDescriptor =
+                        Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+                Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+                api.create = factoryClass.getMethod("create", List.class, List.class);
+                api.getEventType = factoryClass.getMethod("getEventType");
+                api.newEvent = factoryClass.getMethod("newEvent");
+                api.isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+                Class<?> eventClass = Class.forName("jdk.jfr.Event");
+                api.begin = eventClass.getMethod("begin");
+                api.set = eventClass.getMethod("set", int.class, Object.class);
+                api.commit = eventClass.getMethod("commit");
+                return api;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+
+        /** Creates a {@code jdk.jfr.EventFactory} */
+        Object create(String name, String label, String description, Field... fields)
+                throws ReflectiveOperationException {
+            List<Object> annotations = Arrays.asList(
+                    annotationElement.newInstance(nameAnnotation, name),
+                    annotationElement.newInstance(labelAnnotation, label),
+                    annotationElement.newInstance(descriptionAnnotation, description),
+                    annotationElement.newInstance(categoryAnnotation, new String[] {CATEGORY}));
+            List<Object> descriptors = new ArrayList<>();
+            for (Field field : fields) {
+                List<Object> fieldAnnotations =
+                        Collections.singletonList(annotationElement.newInstance(labelAnnotation, field.label));
+                descriptors.add(valueDescriptor.newInstance(field.type, field.name, fieldAnnotations));
+            }
+            return create.invoke(null, annotations, descriptors);
+        }
+    }
+}
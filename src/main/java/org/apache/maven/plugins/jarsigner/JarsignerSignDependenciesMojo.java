@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Signs the runtime dependencies of a project using jarsigner, for example for a JNLP or desktop distribution. The
+ * dependencies are copied to an output directory and signed there, the files in the local repository are left as they
+ * are. All parameters of the sign goal are supported, except the ones selecting the archives to sign.
+ *
+ * A dependency signed by an earlier execution is kept in the output directory and not signed again, as long as the
+ * dependency (its coordinates and checksum), the certificates and the signing options are unchanged. This requires
+ * that the certificates can be read from the keystore in the Maven JVM. Use {@code signedArchiveCacheDirectory} to
+ * also reuse signed dependencies between projects, and after the output directory is cleaned.
+ *
+ * @since 3.1.1
+ */
+@Mojo(
+        name = "sign-dependencies",
+        defaultPhase = LifecyclePhase.PACKAGE,
+        requiresDependencyResolution = ResolutionScope.RUNTIME,
+        threadSafe = true)
+public class JarsignerSignDependenciesMojo extends JarsignerSignMojo {
+
+    /** Name of the file in the output directory keeping track of the signed dependencies */
+    private static final String INDEX_FILE_NAME = ".signed-dependencies.properties";
+
+    /**
+     * The directory to write the signed dependencies to.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(
+            property = "jarsigner.dependenciesOutputDirectory",
+            defaultValue = "${project.build.directory}/signed-dependencies")
+    private File dependenciesOutputDirectory;
+
+    /** Keys identifying how the dependencies in the output directory were signed, by file name */
+    private final Properties index = new Properties();
+
+    /** Keys of the dependencies to sign, to add to the index once signed */
+    private final Map<String, String> pendingKeys = new HashMap<>();
+
+    /**
+     * {@inheritDoc}
+     *
+     * Copies the runtime dependencies that are not signed already to the output directory, and removes the ones that
+     * are no longer dependencies.
+     */
+    @Override
+    protected List<File> findJarfiles() throws MojoExecutionException {
+        File indexFile = new File(dependenciesOutputDirectory, INDEX_FILE_NAME);
+        String signingOptions = getSigningOptions();
+        if (signingOptions == null) {
+            getLog().info(getMessage("dependenciesNotReused"));
+        }
+
+        List<File> archives = new ArrayList<>();
+        try {
+            if (indexFile.isFile() && signingOptions != null) {
+                try (InputStream in = Files.newInputStream(indexFile.toPath())) {
+                    index.load(in);
+                }
+            }
+            Files.createDirectories(dependenciesOutputDirectory.toPath());
+
+            Set<String> fileNames = new HashSet<>();
+            for (Artifact artifact : getProject().getArtifacts()) {
+                Optional<File> file = getFileFromArtifact(artifact);
+                if (!file.isPresent()) {
+                    continue;
+                }
+                String fileName = file.get().getName();
+                if (!fileNames.add(fileName)) {
+                    // Same file name in different groups
+                    fileName = artifact.getGroupId() + "-" + fileName;
+                    fileNames.add(fileName);
+                }
+
+                File target = new File(dependenciesOutputDirectory, fileName);
+                String key = null;
+                if (signingOptions != null) {
+                    key = FileDigests.sha256(artifact.getId() + "\n" + FileDigests.sha256(file.get()) + "\n"
+                            + signingOptions + "\narguments="
+                            + Arrays.toString(createRequest(target).getArguments()));
+                    if (target.isFile() && key.equals(index.getProperty(fileName))) {
+                        getLog().debug(getMessage("dependencyUpToDate", artifact.getId(), target));
+                        continue;
+                    }
+                    pendingKeys.put(fileName, key);
+                }
+                index.remove(fileName);
+                Files.copy(file.get().toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                archives.add(target);
+            }
+
+            for (String fileName : new HashSet<>(index.stringPropertyNames())) {
+                if (!fileNames.contains(fileName)) {
+                    File removed = new File(dependenciesOutputDirectory, fileName);
+                    Files.deleteIfExists(removed.toPath());
+                    index.remove(fileName);
+                    getLog().info(getMessage("dependencyRemoved", removed));
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    getMessage("dependenciesFailure", dependenciesOutputDirectory, e.getMessage()), e);
+        }
+        return archives;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Records the signed dependencies in the output directory, to not sign them again in later executions.
+     */
+    @Override
+    protected void processArchives(List<File> archives) throws MojoExecutionException {
+        super.processArchives(archives);
+
+        if (isSignedAfterExecution()) {
+            return; // Not known if signed successfully, signed again by the next execution
+        }
+        index.putAll(pendingKeys);
+        File indexFile = new File(dependenciesOutputDirectory, INDEX_FILE_NAME);
+        try (OutputStream out = Files.newOutputStream(indexFile.toPath())) {
+            index.store(out, "Dependencies signed by the jarsigner sign-dependencies goal");
+        } catch (IOException e) {
+            getLog().warn(getMessage("dependenciesFailure", dependenciesOutputDirectory, e.getMessage()));
+        }
+    }
+}
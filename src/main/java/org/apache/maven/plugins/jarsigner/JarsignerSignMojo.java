@@ -19,29 +19,70 @@
 package org.apache.maven.plugins.jarsigner;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
 import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.jar.JarFile;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.jarsigner.NestedArchives.NestedArchive;
 import org.apache.maven.plugins.jarsigner.TsaSelector.TsaServer;
 import org.apache.maven.shared.jarsigner.JarSigner;
 import org.apache.maven.shared.jarsigner.JarSignerRequest;
 import org.apache.maven.shared.jarsigner.JarSignerSignRequest;
 import org.apache.maven.shared.jarsigner.JarSignerUtil;
 import org.apache.maven.shared.utils.StringUtils;
+import org.apache.maven.shared.utils.cli.CommandLineException;
 import org.apache.maven.shared.utils.cli.Commandline;
 import org.apache.maven.shared.utils.cli.javatool.JavaToolException;
 import org.apache.maven.shared.utils.cli.javatool.JavaToolResult;
+import org.apache.maven.toolchain.Toolchain;
 
 /**
  * Signs a project artifact and attachments using jarsigner.
@@ -73,6 +114,21 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
     @Parameter(property = "jarsigner.removeExistingSignatures", defaultValue = "false")
     private boolean removeExistingSignatures;
 
+    /**
+     * When removing existing signatures, only remove the signature files and keep the digests of the entries in the
+     * manifest. jarsigner keeps the manifest sections of entries whose digest is unchanged as they are, and archives
+     * without signature files are not rewritten at all. When disabled, the manifest is rewritten without any digests
+     * and jarsigner adds them all again.
+     *
+     * <p>Note that this does not save any hashing: jarsigner cannot be told to trust the existing digests, so it still
+     * reads and digests every entry to compare it with the manifest. What is saved is the rewriting of the manifest
+     * and of archives without signature files, and the manifest stays the same apart from changed entries.</p>
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.keepManifestDigests", defaultValue = "false")
+    private boolean keepManifestDigests;
+
     /**
      * <p>URL(s) to Time Stamping Authority (TSA) server(s) to use to timestamp the signing.
      * See <a href="https://docs.oracle.com/javase/7/docs/technotes/tools/windows/jarsigner.html#Options">options</a>.
@@ -206,6 +262,111 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
     @Parameter(property = "jarsigner.maxRetryDelaySeconds", defaultValue = "0")
     private int maxRetryDelaySeconds;
 
+    /**
+     * Randomize the delay after a failed attempt (decorrelated jitter), instead of the plain exponential backoff of
+     * {@link #maxRetryDelaySeconds}. Each delay is a random value between 1 second and three times the previous delay
+     * of the archive (3 seconds for the first one), limited by {@link #maxRetryDelaySeconds}. Threads that fail at the
+     * same time then spread their retries over time, instead of retrying against a recovering TSA server at the same
+     * moment.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.retryJitter", defaultValue = "false")
+    private boolean retryJitter;
+
+    /**
+     * Maximum number of retries, in percent of the number of archives processed by the execution (counting signing and
+     * deferred timestamping separately). When used up, failing archives are not retried anymore and the execution
+     * fails fast, instead of every archive spending all {@link #maxTries} during a systemic failure like a TSA server
+     * outage. Regardless of the percentage, {@code maxTries - 1} retries are always allowed, so a single archive may
+     * use all its tries. The default value of 0 means no limit.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.retryBudgetPercent", defaultValue = "0")
+    private int retryBudgetPercent;
+
+    /**
+     * File to keep statistics about the TSA servers in across builds, for example
+     * {@code ${user.home}/.m2/jarsigner-tsa-scoreboard.properties}. The number of failures and the latency of each TSA
+     * server are read at the start of the execution and used to select the TSA server, so the first archives of a
+     * build already go to a server that is working, and the statistics of the execution are added at the end. Old
+     * failures are forgotten over time. The file may be shared by concurrent builds. By default no statistics are
+     * kept.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.tsaScoreboardFile")
+    private File tsaScoreboardFile;
+
+    /**
+     * Probe all TSA servers given by {@link #tsa} with a timestamp request when the execution starts. The probes run in
+     * parallel, while the archives to sign are searched for, and signing starts when all probes are done. Servers that
+     * fail the probe are registered as failing and the latency of the others is registered, so the first archives are
+     * signed using a working and fast TSA server. Most useful with multiple TSA servers and {@link #threadCount} more
+     * than 1.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.tsaProbe", defaultValue = "false")
+    private boolean tsaProbe;
+
+    /**
+     * Check the keystore before signing any archive: that it can be opened using the storepass, that the alias holds
+     * a private key that can be recovered using the keypass, and that the {@link #certchain} file can be read. A
+     * misconfiguration then fails the build directly, instead of after jarsigner has failed, and been retried, for
+     * the first archives.
+     *
+     * The check is done in the Maven JVM, so it is skipped when it cannot open the keystore the way jarsigner would:
+     * when no keystore is configured, the keystore is not a file (like {@code NONE} for PKCS #11), a provider or
+     * protectedAuthenticationPath is used, or the storetype is not supported by the Maven JVM. It is disabled by
+     * default, as a keystore that jarsigner can use may still fail to load in the Maven JVM, for example one needing
+     * a security provider that is only configured for jarsigner.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.checkKeystore", defaultValue = "false")
+    private boolean checkKeystore;
+
+    /**
+     * Digest algorithms to compute checksums of the signed archives with, for example {@code SHA-256,SHA-512}. For
+     * each algorithm a checksum file is written next to each signed archive, named after the archive with the
+     * algorithm as extension, like {@code my-project.jar.sha256}. It contains the checksum as a hexadecimal string, the
+     * format used in Maven repositories. All checksums of an archive are computed in a single read of the archive,
+     * directly after it is signed (and timestamped) while it is likely still in the file system cache. By default no
+     * checksums are computed. Cannot be combined with a {@code -signedjar} argument.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.checksumAlgorithms")
+    private String[] checksumAlgorithms = {};
+
+    /**
+     * Several signers to sign each archive with, instead of the single signer given by alias, {@link #keypass} and
+     * {@link #sigfile}. For example to sign with both the old and the new key during a key rotation:
+     *
+     * <pre>{@code
+     * <signers>
+     *   <signer>
+     *     <alias>legacy-rsa</alias>
+     *   </signer>
+     *   <signer>
+     *     <alias>new-ec</alias>
+     *     <keypass>${ec.keypass}</keypass>
+     *     <tsa>http://timestamp.example.com</tsa>
+     *   </signer>
+     * </signers>
+     * }</pre>
+     *
+     * The signers sign an archive one after the other, in the same task. The archive is therefore read again while it
+     * is likely still in the file system cache, instead of in a separate execution later in the build. Each signer
+     * is retried according to {@link #maxTries}. Cannot be combined with {@link #deferTimestamping}.
+     *
+     * @since 3.1.1
+     */
+    @Parameter
+    private Signer[] signers = {};
+
     /**
      * Maximum number of parallel threads to use when signing jar files. Increases performance when signing multiple jar
      * files, especially when network operations are used during signing, for example when using a Time Stamp Authority
@@ -217,11 +378,214 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
     @Parameter(property = "jarsigner.threadCount", defaultValue = "1")
     private int threadCount;
 
+    /**
+     * Ant-like inclusion patterns selecting archives nested inside the processed archives, that should be signed as
+     * well. For example {@code WEB-INF/lib/*.jar} for a WAR file or {@code BOOT-INF/lib/*.jar} for a Spring Boot
+     * application. The patterns are matched against the entry names within each processed archive. The nested
+     * archives are extracted, signed in parallel using {@link #threadCount} threads, and written back into their outer
+     * archive in a single pass. After that the outer archive is signed. By default no nested archives are signed.
+     *
+     * <p>The patterns are globs, where a {@code **} directory also matches no directory at all, except within a
+     * {@code {a,b}} group.</p>
+     *
+     * @since 3.1.1
+     */
+    @Parameter
+    private String[] nestedIncludes = {};
+
+    /**
+     * Ant-like exclusion patterns for archives nested inside the processed archives, that should not be signed. See
+     * {@link #nestedIncludes}.
+     *
+     * @since 3.1.1
+     */
+    @Parameter
+    private String[] nestedExcludes = {};
+
+    /**
+     * Queue archives to a signing thread pool shared by all executions within the Maven session that have this
+     * parameter enabled, instead of using a thread pool per execution. In a multi-module build all modules then share
+     * one pool of {@link #threadCount} threads (the value of the first execution using the queue is used) and the
+     * knowledge of which TSA servers are failing. See {@link #awaitSessionQueue} for when the signing is waited for.
+     * Cannot be combined with {@link #deferTimestamping}, the queue has no separate timestamping stage.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.sessionQueue", defaultValue = "false")
+    private boolean sessionQueue;
+
+    /**
+     * Only used if {@link #sessionQueue} is enabled. Whether this execution waits for its archives before it finishes,
+     * and for the archives queued so far by the executions that did not wait for theirs. If disabled the archives are
+     * only queued and signed in the background while the build continues. An execution with this parameter enabled then
+     * acts as a barrier, for example in the last module of the build, or an execution bound to a later phase (like
+     * {@code verify}) that does not select any archives by itself.
+     *
+     * <p>Note: archives that are never waited for by any execution may be left unsigned, and signing failures for them
+     * are not reported.</p>
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.awaitSessionQueue", defaultValue = "true")
+    private boolean awaitSessionQueue;
+
+    /**
+     * Sign the archives without timestamping first, and timestamp them in a second stage. The signing is done by
+     * jarsigner without any network round trip, and the timestamps for the signatures of all archives are then
+     * requested with {@link #timestampThreadCount} parallel requests, and added to the signature blocks of the
+     * archives. The latency of the TSA server then no longer adds up for each archive signed. The resulting archives
+     * are the same as if jarsigner had timestamped them.
+     *
+     * <p>Only TSA servers given by {@link #tsa} are supported, not {@link #tsacert}. Failed timestamp requests are
+     * retried according to {@link #maxTries} and {@link #maxRetryDelaySeconds}, using the next TSA server if multiple
+     * are given. If no TSA server is given this parameter has no effect. Cannot be combined with
+     * {@link #sessionQueue}.</p>
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.deferTimestamping", defaultValue = "false")
+    private boolean deferTimestamping;
+
+    /**
+     * Only used if {@link #deferTimestamping} is enabled. Maximum number of parallel requests to the TSA server(s) when
+     * timestamping the signed archives.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.timestampThreadCount", defaultValue = "8")
+    private int timestampThreadCount;
+
+    /**
+     * Percentile of the duration of earlier successful signings after which a second, hedged, attempt to sign an
+     * archive is started, using a different TSA server. The archive of the attempt that finishes first is kept, and
+     * the other attempt is cancelled. This reduces the time spent waiting for a slow TSA server, while the cost is
+     * bounded: with the value 95, at most about 5% of the archives get a second attempt. The cancelled attempt is
+     * not registered as a failure of its server, only the latency of the faster server is.
+     *
+     * <p>Hedging requires at least two TSA servers in {@link #tsa} or {@link #tsacert}, and starts after 5 archives
+     * have been signed successfully by the execution. Each attempt writes the signed archive to a temporary file next
+     * to the archive (jarsigner option {@code -signedjar}). Has no effect with {@link #deferTimestamping}. The value 0
+     * disables hedging, other values must be between 1 and 99.</p>
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.hedgePercentile", defaultValue = "0")
+    private int hedgePercentile;
+
+    /**
+     * Maximum time, in seconds, for a single attempt to sign an archive. When it expires the jarsigner process is
+     * destroyed and the attempt counts as failed, so the next attempt (see {@link #maxTries}) uses the next TSA
+     * server. Protects against a jarsigner process waiting forever on a TSA server, or network based PKCS11 HSM, that
+     * does not respond. Time spent waiting for a free slot of {@code sessionForkLimit} does not count. The default
+     * value of 0 means no timeout.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.attemptTimeoutSeconds", defaultValue = "0")
+    private int attemptTimeoutSeconds;
+
+    /**
+     * Timestamp for reproducible output archive entries, either formatted as ISO 8601 extended offset date-time (e.g.
+     * in UTC such as '2011-12-03T10:15:30Z' or with an offset '2019-10-05T20:37:42+02:00'), or as an int representing
+     * seconds since the epoch (like <a href="https://reproducible-builds.org/docs/source-date-epoch/">
+     * SOURCE_DATE_EPOCH</a>). When set, the manifest and the signature files of each signed archive get this time,
+     * instead of the time of signing. jarsigner keeps the order of the entries and writes the manifest in a stable
+     * format, so the rest of the archive is then the same for the same input.
+     *
+     * <p>Not set by default, since the archives are rewritten when the times differ. Set it to
+     * {@code ${project.build.outputTimestamp}} to use the same timestamp as the plugins creating the archives.</p>
+     *
+     * <p>Note that the signature blocks themselves still differ between builds: jarsigner adds the signing time as a
+     * signed attribute, and a timestamp from a TSA server is unique as well.</p>
+     *
+     * <p>Cannot be combined with a {@code -signedjar} argument.</p>
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.outputTimestamp")
+    private String outputTimestamp;
+
+    /**
+     * Directory of a cache of signed archives, which can be shared between builds. Before signing an archive, the
+     * cache is consulted using the SHA-256 digest of the archive together with the certificate fingerprint of each
+     * alias to sign with and all options affecting the signed archive. If the same archive was signed before in the
+     * same way, the signed archive is copied from the cache instead of executing jarsigner. Otherwise the archive is
+     * signed (and timestamped) and then stored in the cache.
+     *
+     * <p>The certificates are read from the keystore in the Maven JVM, so the cache is not used with keystores that can
+     * only be opened by jarsigner, like PKCS11 tokens. Note that an archive taken from the cache has the timestamp of
+     * when it was first signed. By default no cache is used. Cannot be combined with a {@code -signedjar} argument.</p>
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.signedArchiveCacheDirectory")
+    private File signedArchiveCacheDirectory;
+
+    /**
+     * Maximum total size, in megabytes, of the archives in the {@link #signedArchiveCacheDirectory}. When it is
+     * exceeded the least recently used archives are deleted.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.signedArchiveCacheMaxSize", defaultValue = "1024")
+    private int signedArchiveCacheMaxSize;
+
+    /** The {@link #outputTimestamp} in milliseconds since the epoch, -1 if not set */
+    private long outputTimestampMillis = -1;
+
+    /** Cache of signed archives, if enabled and the certificates could be read */
+    private SignedArchiveCache signedArchiveCache;
+
+    /** Description of the certificates and options of the execution, part of the signed archive cache keys */
+    private String signedArchiveCacheOptions;
+
+    /** Cache keys of archives being signed, to store them in the cache with once complete */
+    private final Map<File, String> pendingCacheKeys = new ConcurrentHashMap<>();
+
+    /** Archives taken from the signed archive cache, that are therefore already complete */
+    private final Set<File> cachedArchives = ConcurrentHashMap.newKeySet();
+
     /** Current WaitStrategy, to allow for sleeping after a signing failure. */
     private WaitStrategy waitStrategy = this::defaultWaitStrategy;
 
+    /** Creates the executor signing the archives from the number of threads to use. */
+    private IntFunction<ExecutorService> executorFactory = Executors::newFixedThreadPool;
+
     private TsaSelector tsaSelector;
 
+    /** The decrypted {@link #keypass}, see {@link #prepareRequests()} */
+    private String decryptedKeypass;
+
+    /** The decrypted keypass of each of the {@link #signers}, see {@link #prepareRequests()} */
+    private String[] decryptedSignerKeypasses;
+
+    /** Statistics of TSA servers across builds, if enabled */
+    private TsaScoreboard tsaScoreboard;
+
+    /** Ongoing probes of the TSA servers, to wait for before signing */
+    private List<Future<?>> tsaProbes = new ArrayList<>();
+
+    /** Maximum time to wait for a probe of a TSA server */
+    private static final Duration TSA_PROBE_TIMEOUT = Duration.ofSeconds(10);
+
+    /** Retries left for the execution, shared by all threads */
+    private RetryBudget retryBudget;
+
+    /** Adds timestamps to signed archives, if timestamping is deferred */
+    private SignatureTimestamper signatureTimestamper;
+
+    /** Base name of the signature files created by jarsigner, if timestamping is deferred */
+    private String signatureName;
+
+    /** Durations of successful signings, to decide when to start a hedged attempt */
+    private final LatencyTracker latencyTracker = new LatencyTracker();
+
+    /** Runs the attempts of hedged signings and attempts with a timeout */
+    private ExecutorService attemptExecutor;
+
+    /** Connect and read timeout of timestamp requests, if timestamping is deferred */
+    private static final Duration TIMESTAMP_TIMEOUT = Duration.ofSeconds(60);
+
     /** Exponent limit for exponential wait after failure function. 2^20 = 1048576 sec ~= 12 days. */
     private static final int MAX_WAIT_EXPONENT_ATTEMPT = 20;
 
@@ -231,6 +595,9 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
 
         if (commandLineInfo != null) {
             commandLineInfo = StringUtils.replace(commandLineInfo, this.keypass, "'*****'");
+            for (Signer signer : signers) {
+                commandLineInfo = StringUtils.replace(commandLineInfo, signer.getKeypass(), "'*****'");
+            }
         }
 
         return commandLineInfo;
@@ -240,13 +607,32 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
     protected void preProcessArchive(final File archive) throws MojoExecutionException {
         if (removeExistingSignatures) {
             try {
-                JarSignerUtil.unsignArchive(archive);
+                if (keepManifestDigests) {
+                    removeSignatureFiles(archive);
+                } else {
+                    JarSignerUtil.unsignArchive(archive);
+                }
             } catch (IOException e) {
                 throw new MojoExecutionException("Failed to unsign archive " + archive + ": " + e.getMessage(), e);
             }
         }
     }
 
+    /**
+     * Removes the signature files of an archive, found in the central directory, leaving the manifest unchanged.
+     */
+    private static void removeSignatureFiles(File archive) throws IOException {
+        Set<String> signatureFiles;
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            signatureFiles = SignatureCheck.getSignatureEntries(zipFile).stream()
+                    .map(ZipEntry::getName)
+                    .collect(Collectors.toSet());
+        }
+        if (!signatureFiles.isEmpty()) {
+            ArchiveRewriter.removeEntries(archive, signatureFiles);
+        }
+    }
+
     @Override
     protected void validateParameters() throws MojoExecutionException {
         super.validateParameters();
@@ -261,11 +647,22 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
             maxRetryDelaySeconds = 0;
         }
 
+        if (retryBudgetPercent < 0) {
+            getLog().warn(getMessage("invalidRetryBudgetPercent", retryBudgetPercent));
+            retryBudgetPercent = 0;
+        }
+        retryBudget = new RetryBudget(retryBudgetPercent, maxTries - 1);
+
         if (threadCount < 1) {
             getLog().warn(getMessage("invalidThreadCount", threadCount));
             threadCount = 1;
         }
 
+        if (signedArchiveCacheMaxSize < 1) {
+            getLog().warn(getMessage("invalidSignedArchiveCacheMaxSize", signedArchiveCacheMaxSize));
+            signedArchiveCacheMaxSize = 1;
+        }
+
         if (tsa.length > 0 && tsacert.length > 0) {
             getLog().warn(getMessage("warnUsageTsaAndTsacertSimultaneous"));
         }
@@ -278,7 +675,275 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
         if (tsacert.length > 1 && maxTries == 1) {
             getLog().warn(getMessage("warnUsageMultiTsacertWithoutRetry", tsacert.length));
         }
-        tsaSelector = new TsaSelector(tsa, tsacert, tsapolicyid, tsadigestalg);
+        if (timestampThreadCount < 1) {
+            getLog().warn(getMessage("invalidTimestampThreadCount", timestampThreadCount));
+            timestampThreadCount = 1;
+        }
+        if (hedgePercentile < 0 || hedgePercentile > 99) {
+            getLog().warn(getMessage("invalidHedgePercentile", hedgePercentile));
+            hedgePercentile = 0;
+        }
+        if (attemptTimeoutSeconds < 0) {
+            getLog().warn(getMessage("invalidAttemptTimeoutSeconds", attemptTimeoutSeconds));
+            attemptTimeoutSeconds = 0;
+        }
+        if (hedgePercentile > 0 || attemptTimeoutSeconds > 0) {
+            // Idle threads end after a while, so the pool does not need to be shut down
+            attemptExecutor =
+                    Executors.newCachedThreadPool(SessionSigningQueue.daemonThreadFactory("jarsigner-attempt-"));
+        }
+
+        outputTimestampMillis = parseOutputTimestamp(outputTimestamp);
+
+        for (String algorithm : checksumAlgorithms) {
+            try {
+                MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new MojoExecutionException(getMessage("invalidChecksumAlgorithm", algorithm), e);
+            }
+        }
+        // These work on the archive after signing, but with -signedjar jarsigner leaves the archive unsigned
+        if (checksumAlgorithms.length > 0 && hasSignedjarArgument()) {
+            throw new MojoExecutionException(getMessage("signedjarNotSupported", "checksumAlgorithms"));
+        }
+        if (outputTimestampMillis >= 0 && hasSignedjarArgument()) {
+            throw new MojoExecutionException(getMessage("signedjarNotSupported", "outputTimestamp"));
+        }
+        if (signedArchiveCacheDirectory != null && hasSignedjarArgument()) {
+            throw new MojoExecutionException(getMessage("signedjarNotSupported", "signedArchiveCacheDirectory"));
+        }
+
+        for (Signer signer : signers) {
+            if (signer.getAlias() == null) {
+                throw new MojoExecutionException(getMessage("signerWithoutAlias"));
+            }
+        }
+        if (signers.length > 0 && deferTimestamping) {
+            throw new MojoExecutionException(getMessage("signersWithDeferTimestamping"));
+        }
+        if (sessionQueue && deferTimestamping) {
+            throw new MojoExecutionException(getMessage("sessionQueueWithDeferTimestamping"));
+        }
+
+        if (deferTimestamping && tsacert.length > 0) {
+            throw new MojoExecutionException(getMessage("deferTimestampingWithTsacert"));
+        }
+        if (deferTimestamping && tsa.length == 0) {
+            getLog().warn(getMessage("warnDeferTimestampingWithoutTsa"));
+            deferTimestamping = false;
+        }
+        if (deferTimestamping) {
+            if (sigfile == null && getAlias() == null) {
+                throw new MojoExecutionException(getMessage("deferTimestampingWithoutSignatureName"));
+            }
+            signatureName = SignatureTimestamper.getSignatureName(sigfile, getAlias());
+            signatureTimestamper = new SignatureTimestamper(new TsaClient(this::getProxy, TIMESTAMP_TIMEOUT));
+        }
+
+        if (sessionQueue) {
+            SessionSigningQueue queue = getSessionSigningQueue();
+            if (queue.getThreadCount() != threadCount) {
+                getLog().warn(getMessage("warnSessionQueueThreadCountInUse", threadCount, queue.getThreadCount()));
+            }
+            tsaSelector = queue.getTsaSelector(tsa, tsacert, tsapolicyid, tsadigestalg);
+        } else {
+            tsaSelector = new TsaSelector(tsa, tsacert, tsapolicyid, tsadigestalg);
+        }
+        if (tsaProbe && tsa.length > 0 && tsaSelector.markProbed()) {
+            startTsaProbes();
+        }
+        if (tsaScoreboardFile != null) {
+            tsaScoreboard = new TsaScoreboard(tsaScoreboardFile);
+            try {
+                tsaScoreboard.seed(tsaSelector, System.currentTimeMillis());
+            } catch (IOException e) {
+                getLog().warn(getMessage("tsaScoreboardFailure", tsaScoreboardFile, e.getMessage()));
+            }
+        }
+    }
+
+    /** Whether the jarsigner arguments write the signed archive to another file, instead of signing in place */
+    private boolean hasSignedjarArgument() {
+        return getArguments() != null
+                && Arrays.stream(getArguments())
+                        .anyMatch(argument -> argument.trim().equals("-signedjar"));
+    }
+
+    /**
+     * Parses an output timestamp the same way as Maven plugins creating archives do. A value of a single character,
+     * like the {@code 'disabled'} Maven uses by default, is not a timestamp.
+     *
+     * @return the timestamp in milliseconds since the epoch, -1 if not set
+     */
+    private long parseOutputTimestamp(String value) throws MojoExecutionException {
+        if (value == null || value.length() < 2) {
+            return -1;
+        }
+        try {
+            if (value.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(value) * 1000;
+            }
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new MojoExecutionException(getMessage("invalidOutputTimestamp", value), e);
+        }
+    }
+
+    /** Starts probing all TSA servers given by URL in parallel, to be waited for by {@link #awaitTsaProbes()} */
+    private void startTsaProbes() {
+        List<TsaServer> tsaServers = tsaSelector.getServers().stream()
+                .filter(tsaServer -> tsaServer.getTsaUrl() != null)
+                .collect(Collectors.toList());
+        ExecutorService probeExecutor = Executors.newFixedThreadPool(
+                tsaServers.size(), SessionSigningQueue.daemonThreadFactory("jarsigner-tsa-probe-"));
+        TsaClient tsaClient = new TsaClient(this::getProxy, TSA_PROBE_TIMEOUT);
+        byte[] data = new byte[32];
+        new SecureRandom().nextBytes(data);
+        for (TsaServer tsaServer : tsaServers) {
+            tsaProbes.add(probeExecutor.submit(() -> probeTsa(tsaClient, tsaServer, data)));
+        }
+        probeExecutor.shutdown(); // The probes already submitted still run
+    }
+
+    private void probeTsa(TsaClient tsaClient, TsaServer tsaServer, byte[] data) {
+        long start = System.nanoTime();
+        try {
+            tsaClient.getTimestampToken(
+                    tsaServer.getTsaUrl(), tsaServer.getTsaPolicyId(), tsaServer.getTsaDigestAlt(), data);
+            Duration latency = Duration.ofNanos(System.nanoTime() - start);
+            observe(tsaSelector.leaseOf(tsaServer)).success(latency);
+            getLog().info(getMessage("tsaProbed", tsaServer.getTsaUrl(), latency.toMillis()));
+        } catch (IOException e) {
+            observe(tsaSelector.leaseOf(tsaServer)).failure();
+            getLog().warn(getMessage("tsaProbeFailure", tsaServer.getTsaUrl(), e.getMessage()));
+        }
+    }
+
+    /** Waits for the probes of the TSA servers, if any */
+    private void awaitTsaProbes() throws MojoExecutionException {
+        try {
+            for (Future<?> probe : tsaProbes) {
+                // The probes have a connect and read timeout, this is an extra safety
+                probe.get(TSA_PROBE_TIMEOUT.multipliedBy(3).toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Thread interrupted while waiting for TSA probes", e);
+        } catch (ExecutionException | TimeoutException e) {
+            getLog().warn(getMessage("tsaProbesNotDone", e.getMessage()));
+        } finally {
+            tsaProbes.forEach(probe -> probe.cancel(true));
+            tsaProbes.clear();
+        }
+    }
+
+    /** Gets the signing queue of the session, creating it if this is the first execution using it */
+    private SessionSigningQueue getSessionSigningQueue() {
+        return SessionScoped.computeIfAbsent(
+                getSession(), SessionSigningQueue.class, () -> new SessionSigningQueue(threadCount));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void prepareRequests() throws MojoExecutionException {
+        super.prepareRequests();
+
+        // Special handling for passwords through the Maven Security Dispatcher
+        decryptedKeypass = decrypt(keypass);
+        decryptedSignerKeypasses = new String[signers.length];
+        for (int i = 0; i < signers.length; i++) {
+            String signerKeypass = signers[i].getKeypass();
+            decryptedSignerKeypasses[i] = signerKeypass != null ? decrypt(signerKeypass) : decryptedKeypass;
+        }
+
+        // The certchain is only checked along with the keystore, it is used for the key of the keystore
+        boolean keystoreChecked = false;
+        if (checkKeystore && signers.length == 0) {
+            keystoreChecked = checkKeystore(decryptedKeypass);
+        } else if (checkKeystore) {
+            keystoreChecked = true;
+            for (int i = 0; i < signers.length; i++) {
+                keystoreChecked &= checkKeystore(signers[i].getAlias(), decryptedSignerKeypasses[i]);
+            }
+        }
+        if (keystoreChecked) {
+            checkCertchain();
+        }
+
+        if (signedArchiveCacheDirectory != null) {
+            signedArchiveCacheOptions = getSigningOptions();
+            if (signedArchiveCacheOptions == null) {
+                getLog().warn(getMessage("signedArchiveCacheDisabled"));
+            } else {
+                signedArchiveCache =
+                        new SignedArchiveCache(signedArchiveCacheDirectory, signedArchiveCacheMaxSize * 1024L * 1024L);
+            }
+        }
+    }
+
+    /**
+     * Describes the certificates and the options of the execution affecting the signed archive, except the
+     * jarsigner arguments that are part of each request. Can be used after {@link #prepareRequests()}.
+     *
+     * @return the description, or {@code null} if the certificates could not be read
+     */
+    String getSigningOptions() throws MojoExecutionException {
+        List<String> options = new ArrayList<>();
+        List<String> aliases = new ArrayList<>();
+        if (signers.length == 0) {
+            aliases.add(getAlias());
+        }
+        for (Signer signer : signers) {
+            aliases.add(signer.getAlias());
+            options.add("signer=" + signer.getAlias() + "," + signer.getSigfile() + "," + signer.getTsa());
+        }
+        for (String signerAlias : aliases) {
+            String fingerprint = getCertificateFingerprint(signerAlias);
+            if (fingerprint == null) {
+                getLog().debug("Certificate of alias " + signerAlias + " cannot be read from the keystore");
+                return null;
+            }
+            options.add("certificate=" + fingerprint);
+        }
+
+        String certchainDigest = null;
+        if (certchain != null) {
+            try {
+                certchainDigest = FileDigests.sha256(certchain);
+            } catch (IOException e) {
+                throw new MojoExecutionException(getMessage("certchainFailure", certchain, e.getMessage()), e);
+            }
+        }
+        Toolchain toolchain = getToolchain();
+        options.add("sigfile=" + sigfile);
+        options.add("tsa=" + Arrays.toString(tsa));
+        options.add("tsacert=" + Arrays.toString(tsacert));
+        options.add("tsapolicyid=" + Arrays.toString(tsapolicyid));
+        options.add("tsadigestalg=" + tsadigestalg);
+        options.add("certchain=" + certchainDigest);
+        options.add("keepManifestDigests=" + keepManifestDigests);
+        options.add("outputTimestamp=" + outputTimestampMillis);
+        options.add("jdk="
+                + (toolchain != null
+                        ? toolchain.findTool("jarsigner")
+                        : System.getProperty("java.home") + " " + System.getProperty("java.version")));
+        return String.join("\n", options);
+    }
+
+    /** Checks that the certchain file, if any, contains certificates */
+    private void checkCertchain() throws MojoExecutionException {
+        if (certchain == null) {
+            return;
+        }
+        try (InputStream in = new FileInputStream(certchain)) {
+            if (CertificateFactory.getInstance("X.509").generateCertificates(in).isEmpty()) {
+                throw new MojoExecutionException(getMessage("certchainFailure", certchain, "no certificates"));
+            }
+        } catch (IOException | CertificateException e) {
+            throw new MojoExecutionException(getMessage("certchainFailure", certchain, e.getMessage()), e);
+        }
     }
 
     /**
@@ -288,11 +953,8 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
     protected JarSignerRequest createRequest(File archive) throws MojoExecutionException {
         JarSignerSignRequest request = new JarSignerSignRequest();
         request.setSigfile(sigfile);
-        updateJarSignerRequestWithTsa(request, tsaSelector.getServer());
         request.setCertchain(certchain);
-
-        // Special handling for passwords through the Maven Security Dispatcher
-        request.setKeypass(decrypt(keypass));
+        request.setKeypass(decryptedKeypass);
         return request;
     }
 
@@ -309,16 +971,244 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
      */
     @Override
     protected void processArchives(List<File> archives) throws MojoExecutionException {
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-        List<Future<Void>> futures = archives.stream()
-                .map(file -> executor.submit((Callable<Void>) () -> {
-                    processArchive(file);
-                    return null; // Return dummy value to conform with Void type
-                }))
-                .collect(Collectors.toList());
+        awaitTsaProbes();
+        ExecutorService executor = executorFactory.apply(threadCount);
+        ExecutorService timestampExecutor =
+                deferTimestamping ? Executors.newFixedThreadPool(timestampThreadCount) : null;
         try {
-            for (Future<Void> future : futures) {
-                future.get(); // Wait for completion. Result ignored, but may raise any Exception
+            if (nestedIncludes.length > 0) {
+                processNestedArchives(archives, executor, timestampExecutor);
+            }
+
+            if (sessionQueue) {
+                processArchivesInSessionQueue(archives);
+            } else {
+                signArchives(archives, executor, timestampExecutor, false);
+            }
+        } finally {
+            // Shutdown of thread pools. If an Exception occurred, remaining threads will be aborted "best effort"
+            executor.shutdownNow();
+            if (timestampExecutor != null) {
+                timestampExecutor.shutdownNow();
+            }
+            saveTsaScoreboard();
+        }
+    }
+
+    /** Adds the TSA server statistics of the execution to the scoreboard file, if enabled */
+    private void saveTsaScoreboard() {
+        if (tsaScoreboard != null) {
+            try {
+                tsaScoreboard.update(tsaSelector, System.currentTimeMillis());
+            } catch (IOException e) {
+                getLog().warn(getMessage("tsaScoreboardFailure", tsaScoreboardFile, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Signs the archives in parallel. If timestamping is deferred, the archives are then timestamped in parallel using
+     * the timestamp executor.
+     *
+     * @param nested whether the archives are temporary files extracted from outer archives, see
+     *            {@link #completeArchive(File, boolean)}
+     */
+    private void signArchives(
+            List<File> archives, ExecutorService executor, ExecutorService timestampExecutor, boolean nested)
+            throws MojoExecutionException {
+        processInParallel(executor, "sign", threadCount, archives, archive -> {
+            processArchive(archive);
+            if (timestampExecutor == null) {
+                completeArchive(archive, nested);
+            }
+        });
+        if (timestampExecutor != null) {
+            getLog().info(getMessage("timestamping", archives.size(), timestampThreadCount));
+            processInParallel(timestampExecutor, "timestamp", timestampThreadCount, archives, archive -> {
+                timestampArchive(archive);
+                completeArchive(archive, nested);
+            });
+        }
+    }
+
+    /**
+     * Completes an archive that is signed, and timestamped if deferred: writes its checksum files and records it as
+     * signed within the session, for a later verification in the same build.
+     *
+     * @param nested whether the archive is a temporary file extracted from an outer archive. It gets no checksum files
+     *            and is not recorded as signed, since it is deleted once written back into the outer archive.
+     */
+    private void completeArchive(File archive, boolean nested) throws MojoExecutionException {
+        applyOutputTimestamp(archive);
+        getMetrics().signed(archive.length());
+        String cacheKey = pendingCacheKeys.remove(archive);
+        if (cacheKey != null) {
+            try {
+                signedArchiveCache.store(cacheKey, archive);
+            } catch (IOException e) {
+                getLog().warn(getMessage("signedArchiveCacheFailure", archive, e.getMessage()));
+            }
+        }
+        if (nested) {
+            return;
+        }
+        writeChecksums(archive);
+        SessionSignedArchives signedArchives = getSessionSignedArchives();
+        if (signedArchives != null && signedArchives.isRecording()) {
+            try {
+                signedArchives.add(archive);
+            } catch (IOException e) {
+                getLog().warn("Failed to record " + archive + " as signed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Whether the archives are signed by the session queue after {@link #processArchives(List)} returns, so it is not
+     * known if they were signed successfully.
+     */
+    boolean isSignedAfterExecution() {
+        return sessionQueue && !awaitSessionQueue;
+    }
+
+    /** Sets the time of the manifest and the signature files of a signed archive, if an output timestamp is set */
+    private void applyOutputTimestamp(File archive) throws MojoExecutionException {
+        if (outputTimestampMillis < 0) {
+            return;
+        }
+        try {
+            Set<String> names = new HashSet<>();
+            names.add(JarFile.MANIFEST_NAME);
+            try (ZipFile zipFile = new ZipFile(archive)) {
+                for (ZipEntry entry : SignatureCheck.getSignatureEntries(zipFile)) {
+                    names.add(entry.getName());
+                }
+            }
+            ArchiveRewriter.setEntryTimes(archive, names, outputTimestampMillis);
+        } catch (IOException e) {
+            throw new MojoExecutionException(getMessage("outputTimestampFailure", archive, e.getMessage()), e);
+        }
+    }
+
+    /** Writes the checksum files of a signed archive, if any checksum algorithms are configured */
+    private void writeChecksums(File archive) throws MojoExecutionException {
+        if (checksumAlgorithms.length == 0) {
+            return;
+        }
+        try {
+            List<String> checksums = FileDigests.digests(archive, Arrays.asList(checksumAlgorithms));
+            for (int i = 0; i < checksumAlgorithms.length; i++) {
+                // Same extension as in a Maven repository, like "sha256" for "SHA-256"
+                String extension = checksumAlgorithms[i].replace("-", "").toLowerCase(Locale.ENGLISH);
+                File checksumFile = new File(archive.getPath() + "." + extension);
+                Files.write(checksumFile.toPath(), checksums.get(i).getBytes(StandardCharsets.US_ASCII));
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(getMessage("checksumFailure", archive, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Adds timestamps to the signature of an archive signed without timestamp. Will retry up to maxTries times if it
+     * fails.
+     *
+     * @throws MojoExecutionException if all attempts fail
+     */
+    private void timestampArchive(File archive) throws MojoExecutionException {
+        if (cachedArchives.contains(archive)) {
+            return; // Timestamped when it was signed and stored in the cache
+        }
+        retryBudget.registerRequest();
+        long previousDelayMillis = 0;
+        for (int attempt = 0; attempt < maxTries; attempt++) {
+            TsaSelector.Lease lease = observe(tsaSelector.lease());
+            TsaServer tsaServer = lease.getServer();
+            FlightRecorderEvents.Event event = FlightRecorderEvents.TIMESTAMP_ATTEMPT
+                    .begin()
+                    .set("archive", archive.getPath())
+                    .set("size", archive.length())
+                    .set("tsaUrl", tsaServer.getTsaUrl())
+                    .set("attempt", attempt + 1);
+            try {
+                lease.success(requestTimestamp(archive, tsaServer));
+                event.set("success", true).commit();
+                return;
+            } catch (IOException e) {
+                event.set("success", false).commit();
+                lease.failure();
+                boolean retry = attempt < maxTries - 1; // If not last attempt
+                if (retry && !retryBudget.tryAcquireRetry()) {
+                    getLog().warn(getMessage("retryBudgetExhausted", archive, retryBudgetPercent));
+                    retry = false;
+                }
+                if (retry) {
+                    getLog().warn(getMessage("timestampFailure", archive, e.getMessage()));
+                    getMetrics().retry();
+                    previousDelayMillis = waitStrategy.waitAfterFailure(
+                            attempt, Duration.ofSeconds(maxRetryDelaySeconds), previousDelayMillis);
+                } else {
+                    throw new MojoExecutionException(getMessage("timestampFailure", archive, e.getMessage()), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Timestamps an archive using a TSA server. The request counts as one of the jarsigner processes limited by
+     * {@code sessionForkLimit}.
+     *
+     * @return the time the request took, not counting the time waiting for a free slot
+     */
+    private Duration requestTimestamp(File archive, TsaServer tsaServer) throws IOException, MojoExecutionException {
+        try (SessionForkLimiter.Permit permit = acquireForkPermit()) {
+            long start = System.nanoTime();
+            signatureTimestamper.timestamp(
+                    archive,
+                    signatureName,
+                    tsaServer.getTsaUrl(),
+                    tsaServer.getTsaPolicyId(),
+                    tsaServer.getTsaDigestAlt());
+            return Duration.ofNanos(System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Thread interrupted while waiting to timestamp " + archive, e);
+        }
+    }
+
+    /**
+     * Processes all items using the executor and waits until all are done, or the first one has failed. At most twice
+     * as many items as there are threads are submitted at a time, and each result is collected as soon as it is done.
+     * Memory use and the time to notice a failure therefore do not grow with the number of items.
+     *
+     * @param pool the name of the executor, for the metrics of its utilization
+     * @param threads the number of threads of the executor
+     */
+    private <T> void processInParallel(
+            ExecutorService executor, String pool, int threads, List<T> items, ItemProcessor<T> processor)
+            throws MojoExecutionException {
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        LongAdder busyNanos = new LongAdder();
+        long start = System.nanoTime();
+        int window = threads * 2; // Keeps the threads busy while the result of a done item is collected
+        Iterator<T> remaining = items.iterator();
+        int submitted = 0;
+        try {
+            while (submitted > 0 || remaining.hasNext()) {
+                while (submitted < window && remaining.hasNext()) {
+                    T item = remaining.next();
+                    completionService.submit(() -> {
+                        long itemStart = System.nanoTime();
+                        try {
+                            processor.process(item);
+                        } finally {
+                            busyNanos.add(System.nanoTime() - itemStart);
+                        }
+                        return null; // Return dummy value to conform with Void type
+                    });
+                    submitted++;
+                }
+                completionService.take().get(); // Result ignored, but may raise any Exception
+                submitted--;
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -329,36 +1219,502 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
             }
             throw new MojoExecutionException("Error processing archives", e);
         } finally {
-            // Shutdown of thread pool. If an Exception occurred, remaining threads will be aborted "best effort"
-            executor.shutdownNow();
+            getMetrics()
+                    .poolUsage(
+                            pool,
+                            threads,
+                            Duration.ofNanos(System.nanoTime() - start),
+                            Duration.ofNanos(busyNanos.sum()));
+        }
+    }
+
+    /** Reports the outcome of using a TSA server also to the metrics */
+    private TsaSelector.Lease observe(TsaSelector.Lease lease) {
+        return lease != null ? lease.withListener(getMetrics()::tsaOutcome) : null;
+    }
+
+    /** Processing of a single item, like an archive, that may be done in parallel with other items */
+    @FunctionalInterface
+    private interface ItemProcessor<T> {
+        void process(T item) throws MojoExecutionException;
+    }
+
+    /**
+     * Signs the archives nested inside the given archives, matching {@link #nestedIncludes}, and writes them back
+     * into their outer archive.
+     */
+    private void processNestedArchives(List<File> archives, ExecutorService executor, ExecutorService timestampExecutor)
+            throws MojoExecutionException {
+        File directory;
+        try {
+            directory = Files.createTempDirectory("jarsigner-nested").toFile();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to create directory for nested archives: " + e.getMessage(), e);
+        }
+
+        try {
+            Map<File, List<NestedArchive>> nestedByOuterArchive = new LinkedHashMap<>();
+            for (File archive : archives) {
+                File archiveDirectory = new File(directory, String.valueOf(nestedByOuterArchive.size()));
+                try {
+                    List<NestedArchive> nestedArchives =
+                            NestedArchives.extract(archive, nestedIncludes, nestedExcludes, archiveDirectory);
+                    if (!nestedArchives.isEmpty()) {
+                        getLog().info(getMessage("processingNested", nestedArchives.size(), archive));
+                        nestedByOuterArchive.put(archive, nestedArchives);
+                    }
+                } catch (IOException e) {
+                    throw new MojoExecutionException(
+                            "Failed to extract nested archives from " + archive + ": " + e.getMessage(), e);
+                }
+            }
+
+            List<File> allNestedArchives = nestedByOuterArchive.values().stream()
+                    .flatMap(List::stream)
+                    .map(NestedArchive::getFile)
+                    .collect(Collectors.toList());
+            signArchives(allNestedArchives, executor, timestampExecutor, true);
+
+            processInParallel(
+                    executor, "sign", threadCount, new ArrayList<>(nestedByOuterArchive.keySet()), archive -> {
+                        Map<String, File> replacements = new HashMap<>();
+                        for (NestedArchive nested : nestedByOuterArchive.get(archive)) {
+                            replacements.put(nested.getEntryName(), nested.getFile());
+                        }
+                        try {
+                            ArchiveRewriter.replaceEntries(archive, replacements);
+                        } catch (IOException e) {
+                            throw new MojoExecutionException(
+                                    "Failed to update nested archives in " + archive + ": " + e.getMessage(), e);
+                        }
+                    });
+        } finally {
+            try {
+                deleteDirectory(directory.toPath());
+            } catch (IOException e) {
+                getLog().warn("Failed to delete directory " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Deletes a directory together with its content */
+    private static void deleteDirectory(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Queues archives in the signing queue shared by the session and waits for the queue if configured to */
+    private void processArchivesInSessionQueue(List<File> archives) throws MojoExecutionException {
+        SessionSigningQueue queue = getSessionSigningQueue();
+        SessionSigningQueue.Batch batch = queue.newBatch();
+        for (File file : archives) {
+            batch.submit(() -> {
+                processArchive(file);
+                completeArchive(file, false);
+                return null; // Return dummy value to conform with Void type
+            });
+        }
+
+        if (awaitSessionQueue) {
+            queue.await(batch);
+        } else {
+            queue.defer(batch);
+            getLog().info(getMessage("queuedInSession", archives.size(), queue.getThreadCount()));
         }
     }
 
     /**
      * {@inheritDoc}
      *
-     * Will retry signing up to maxTries times if it fails.
+     * Signs with each of the signers, if configured. Will retry signing up to maxTries times if it fails.
      *
      * @throws MojoExecutionException if all signing attempts fail
      */
     @Override
     protected void executeJarSigner(JarSigner jarSigner, JarSignerRequest request)
             throws JavaToolException, MojoExecutionException {
+        JarSignerSignRequest signRequest = (JarSignerSignRequest) request;
+        if (restoreFromCache(signRequest)) {
+            return;
+        }
+        if (signers.length == 0) {
+            signWithRetries(jarSigner, signRequest, false);
+            return;
+        }
+
+        // One signer after the other, while the archive is likely still in the file system cache
+        for (int i = 0; i < signers.length; i++) {
+            Signer signer = signers[i];
+            signRequest.setAlias(signer.getAlias());
+            signRequest.setKeypass(decryptedSignerKeypasses[i]);
+            signRequest.setSigfile(signer.getSigfile());
+            boolean signerTsa = signer.getTsa() != null;
+            if (signerTsa) {
+                signRequest.setTsaLocation(signer.getTsa());
+                signRequest.setTsaAlias(null);
+                signRequest.setTsapolicyid(null);
+                signRequest.setTsadigestalg(null);
+            }
+            signWithRetries(jarSigner, signRequest, signerTsa);
+        }
+    }
+
+    /**
+     * Replaces the archive of a request with the archive signed before in the same way, if it is in the signed archive
+     * cache. Otherwise the cache key is kept, to store the archive in the cache once it is signed.
+     *
+     * @return {@code true} if the archive was taken from the cache
+     */
+    private boolean restoreFromCache(JarSignerSignRequest request) {
+        if (signedArchiveCache == null) {
+            return false;
+        }
+        File archive = request.getArchive();
+        String options = signedArchiveCacheOptions + "\narguments=" + Arrays.toString(request.getArguments());
+        try {
+            String cacheKey = signedArchiveCache.getKey(archive, options);
+            if (signedArchiveCache.restore(cacheKey, archive)) {
+                getLog().info(getMessage("signedArchiveCached", archive));
+                cachedArchives.add(archive);
+                return true;
+            }
+            pendingCacheKeys.put(archive, cacheKey);
+        } catch (IOException e) {
+            getLog().warn(getMessage("signedArchiveCacheFailure", archive, e.getMessage()));
+        }
+        return false;
+    }
+
+    /**
+     * Signs an archive, retrying up to maxTries times if it fails.
+     *
+     * @param signerTsa whether the request uses the TSA server of a signer, instead of one selected by the TSA
+     *            selector
+     * @throws MojoExecutionException if all signing attempts fail
+     */
+    private void signWithRetries(JarSigner jarSigner, JarSignerSignRequest request, boolean signerTsa)
+            throws JavaToolException, MojoExecutionException {
+        retryBudget.registerRequest();
+        long previousDelayMillis = 0;
         for (int attempt = 0; attempt < maxTries; attempt++) {
-            JavaToolResult result = jarSigner.execute(request);
-            int resultCode = result.getExitCode();
-            if (resultCode == 0) {
+            // The TSA server is selected per attempt, to use the next one after a failure
+            TsaSelector.Lease lease = deferTimestamping || signerTsa ? null : observe(tsaSelector.lease());
+            if (lease != null) {
+                updateJarSignerRequestWithTsa(request, lease.getServer());
+            }
+            FlightRecorderEvents.Event event = FlightRecorderEvents.SIGN_ATTEMPT.begin();
+            JavaToolResult result = executeAttempt(jarSigner, request, lease);
+            event.set("archive", request.getArchive().getPath())
+                    .set("size", request.getArchive().length())
+                    .set("tsaUrl", lease != null ? lease.getServer().getTsaUrl() : null)
+                    .set("attempt", attempt + 1)
+                    .set("exitCode", result.getExecutionException() != null ? -1 : result.getExitCode())
+                    .commit();
+            if (isSuccess(result)) {
                 return;
             }
-            tsaSelector.registerFailure(); // Could be TSA server problem or something unrelated to TSA
 
-            if (attempt < maxTries - 1) { // If not last attempt
-                waitStrategy.waitAfterFailure(attempt, Duration.ofSeconds(maxRetryDelaySeconds));
-                updateJarSignerRequestWithTsa((JarSignerSignRequest) request, tsaSelector.getServer());
+            boolean retry = attempt < maxTries - 1; // If not last attempt
+            if (retry && !retryBudget.tryAcquireRetry()) {
+                getLog().warn(getMessage("retryBudgetExhausted", request.getArchive(), retryBudgetPercent));
+                retry = false;
+            }
+            if (retry) {
+                getMetrics().retry();
+                previousDelayMillis = waitStrategy.waitAfterFailure(
+                        attempt, Duration.ofSeconds(maxRetryDelaySeconds), previousDelayMillis);
+            } else if (result.getExecutionException() != null) {
+                // Last attempt failed, use this failure as resulting failure
+                throw new MojoExecutionException(
+                        getMessage(
+                                "commandLineException",
+                                result.getExecutionException().getMessage()),
+                        result.getExecutionException());
             } else {
                 // Last attempt failed, use this failure as resulting failure
                 throw new MojoExecutionException(
-                        getMessage("failure", getCommandlineInfo(result.getCommandline()), resultCode));
+                        getMessage("failure", getCommandlineInfo(result.getCommandline()), result.getExitCode()));
+            }
+        }
+    }
+
+    /**
+     * Executes a single attempt to sign an archive, hedged if enabled. Failures are reported to the lease(s) of the
+     * TSA server(s) used, since it could be a TSA server problem (or something unrelated to TSA).
+     *
+     * @param lease the lease of the TSA server the request is set up for, or {@code null} if timestamping is deferred
+     *            or the TSA server is not selected by the TSA selector
+     */
+    private JavaToolResult executeAttempt(JarSigner jarSigner, JarSignerSignRequest request, TsaSelector.Lease lease)
+            throws JavaToolException, MojoExecutionException {
+        Duration hedgeDelay = hedgePercentile > 0 ? latencyTracker.getPercentile(hedgePercentile) : null;
+        if (hedgeDelay != null
+                && lease != null
+                && tsaSelector.getServers().size() > 1
+                && !Arrays.asList(request.getArguments()).contains("-signedjar")) {
+            return executeHedged(jarSigner, request, lease, hedgeDelay);
+        }
+
+        long start = System.nanoTime();
+        JavaToolResult result =
+                attemptTimeoutSeconds > 0 ? executeWithTimeout(jarSigner, request) : jarSigner.execute(request);
+        if (isSuccess(result)) {
+            Duration latency = Duration.ofNanos(System.nanoTime() - start);
+            latencyTracker.record(latency);
+            if (lease != null) {
+                lease.success(latency);
+            }
+        } else if (lease != null) {
+            lease.failure();
+        }
+        return result;
+    }
+
+    /**
+     * Executes jarsigner, destroying the process if it has not finished within the attempt timeout. The timeout starts
+     * once jarsigner may start within the {@link #sessionForkLimit}, waiting for that is not a failure of the TSA
+     * server.
+     */
+    private JavaToolResult executeWithTimeout(JarSigner jarSigner, JarSignerSignRequest request)
+            throws JavaToolException, MojoExecutionException {
+        try (SessionForkLimiter.Permit permit = SessionForkLimiter.acquire(jarSigner)) {
+            Attempt attempt = new Attempt(permit.getJarSigner(), request, null);
+            Future<Attempt> future = attemptExecutor.submit(attempt);
+            try {
+                return getResult(future, attemptTimeoutSeconds, TimeUnit.SECONDS).result;
+            } catch (TimeoutException e) {
+                return createTimedOutResult(request.getArchive());
+            } finally {
+                attempt.abort(future);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Thread interrupted while waiting for jarsigner to complete", e);
+        }
+    }
+
+    /** Creates the result of an attempt that did not finish within the attempt timeout */
+    private JavaToolResult createTimedOutResult(File archive) {
+        String message = getMessage("attemptTimeout", archive, attemptTimeoutSeconds);
+        getLog().warn(message);
+        JavaToolResult result = new JavaToolResult();
+        result.setExitCode(-1);
+        result.setExecutionException(new CommandLineException(message));
+        return result;
+    }
+
+    /** Whether jarsigner was executed successfully, an execution exception is not reflected by the exit code */
+    private static boolean isSuccess(JavaToolResult result) {
+        return result.getExitCode() == 0 && result.getExecutionException() == null;
+    }
+
+    /**
+     * Executes an attempt to sign an archive, and starts a second attempt using another TSA server if the first one
+     * has not finished after the hedge delay. The other TSA server is only leased then, so no lease is left unused when
+     * the first attempt finishes in time. The signed archive of the first successful attempt is kept.
+     */
+    private JavaToolResult executeHedged(
+            JarSigner jarSigner, JarSignerSignRequest request, TsaSelector.Lease lease, Duration hedgeDelay)
+            throws JavaToolException, MojoExecutionException {
+        File archive = request.getArchive();
+        CompletionService<Attempt> completionService = new ExecutorCompletionService<>(attemptExecutor);
+        Map<Attempt, Future<Attempt>> pending = new LinkedHashMap<>();
+        List<File> signedArchives = new ArrayList<>();
+        SessionForkLimiter.Permit permit = null;
+        try {
+            // As in executeWithTimeout, the clock starts once the first attempt may start within the sessionForkLimit
+            permit = SessionForkLimiter.acquire(jarSigner);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(attemptTimeoutSeconds);
+            Attempt first = new Attempt(permit.getJarSigner(), copyRequest(request, lease, signedArchives), lease);
+            pending.put(first, completionService.submit(first));
+
+            long hedgeDelayNanos = hedgeDelay.toNanos();
+            if (attemptTimeoutSeconds > 0) {
+                hedgeDelayNanos = Math.min(hedgeDelayNanos, deadline - System.nanoTime());
+            }
+            Future<Attempt> completed = completionService.poll(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+            if (completed == null && attemptTimeoutSeconds > 0 && deadline - System.nanoTime() <= 0) {
+                lease.failure();
+                return createTimedOutResult(archive);
+            }
+            if (completed == null) {
+                TsaSelector.Lease hedgeLease = observe(tsaSelector.leaseOther(lease.getServer()));
+                if (hedgeLease != null) {
+                    getLog().info(getMessage("hedging", archive, hedgeDelay.toMillis()));
+                    Attempt second =
+                            new Attempt(jarSigner, copyRequest(request, hedgeLease, signedArchives), hedgeLease);
+                    pending.put(second, completionService.submit(second));
+                }
+                completed = takeCompleted(completionService, deadline);
+            }
+
+            while (true) {
+                if (completed == null) {
+                    pending.keySet().forEach(timedOut -> timedOut.lease.failure());
+                    return createTimedOutResult(archive);
+                }
+                Attempt attempt = getResult(completed);
+                pending.remove(attempt);
+                if (isSuccess(attempt.result)) {
+                    latencyTracker.record(attempt.duration);
+                    attempt.lease.success(attempt.duration);
+                    Files.move(
+                            attempt.request.getSignedjar().toPath(),
+                            archive.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                    // The attempt still running is cancelled, it did not fail
+                    pending.keySet().forEach(slower -> slower.lease.cancel());
+                    return attempt.result;
+                }
+                attempt.lease.failure();
+                if (pending.isEmpty()) {
+                    return attempt.result;
+                }
+                completed = takeCompleted(completionService, deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Thread interrupted while waiting for jarsigner to complete", e);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to replace " + archive + ": " + e.getMessage(), e);
+        } finally {
+            pending.forEach(Attempt::abort);
+            // Without an outcome, like when interrupted, the leases are released without counting anything
+            pending.keySet().forEach(unfinished -> unfinished.lease.cancel());
+            if (permit != null) {
+                permit.close();
+            }
+            signedArchives.forEach(File::delete);
+        }
+    }
+
+    /** Waits for the next completed attempt, returns {@code null} if the attempt timeout expires first */
+    private Future<Attempt> takeCompleted(CompletionService<Attempt> completionService, long deadline)
+            throws InterruptedException {
+        if (attemptTimeoutSeconds > 0) {
+            return completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        return completionService.take();
+    }
+
+    /** Gets the result of a completed attempt, rethrowing the exception of the attempt if it failed with one */
+    private static <T> T getResult(Future<T> completed)
+            throws JavaToolException, MojoExecutionException, InterruptedException {
+        try {
+            return getResult(completed, 0, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Attempt not completed", e); // Cannot happen, the attempt is completed
+        }
+    }
+
+    /**
+     * Gets the result of an attempt, waiting at most the given time, rethrowing the exception of the attempt if it
+     * failed with one.
+     */
+    private static <T> T getResult(Future<T> future, long timeout, TimeUnit unit)
+            throws JavaToolException, MojoExecutionException, InterruptedException, TimeoutException {
+        try {
+            return future.get(timeout, unit);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JavaToolException) {
+                throw (JavaToolException) e.getCause();
+            }
+            throw new MojoExecutionException("Error processing archive", e);
+        }
+    }
+
+    /**
+     * Copies a request, to use the TSA server of the given lease and write the signed archive to a new temporary file
+     * next to the archive. The temporary file is added to the given list.
+     */
+    private JarSignerSignRequest copyRequest(
+            JarSignerSignRequest request, TsaSelector.Lease lease, List<File> signedArchives) {
+        JarSignerSignRequest copy = new JarSignerSignRequest();
+        copy.setVerbose(request.isVerbose());
+        copy.setAlias(request.getAlias());
+        copy.setArchive(request.getArchive());
+        copy.setKeystore(request.getKeystore());
+        copy.setStoretype(request.getStoretype());
+        copy.setStorepass(request.getStorepass());
+        copy.setProviderArg(request.getProviderArg());
+        copy.setProviderClass(request.getProviderClass());
+        copy.setProviderName(request.getProviderName());
+        copy.setWorkingDirectory(request.getWorkingDirectory());
+        copy.setMaxMemory(request.getMaxMemory());
+        copy.setProtectedAuthenticationPath(request.isProtectedAuthenticationPath());
+        copy.setArguments(request.getArguments());
+        copy.setKeypass(request.getKeypass());
+        copy.setSigfile(request.getSigfile());
+        copy.setCertchain(request.getCertchain());
+        updateJarSignerRequestWithTsa(copy, lease.getServer());
+
+        File archive = request.getArchive();
+        File signedArchive = new File(archive.getParentFile(), archive.getName() + ".hedge" + signedArchives.size());
+        signedArchives.add(signedArchive);
+        copy.setSignedjar(signedArchive);
+        return copy;
+    }
+
+    /**
+     * An attempt to sign an archive on the attempt executor, with a timeout or as one of the attempts of a hedged
+     * signing.
+     */
+    private static class Attempt implements Callable<Attempt> {
+        private final JarSigner jarSigner;
+        private final JarSignerSignRequest request;
+        private final TsaSelector.Lease lease;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private JavaToolResult result;
+        private Duration duration;
+
+        Attempt(JarSigner jarSigner, JarSignerSignRequest request, TsaSelector.Lease lease) {
+            this.jarSigner = jarSigner;
+            this.request = request;
+            this.lease = lease;
+        }
+
+        @Override
+        public Attempt call() throws JavaToolException {
+            if (!started.compareAndSet(false, true)) {
+                return this; // Aborted before it started
+            }
+            try {
+                long start = System.nanoTime();
+                result = jarSigner.execute(request);
+                duration = Duration.ofNanos(System.nanoTime() - start);
+                return this;
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        /**
+         * Cancels the attempt, destroying its jarsigner process if still running, and waits until it has finished.
+         * Otherwise the next attempt could write the same archive while the jarsigner process is being destroyed.
+         */
+        void abort(Future<Attempt> future) {
+            future.cancel(true);
+            if (!started.compareAndSet(false, true)) {
+                try {
+                    finished.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
         }
     }
@@ -368,6 +1724,11 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
         this.waitStrategy = waitStrategy;
     }
 
+    /** Set the factory of the executor signing the archives. Package private for testing. */
+    void setExecutorFactory(IntFunction<ExecutorService> executorFactory) {
+        this.executorFactory = executorFactory;
+    }
+
     /** Wait/sleep after a signing failure before the next re-try should happen. */
     @FunctionalInterface
     interface WaitStrategy {
@@ -377,13 +1738,17 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
          *
          * @param attempt the attempt number (0 is the first)
          * @param maxRetryDelay the maximum duration to sleep (may be zero)
+         * @param previousDelayMillis the delay returned for the previous attempt of the same archive (0 if none)
+         * @return the delay used, in milliseconds
          * @throws MojoExecutionException if the sleep was interrupted
          */
-        void waitAfterFailure(int attempt, Duration maxRetryDelay) throws MojoExecutionException;
+        long waitAfterFailure(int attempt, Duration maxRetryDelay, long previousDelayMillis)
+                throws MojoExecutionException;
     }
 
-    private void defaultWaitStrategy(int attempt, Duration maxRetryDelay) throws MojoExecutionException {
-        waitAfterFailure(attempt, maxRetryDelay, Thread::sleep);
+    private long defaultWaitStrategy(int attempt, Duration maxRetryDelay, long previousDelayMillis)
+            throws MojoExecutionException {
+        return waitAfterFailure(attempt, maxRetryDelay, previousDelayMillis, Thread::sleep);
     }
 
     /** Thread.sleep(long millis) interface to make testing easier */
@@ -394,18 +1759,41 @@ public class JarsignerSignMojo extends AbstractJarsignerMojo {
 
     /** Package private for testing */
     void waitAfterFailure(int attempt, Duration maxRetryDelay, Sleeper sleeper) throws MojoExecutionException {
-        // Use attempt as exponent in the exponential function, but limit it to avoid too big values.
-        int exponentAttempt = Math.min(attempt, MAX_WAIT_EXPONENT_ATTEMPT);
-        long delayMillis = (long) (Duration.ofSeconds(1).toMillis() * Math.pow(2, exponentAttempt));
-        delayMillis = Math.min(delayMillis, maxRetryDelay.toMillis());
+        waitAfterFailure(attempt, maxRetryDelay, 0, sleeper);
+    }
+
+    /** Package private for testing */
+    long waitAfterFailure(int attempt, Duration maxRetryDelay, long previousDelayMillis, Sleeper sleeper)
+            throws MojoExecutionException {
+        long delayMillis;
+        if (retryJitter) {
+            // Decorrelated jitter: random delay between the base delay and three times the previous delay. The first
+            // delay is random as well, so that threads failing at the same time do not retry at the same time.
+            long baseMillis = Duration.ofSeconds(1).toMillis();
+            long upperMillis = Math.max(baseMillis, (previousDelayMillis > 0 ? previousDelayMillis : baseMillis) * 3);
+            delayMillis = ThreadLocalRandom.current().nextLong(baseMillis, upperMillis + 1);
+            delayMillis = Math.min(delayMillis, maxRetryDelay.toMillis());
+        } else {
+            // Use attempt as exponent in the exponential function, but limit it to avoid too big values.
+            int exponentAttempt = Math.min(attempt, MAX_WAIT_EXPONENT_ATTEMPT);
+            delayMillis = (long) (Duration.ofSeconds(1).toMillis() * Math.pow(2, exponentAttempt));
+            delayMillis = Math.min(delayMillis, maxRetryDelay.toMillis());
+        }
         if (delayMillis > 0) {
             getLog().info("Sleeping after failed attempt for " + (delayMillis / 1000) + " seconds...");
+            FlightRecorderEvents.Event event =
+                    FlightRecorderEvents.RETRY_WAIT.begin().set("attempt", attempt + 1);
+            long start = System.nanoTime();
             try {
                 sleeper.sleep(delayMillis);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 throw new MojoExecutionException("Thread interrupted while waiting after failure", e);
+            } finally {
+                event.commit();
+                getMetrics().backoff(Duration.ofNanos(System.nanoTime() - start));
             }
         }
+        return delayMillis;
     }
 }
@@ -20,6 +20,8 @@ package org.apache.maven.plugins.jarsigner;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -31,6 +33,7 @@ import org.apache.maven.shared.jarsigner.JarSignerUtil;
 import org.apache.maven.shared.jarsigner.JarSignerVerifyRequest;
 import org.apache.maven.shared.utils.cli.javatool.JavaToolException;
 import org.apache.maven.shared.utils.cli.javatool.JavaToolResult;
+import org.apache.maven.toolchain.Toolchain;
 
 /**
  * Checks the signatures of a project artifact and attachments using jarsigner.
@@ -58,6 +61,88 @@ public class JarsignerVerifyMojo extends AbstractJarsignerMojo {
     @Parameter(property = "jarsigner.errorWhenNotSigned", defaultValue = "false")
     private boolean errorWhenNotSigned;
 
+    /**
+     * Directory of a persistent cache of successful verifications. If set, an archive whose content, verification
+     * options, keystore content and JDK are the same as at a previous successful verification is not verified again.
+     * The cache may be local to the project, for example {@code ${project.build.directory}/jarsigner-verify-cache}, or
+     * shared between projects and builds, for example {@code ${user.home}/.m2/jarsigner-verify-cache}. By default no
+     * cache is used.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.verifyCacheDirectory")
+    private File verifyCacheDirectory;
+
+    /**
+     * Do not run jarsigner for archives signed by the sign goal earlier in the same build and unchanged since, having
+     * the same size, last modification time and signature files. Instead the signatures are checked in the Maven JVM,
+     * which does not digest every entry of the archive again: the signature of each signature file is checked
+     * using the certificate in its signature block, and the digest of the manifest in the signature file is checked.
+     * If this check fails, or certs or any {@code arguments} are given, the archive is verified by jarsigner.
+     * The sign goal only records the archives it signs when this is set to {@code true} in the configuration of the
+     * plugin or of a verify execution of a project in the build, or by the {@code jarsigner.reuseSessionSigning}
+     * property.
+     *
+     * <p>Note: this check is weaker than {@code jarsigner -verify}. The digests of the entries, the validity of the
+     * certificates and the timestamps are not checked.</p>
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.reuseSessionSigning", defaultValue = "false")
+    private boolean reuseSessionSigning;
+
+    /**
+     * Only verify archives that are new or changed since they were last verified successfully by this goal, with the
+     * same options. The size, last modification time and content digest of each verified archive are recorded in the
+     * {@link #verifyIndexFile}. An archive with the same size and last modification time as recorded is skipped without
+     * reading it, one with only a different last modification time is skipped if its content digest is unchanged.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(property = "jarsigner.incrementalVerify", defaultValue = "false")
+    private boolean incrementalVerify;
+
+    /**
+     * The file to record verified archives in, if {@link #incrementalVerify} is enabled.
+     *
+     * @since 3.1.1
+     */
+    @Parameter(defaultValue = "${project.build.directory}/jarsigner-verify.properties")
+    private File verifyIndexFile;
+
+    private VerifyCache verifyCache;
+
+    private VerifyIndex verifyIndex;
+
+    /** Identifies the JDK used for verification, part of the cache key */
+    private String jdkIdentity;
+
+    /** Digest of the keystore file, part of the cache key as the keystore may be replaced at the same path */
+    private String keystoreDigest;
+
+    @Override
+    protected void validateParameters() throws MojoExecutionException {
+        super.validateParameters();
+
+        if (verifyCacheDirectory != null) {
+            verifyCache = new VerifyCache(verifyCacheDirectory);
+        }
+        if (incrementalVerify) {
+            try {
+                verifyIndex = new VerifyIndex(verifyIndexFile);
+            } catch (IOException e) {
+                throw new MojoExecutionException(getMessage("verifyIndexFailure", verifyIndexFile, e.getMessage()), e);
+            }
+        }
+        if (verifyCache != null || verifyIndex != null) {
+            Toolchain toolchain = getToolchain();
+            jdkIdentity = toolchain != null
+                    ? toolchain.findTool("jarsigner")
+                    : System.getProperty("java.home") + " " + System.getProperty("java.version");
+            keystoreDigest = getKeystoreDigest();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -91,14 +176,128 @@ public class JarsignerVerifyMojo extends AbstractJarsignerMojo {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Writes the verify index afterwards, also if the verification of an archive failed.
+     */
+    @Override
+    protected void processArchives(List<File> archives) throws MojoExecutionException {
+        try {
+            super.processArchives(archives);
+        } finally {
+            if (verifyIndex != null) {
+                try {
+                    verifyIndex.save();
+                } catch (IOException e) {
+                    getLog().warn(getMessage("verifyIndexFailure", verifyIndexFile, e.getMessage()));
+                }
+            }
+        }
+    }
+
     @Override
     protected void executeJarSigner(JarSigner jarSigner, JarSignerRequest request)
             throws JavaToolException, MojoExecutionException {
+        File archive = request.getArchive();
+        String options = verifyIndex != null ? getVerifyOptions(request) : null;
+        if (options != null) {
+            try {
+                if (verifyIndex.isVerified(archive, options)) {
+                    getLog().info(getMessage("verifyUnchanged", archive));
+                    return;
+                }
+            } catch (IOException e) {
+                getLog().warn(getMessage("verifyIndexFailure", verifyIndexFile, e.getMessage()));
+            }
+        }
+
+        verify(jarSigner, request);
+
+        if (options != null) {
+            try {
+                verifyIndex.add(archive, options);
+            } catch (IOException e) {
+                getLog().warn(getMessage("verifyIndexFailure", verifyIndexFile, e.getMessage()));
+            }
+        }
+    }
+
+    /** Verifies the archive of a request, unless known to be verified already */
+    private void verify(JarSigner jarSigner, JarSignerRequest request)
+            throws JavaToolException, MojoExecutionException {
+        if (isSignedInSession(request.getArchive())) {
+            getLog().info(getMessage("verifySignedInSession", request.getArchive()));
+            return;
+        }
+
+        String cacheKey = getCacheKey(request);
+        if (cacheKey != null && verifyCache.contains(cacheKey)) {
+            getLog().info(getMessage("verifyCached", request.getArchive()));
+            return;
+        }
+
         JavaToolResult result = jarSigner.execute(request);
         int resultCode = result.getExitCode();
         if (resultCode != 0) {
             throw new MojoExecutionException(
                     getMessage("failure", getCommandlineInfo(result.getCommandline()), resultCode));
         }
+
+        if (cacheKey != null) {
+            try {
+                verifyCache.add(cacheKey);
+            } catch (IOException e) {
+                getLog().warn("Failed to update verify cache for " + request.getArchive() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks if an archive was signed earlier in the build and is unchanged since, and its signatures are valid
+     * according to an in-process check.
+     */
+    private boolean isSignedInSession(File archive) {
+        // Options like -strict are only applied by jarsigner
+        boolean hasArguments = getArguments() != null && getArguments().length > 0;
+        SessionSignedArchives signedArchives =
+                reuseSessionSigning && !certs && !hasArguments ? getSessionSignedArchives() : null;
+        if (signedArchives == null) {
+            return false;
+        }
+        try {
+            return signedArchives.isSignedAndUnchanged(archive) && SignatureCheck.verify(archive);
+        } catch (IOException e) {
+            getLog().debug("Failed to check signatures of " + archive + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Gets the verify cache key of the archive of a request, or null if the cache is not used */
+    private String getCacheKey(JarSignerRequest request) {
+        if (verifyCache == null) {
+            return null;
+        }
+
+        try {
+            return verifyCache.getKey(request.getArchive(), getVerifyOptions(request));
+        } catch (IOException e) {
+            getLog().warn("Failed to read " + request.getArchive() + " for verify cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Describes every option of a request, the keystore contents and the JDK, affecting the verification outcome */
+    private String getVerifyOptions(JarSignerRequest request) {
+        return String.join(
+                "\n",
+                "certs=" + certs,
+                "errorWhenNotSigned=" + errorWhenNotSigned,
+                "keystore=" + request.getKeystore(),
+                "keystoreDigest=" + keystoreDigest,
+                "storetype=" + request.getStoretype(),
+                "alias=" + request.getAlias(),
+                "arguments=" + Arrays.toString(request.getArguments()),
+                "jdk=" + jdkIdentity);
     }
 }
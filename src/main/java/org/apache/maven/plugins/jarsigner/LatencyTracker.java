@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Keeps track of the durations of the most recent successful jarsigner executions, to compute percentiles of them.
+ * Thread safe.
+ */
+class LatencyTracker {
+
+    /** Fewer samples than this are not enough to compute a meaningful percentile */
+    static final int MIN_SAMPLES = 5;
+
+    /** Number of most recent samples kept */
+    private static final int WINDOW_SIZE = 100;
+
+    private final long[] samplesNanos = new long[WINDOW_SIZE];
+
+    private int count;
+
+    private int next;
+
+    synchronized void record(Duration duration) {
+        samplesNanos[next] = duration.toNanos();
+        next = (next + 1) % WINDOW_SIZE;
+        count = Math.min(count + 1, WINDOW_SIZE);
+    }
+
+    /**
+     * Gets a percentile of the recorded durations.
+     *
+     * @param percentile the percentile, between 1 and 100
+     * @return the duration, or {@code null} if fewer than {@link #MIN_SAMPLES} durations have been recorded
+     */
+    synchronized Duration getPercentile(int percentile) {
+        if (count < MIN_SAMPLES) {
+            return null;
+        }
+        long[] sorted = Arrays.copyOf(samplesNanos, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return Duration.ofNanos(sorted[Math.max(0, index)]);
+    }
+}
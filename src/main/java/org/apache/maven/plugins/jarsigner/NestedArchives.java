@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.shared.jarsigner.JarSignerUtil;
+
+/**
+ * Helper for archives nested inside other archives, like the libraries in {@code WEB-INF/lib} of a WAR file or in
+ * {@code BOOT-INF/lib} of a Spring Boot jar. Nested archives are extracted to separate files, to be signed like any
+ * other archive, and then written back into the outer archive using {@link ArchiveRewriter}.
+ */
+final class NestedArchives {
+
+    private NestedArchives() {
+        // Utility class
+    }
+
+    /** An archive extracted from an outer archive */
+    static class NestedArchive {
+        private final File outerArchive;
+        private final String entryName;
+        private final File file;
+
+        NestedArchive(File outerArchive, String entryName, File file) {
+            this.outerArchive = outerArchive;
+            this.entryName = entryName;
+            this.file = file;
+        }
+
+        File getOuterArchive() {
+            return outerArchive;
+        }
+
+        String getEntryName() {
+            return entryName;
+        }
+
+        File getFile() {
+            return file;
+        }
+    }
+
+    /**
+     * Extracts all archives nested in an archive, whose entry names match the given Ant-like patterns.
+     *
+     * @param archive the outer archive
+     * @param includes patterns of the entry names to extract
+     * @param excludes patterns of the entry names not to extract
+     * @param directory the directory to extract to. Each nested archive is put in a sub directory of its own, keeping
+     *            its file name.
+     * @return the extracted archives, in the order they appear in the outer archive
+     * @throws IOException if reading the archive or writing the extracted archives fails
+     */
+    static List<NestedArchive> extract(File archive, String[] includes, String[] excludes, File directory)
+            throws IOException {
+        List<PathMatcher> includeMatchers = toMatchers(includes);
+        List<PathMatcher> excludeMatchers = toMatchers(excludes);
+        List<NestedArchive> nestedArchives = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !isSelected(entry.getName(), includeMatchers, excludeMatchers)) {
+                    continue;
+                }
+
+                File entryDirectory = new File(directory, String.valueOf(nestedArchives.size()));
+                entryDirectory.mkdirs();
+                File file = new File(entryDirectory, new File(entry.getName()).getName());
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    Files.copy(in, file.toPath());
+                }
+
+                if (JarSignerUtil.isZipFile(file)) {
+                    nestedArchives.add(new NestedArchive(archive, entry.getName(), file));
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        return nestedArchives;
+    }
+
+    /** Creates glob matchers for Ant-like patterns, see {@link #toGlob(String)} */
+    private static List<PathMatcher> toMatchers(String[] patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + toGlob(pattern.trim())));
+        }
+        return matchers;
+    }
+
+    /**
+     * Converts an Ant-like pattern to a glob. A {@code **} directory matches zero or more directories in Ant patterns,
+     * but at least one in a glob, so it is made optional using a group. Glob groups cannot be nested, so within a
+     * {@code {a,b}} group of the pattern a {@code **} directory is kept as it is, matching at least one directory.
+     */
+    static String toGlob(String pattern) {
+        StringBuilder glob = new StringBuilder();
+        int groupDepth = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < pattern.length()) {
+                glob.append(c).append(pattern.charAt(++i)); // Escaped character
+            } else if (groupDepth == 0 && pattern.startsWith("**/", i)) {
+                glob.append("{**/,}");
+                i += 2;
+            } else {
+                if (c == '{') {
+                    groupDepth++;
+                } else if (c == '}' && groupDepth > 0) {
+                    groupDepth--;
+                }
+                glob.append(c);
+            }
+        }
+        return glob.toString();
+    }
+
+    private static boolean isSelected(String entryName, List<PathMatcher> includes, List<PathMatcher> excludes) {
+        Path path;
+        try {
+            // ZIP entry names always use '/', which the default file system also accepts on Windows
+            path = Paths.get(entryName);
+        } catch (InvalidPathException e) {
+            return false; // Not a valid file name on this platform, so it cannot be extracted either
+        }
+        return matchesAny(path, includes) && !matchesAny(path, excludes);
+    }
+
+    private static boolean matchesAny(Path path, List<PathMatcher> matchers) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.maven.shared.jarsigner.DefaultJarSigner;
+import org.apache.maven.shared.jarsigner.JarSignerRequest;
+import org.apache.maven.shared.utils.cli.CommandLineException;
+import org.apache.maven.shared.utils.cli.Commandline;
+import org.apache.maven.shared.utils.cli.StreamPumper;
+import org.apache.maven.shared.utils.cli.javatool.JavaToolResult;
+
+/**
+ * JarSigner that keeps track of the jarsigner processes it has started, to make sure none of them outlives the
+ * execution. {@link DefaultJarSigner} only asks the shell it starts jarsigner with to terminate when the thread waiting
+ * for it is interrupted, leaving the jarsigner JVM running, hashing files or waiting for a TSA server. Here a process
+ * that is abandoned, because the waiting thread was interrupted by a cancellation or a timeout, or because the JVM is
+ * shutting down, is first asked to terminate together with the processes it started, and is killed if it has not done
+ * so within a grace period.
+ */
+class ProcessTrackingJarSigner extends DefaultJarSigner {
+
+    private final long destroyGraceMillis;
+
+    /** The processes started and not yet terminated */
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+
+    /** Destroys the processes when the JVM shuts down, registered only while there are processes */
+    private final Thread shutdownHook = new Thread(this::destroyAll, "jarsigner-process-reaper");
+
+    private boolean shutdownHookRegistered;
+
+    /**
+     * @param destroyGraceMillis the time a process is given to terminate when asked to, before it is killed
+     */
+    ProcessTrackingJarSigner(long destroyGraceMillis) {
+        this.destroyGraceMillis = destroyGraceMillis;
+    }
+
+    @Override
+    protected JavaToolResult executeCommandLine(Commandline cli, JarSignerRequest request) {
+        if (getLogger().isDebugEnabled()) {
+            getLogger().debug("Executing: " + cli);
+        }
+        JavaToolResult result = createResult();
+        result.setCommandline(cli);
+        try {
+            result.setExitCode(run(cli, request));
+        } catch (CommandLineException e) {
+            result.setExecutionException(e);
+        }
+        return result;
+    }
+
+    /** Gets the number of processes started and not yet terminated */
+    int getProcessCount() {
+        return processes.size();
+    }
+
+    private int run(Commandline cli, JarSignerRequest request) throws CommandLineException {
+        Process process = cli.execute();
+        track(process);
+        InputStream systemIn = createSystemInputStream();
+        InputFeeder inputFeeder = systemIn != null ? new InputFeeder(systemIn, process.getOutputStream()) : null;
+        StreamPumper outputPumper = new StreamPumper(process.getInputStream(), createSystemOutStreamConsumer(request));
+        StreamPumper errorPumper = new StreamPumper(process.getErrorStream(), createSystemErrorStreamConsumer(request));
+        if (inputFeeder != null) {
+            inputFeeder.start();
+        }
+        outputPumper.start();
+        errorPumper.start();
+        try {
+            int exitCode = process.waitFor();
+            // The pumpers close the streams themselves when reaching their end
+            outputPumper.waitUntilDone();
+            errorPumper.waitUntilDone();
+            return exitCode;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommandLineException("Interrupted while waiting for " + cli.getExecutable(), e);
+        } finally {
+            destroy(process);
+            untrack(process);
+            if (inputFeeder != null) {
+                inputFeeder.stopFeeding();
+            }
+            outputPumper.disable();
+            errorPumper.disable();
+        }
+    }
+
+    /**
+     * Feeds the input of a process from {@link #createSystemInputStream()}, closing it at the end of the input. The
+     * default input has no content, so jarsigner does not wait for any. The feeder is a daemon thread, so a read still
+     * waiting for input when the process has terminated does not keep the JVM alive.
+     */
+    private static final class InputFeeder extends Thread {
+        private final InputStream input;
+        private final OutputStream output;
+
+        InputFeeder(InputStream input, OutputStream output) {
+            super("jarsigner-input-feeder");
+            setDaemon(true);
+            this.input = input;
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[80];
+            try {
+                int length;
+                while ((length = input.read(buffer)) >= 0) {
+                    output.write(buffer, 0, length);
+                    output.flush();
+                }
+            } catch (IOException e) {
+                // The process has terminated, or does not read its input
+            } finally {
+                stopFeeding();
+            }
+        }
+
+        /** Closes the input of the process, when the input has ended or the process has terminated */
+        void stopFeeding() {
+            try {
+                output.close();
+            } catch (IOException e) {
+                // The process has terminated
+            }
+        }
+    }
+
+    /**
+     * Asks a process to terminate and kills it if it has not done so within the grace period. Does nothing if the
+     * process has already terminated. Waits also when the current thread is interrupted, since that is the most common
+     * reason for destroying a process.
+     */
+    private void destroy(Process process) {
+        if (!process.isAlive()) {
+            return;
+        }
+        ProcessTree tree = new ProcessTree(process);
+        tree.destroy(false);
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (!tree.waitFor(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(destroyGraceMillis))) {
+                tree.destroy(true);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            tree.destroy(true);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Destroys all tracked processes, sharing one grace period, when the JVM is shutting down */
+    private void destroyAll() {
+        List<ProcessTree> trees = new ArrayList<>();
+        for (Process process : processes) {
+            ProcessTree tree = new ProcessTree(process);
+            tree.destroy(false);
+            trees.add(tree);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(destroyGraceMillis);
+        for (ProcessTree tree : trees) {
+            try {
+                if (!tree.waitFor(deadline)) {
+                    tree.destroy(true);
+                }
+            } catch (InterruptedException e) {
+                tree.destroy(true);
+            }
+        }
+    }
+
+    private synchronized void track(Process process) {
+        processes.add(process);
+        if (!shutdownHookRegistered) {
+            try {
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+                shutdownHookRegistered = true;
+            } catch (IllegalStateException e) {
+                // Already shutting down, the process is destroyed when the waiting thread gives up on it
+            }
+        }
+    }
+
+    private synchronized void untrack(Process process) {
+        processes.remove(process);
+        if (processes.isEmpty() && shutdownHookRegistered) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                shutdownHookRegistered = false;
+            } catch (IllegalStateException e) {
+                // Already shutting down, the hook is running or has run
+            }
+        }
+    }
+
+    /**
+     * A process together with the processes it has started. The command line is run by a shell, so the jarsigner
+     * process is a child of the process started, and is not terminated with it. The descendants can only be found on
+     * Java 9 and later, using {@code ProcessHandle} by reflection since the plugin runs on Java 8.
+     */
+    private static final class ProcessTree {
+        private static final Method TO_HANDLE;
+        private static final Method DESCENDANTS;
+        private static final Method IS_ALIVE;
+        private static final Method DESTROY;
+        private static final Method DESTROY_FORCIBLY;
+
+        static {
+            Method[] methods = new Method[5];
+            try {
+                Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+                methods[0] = Process.class.getMethod("toHandle");
+                methods[1] = handleClass.getMethod("descendants");
+                methods[2] = handleClass.getMethod("isAlive");
+                methods[3] = handleClass.getMethod("destroy");
+                methods[4] = handleClass.getMethod("destroyForcibly");
+            } catch (ReflectiveOperationException e) {
+                // Java 8, only the process itself can be destroyed
+                methods = new Method[5];
+            }
+            TO_HANDLE = methods[0];
+            DESCENDANTS = methods[1];
+            IS_ALIVE = methods[2];
+            DESTROY = methods[3];
+            DESTROY_FORCIBLY = methods[4];
+        }
+
+        private final Process process;
+
+        /** The ProcessHandles of the descendants, found before destroying the process since they are reparented */
+        private final List<Object> descendants = new ArrayList<>();
+
+        ProcessTree(Process process) {
+            this.process = process;
+            if (TO_HANDLE != null) {
+                try {
+                    Object handle = TO_HANDLE.invoke(process);
+                    ((Stream<?>) DESCENDANTS.invoke(handle)).forEach(descendants::add);
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    // Not allowed to see them, only the process itself can be destroyed
+                }
+            }
+        }
+
+        /** Destroys the descendants first, since the process should not exit before them */
+        void destroy(boolean forcibly) {
+            for (Object descendant : descendants) {
+                invoke(forcibly ? DESTROY_FORCIBLY : DESTROY, descendant);
+            }
+            if (forcibly) {
+                process.destroyForcibly();
+            } else {
+                process.destroy();
+            }
+        }
+
+        /**
+         * Waits for the process and its descendants to terminate.
+         *
+         * @param deadline the {@link System#nanoTime()} to wait until
+         * @return {@code true} if all have terminated
+         */
+        boolean waitFor(long deadline) throws InterruptedException {
+            if (!process.waitFor(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+            // Only running processes can be waited for, so poll the descendants
+            for (Object descendant : descendants) {
+                while (Boolean.TRUE.equals(invoke(IS_ALIVE, descendant))) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        return false;
+                    }
+                    Thread.sleep(50);
+                }
+            }
+            return true;
+        }
+
+        private static Object invoke(Method method, Object handle) {
+            try {
+                return method.invoke(handle);
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of retries to a percentage of the number of requests, shared by all threads. When many requests
+ * fail because of a systemic problem (like a TSA server outage) the budget runs out, and the remaining requests fail
+ * fast instead of each one retrying the maximum number of times. Thread safe.
+ */
+class RetryBudget {
+
+    private final int percent;
+
+    private final int minRetries;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final AtomicInteger retries = new AtomicInteger();
+
+    /**
+     * @param percent the maximum number of retries, in percent of the number of requests, or 0 for no limit
+     * @param minRetries the number of retries always allowed, regardless of the number of requests
+     */
+    RetryBudget(int percent, int minRetries) {
+        this.percent = percent;
+        this.minRetries = minRetries;
+    }
+
+    /** Registers a new request, that is the first attempt of something that may be retried */
+    void registerRequest() {
+        requests.incrementAndGet();
+    }
+
+    /**
+     * Takes a retry from the budget, if there is any left.
+     *
+     * @return {@code true} if the retry may be done, {@code false} if the budget is spent
+     */
+    boolean tryAcquireRetry() {
+        if (percent == 0) {
+            return true;
+        }
+        while (true) {
+            int current = retries.get();
+            long allowed = Math.max(minRetries, (long) requests.get() * percent / 100);
+            if (current >= allowed) {
+                return false;
+            }
+            if (retries.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.util.concurrent.Semaphore;
+
+import org.apache.maven.shared.jarsigner.JarSigner;
+import org.apache.maven.shared.jarsigner.JarSignerRequest;
+import org.apache.maven.shared.utils.cli.javatool.JavaToolException;
+import org.apache.maven.shared.utils.cli.javatool.JavaToolResult;
+
+/**
+ * Limits the number of jarsigner processes running at the same time across all executions of the plugin within a
+ * Maven session. With parallel builds ({@code mvn -T}) each module would otherwise use its own {@code threadCount}
+ * threads, multiplying the number of jarsigner JVMs and simultaneous TSA requests by the number of modules built in
+ * parallel.
+ */
+class SessionForkLimiter {
+
+    private final int limit;
+
+    private final Semaphore permits;
+
+    SessionForkLimiter(int limit) {
+        this.limit = limit;
+        this.permits = new Semaphore(limit, true);
+    }
+
+    /** Gets the maximum number of jarsigner processes allowed to run at the same time */
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Wraps a JarSigner so that each execution waits for a free slot before starting the jarsigner process.
+     *
+     * @param jarSigner the JarSigner to limit
+     * @return a JarSigner sharing the limit with all other JarSigners wrapped by this instance
+     */
+    JarSigner limit(JarSigner jarSigner) {
+        return new LimitedJarSigner(jarSigner);
+    }
+
+    /**
+     * Waits for a free slot to execute the given JarSigner, if it is limited by a SessionForkLimiter. Used to run
+     * jarsigner on another thread, for example to limit the time of an attempt, without counting the time waiting for a
+     * slot.
+     *
+     * @param jarSigner the JarSigner to execute, possibly wrapped by {@link #limit(JarSigner)}
+     * @return the permit holding the slot, if any, until it is closed
+     * @throws InterruptedException if interrupted while waiting for a slot
+     */
+    static Permit acquire(JarSigner jarSigner) throws InterruptedException {
+        if (jarSigner instanceof LimitedJarSigner) {
+            LimitedJarSigner limited = (LimitedJarSigner) jarSigner;
+            limited.getLimiter().permits.acquire();
+            return new Permit(limited.delegate, limited.getLimiter().permits);
+        }
+        return new Permit(jarSigner, null);
+    }
+
+    /** A slot for a jarsigner process, released when closed */
+    static final class Permit implements AutoCloseable {
+        private final JarSigner jarSigner;
+
+        private final Semaphore permits;
+
+        private Permit(JarSigner jarSigner, Semaphore permits) {
+            this.jarSigner = jarSigner;
+            this.permits = permits;
+        }
+
+        /** Gets the JarSigner to execute using this permit, not waiting for a slot again */
+        JarSigner getJarSigner() {
+            return jarSigner;
+        }
+
+        @Override
+        public void close() {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    private class LimitedJarSigner implements JarSigner {
+        private final JarSigner delegate;
+
+        LimitedJarSigner(JarSigner delegate) {
+            this.delegate = delegate;
+        }
+
+        SessionForkLimiter getLimiter() {
+            return SessionForkLimiter.this;
+        }
+
+        @Override
+        public String getJavaToolName() {
+            return delegate.getJavaToolName();
+        }
+
+        @Override
+        public void setToolchain(Object toolchain) {
+            delegate.setToolchain(toolchain);
+        }
+
+        @Override
+        public JavaToolResult execute(JarSignerRequest request) throws JavaToolException {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JavaToolException("Thread interrupted while waiting to start jarsigner", e);
+            }
+            try {
+                return delegate.execute(request);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.util.function.Supplier;
+
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Access to objects shared by all plugin executions within the same Maven session, for example by modules built in
+ * parallel. The objects are stored in the session data of the repository system session, using their class as key, so
+ * they are discarded together with the session. Because the class is the key, executions of different plugin versions
+ * (loaded by different class loaders) never share objects.
+ */
+final class SessionScoped {
+
+    private SessionScoped() {
+        // Utility class
+    }
+
+    /**
+     * Gets the object of the given type shared within the session, creating it if it does not exist yet.
+     *
+     * @param session the current Maven session
+     * @param type the type of the shared object, also used as key
+     * @param factory creates the object if it does not exist yet. Called at most once per session.
+     * @param <T> the type of the shared object
+     * @return the shared object
+     */
+    static <T> T computeIfAbsent(MavenSession session, Class<T> type, Supplier<T> factory) {
+        SessionData data = session.getRepositorySession().getData();
+        synchronized (data) {
+            Object value = data.get(type);
+            if (value == null) {
+                value = factory.get();
+                data.set(type, value);
+            }
+            return type.cast(value);
+        }
+    }
+}
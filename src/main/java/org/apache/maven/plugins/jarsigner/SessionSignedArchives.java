@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * The archives signed within a Maven session, shared using {@link SessionScoped}, so a later verification in the same
+ * build can tell that an archive is unchanged since jarsigner signed it. An archive is identified by its size, last
+ * modification time and a digest of its signature files, which is much cheaper than a digest of the whole archive.
+ * The archives are only recorded when a verification may use them, see {@link #isReuseConfigured(MavenSession)}.
+ */
+class SessionSignedArchives {
+
+    private static final String PLUGIN_KEY = "org.apache.maven.plugins:maven-jarsigner-plugin";
+
+    private static final String REUSE_PARAMETER = "reuseSessionSigning";
+
+    private static final String REUSE_PROPERTY = "jarsigner." + REUSE_PARAMETER;
+
+    private final Map<File, String> identities = new ConcurrentHashMap<>();
+
+    private final boolean recording;
+
+    /**
+     * @param recording whether signed archives are recorded, see {@link #isRecording()}
+     */
+    SessionSignedArchives(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Whether signed archives should be recorded, because a verification in the session may reuse the signing.
+     *
+     * @return {@code true} if signed archives should be {@link #add(File) added}
+     */
+    boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Checks if a verification in the session may reuse the signing: the {@code jarsigner.reuseSessionSigning}
+     * property is set to {@code true}, or the plugin configuration of a project in the session sets
+     * {@code reuseSessionSigning} to {@code true}, for the plugin or for an execution of the verify goal.
+     *
+     * @param session the current Maven session
+     * @return {@code true} if signing may be reused
+     */
+    static boolean isReuseConfigured(MavenSession session) {
+        if (isTrue(session.getUserProperties()) || isTrue(session.getSystemProperties())) {
+            return true;
+        }
+        for (MavenProject project : session.getProjects()) {
+            for (Plugin plugin : project.getBuildPlugins()) {
+                if (!PLUGIN_KEY.equals(plugin.getKey())) {
+                    continue;
+                }
+                if (isTrue(plugin.getConfiguration())) {
+                    return true;
+                }
+                for (PluginExecution execution : plugin.getExecutions()) {
+                    if (execution.getGoals().contains("verify") && isTrue(execution.getConfiguration())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTrue(Properties properties) {
+        return properties != null && Boolean.parseBoolean(properties.getProperty(REUSE_PROPERTY));
+    }
+
+    private static boolean isTrue(Object configuration) {
+        if (!(configuration instanceof Xpp3Dom)) {
+            return false;
+        }
+        Xpp3Dom parameter = ((Xpp3Dom) configuration).getChild(REUSE_PARAMETER);
+        return parameter != null && Boolean.parseBoolean(parameter.getValue());
+    }
+
+    /**
+     * Records an archive as signed, in its current state.
+     *
+     * @param archive the signed archive
+     * @throws IOException if the archive could not be read
+     */
+    void add(File archive) throws IOException {
+        identities.put(archive.getCanonicalFile(), getIdentity(archive));
+    }
+
+    /**
+     * Checks if an archive is recorded as signed and is unchanged since.
+     *
+     * @param archive the archive
+     * @return {@code true} if signed within the session and unchanged since
+     * @throws IOException if the archive could not be read
+     */
+    boolean isSignedAndUnchanged(File archive) throws IOException {
+        String identity = identities.get(archive.getCanonicalFile());
+        return identity != null && identity.equals(getIdentity(archive));
+    }
+
+    private static String getIdentity(File archive) throws IOException {
+        MessageDigest digest = FileDigests.newDigest("SHA-256");
+        byte[] buffer = new byte[8192];
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            for (ZipEntry entry : SignatureCheck.getSignatureEntries(zipFile)) {
+                digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+            }
+        }
+        return archive.length() + ":" + archive.lastModified() + ":" + FileDigests.toHex(digest.digest());
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Signing queue shared by all {@code sign} executions of a Maven session that have enabled the {@code sessionQueue}
+ * parameter. All modules submit their archives to one thread pool, so the total number of parallel signings is limited
+ * for the whole build and threads are not left idle between modules. The health state of the TSA servers is shared as
+ * well, so a server found to be failing by one module is avoided by the next.
+ *
+ * Each execution queues its archives as a {@link Batch} and waits only for its own batch, so executions of modules
+ * built in parallel do not wait for, or cancel, the archives of each other. The batch of an execution that does not
+ * wait for its archives is deferred, and awaited by the next execution that waits, which acts as a barrier for all
+ * batches deferred so far.
+ */
+class SessionSigningQueue {
+
+    /** Idle threads are terminated after this time, the queue lives as long as the session */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+
+    /** TSA selectors, one per distinct TSA configuration */
+    private final Map<List<String>, TsaSelector> tsaSelectors = new ConcurrentHashMap<>();
+
+    /**
+     * Batches of executions not waiting for their archives, not yet awaited by another execution. A batch is dropped
+     * once awaited, or as soon as all its tasks have succeeded, so only running and failed batches are kept.
+     */
+    private final Queue<Batch> deferred = new ConcurrentLinkedQueue<>();
+
+    SessionSigningQueue(int threadCount) {
+        executor = new ThreadPoolExecutor(
+                threadCount,
+                threadCount,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                daemonThreadFactory("jarsigner-session-queue-"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /** Gets the maximum number of archives signed in parallel */
+    int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /** Gets the number of deferred batches, not yet awaited. Package private for testing */
+    int getDeferredBatchCount() {
+        return deferred.size();
+    }
+
+    /** Gets the number of tasks submitted to the thread pool and not yet started. Package private for testing */
+    int getQueuedTaskCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Gets the TSA selector shared by all executions using the same TSA configuration.
+     */
+    TsaSelector getTsaSelector(String[] tsa, String[] tsacert, String[] tsapolicyid, String tsadigestalg) {
+        List<String> key = Arrays.asList(
+                Arrays.toString(tsa), Arrays.toString(tsacert), Arrays.toString(tsapolicyid), tsadigestalg);
+        return tsaSelectors.computeIfAbsent(key, k -> new TsaSelector(tsa, tsacert, tsapolicyid, tsadigestalg));
+    }
+
+    /** Starts a batch of tasks, to be queued by one execution */
+    Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Hands over a batch not waited for by its execution, to be awaited by the next call to {@link #await(Batch)} by
+     * any execution.
+     */
+    void defer(Batch batch) {
+        deferred.add(batch);
+        batch.markDeferred();
+    }
+
+    /**
+     * Waits until all tasks of a batch have finished, and then for the batches deferred so far by other executions. If
+     * a task fails, the remaining tasks of its batch are cancelled "best effort" and the failure is thrown. The
+     * deferred batches not awaited because of the failure are left for the next call.
+     *
+     * @param batch the batch of the calling execution
+     * @throws MojoExecutionException if any of the awaited tasks failed or the wait was interrupted
+     */
+    void await(Batch batch) throws MojoExecutionException {
+        List<Batch> claimed = new ArrayList<>();
+        Batch deferredBatch;
+        while ((deferredBatch = deferred.poll()) != null) {
+            claimed.add(deferredBatch);
+        }
+        try {
+            batch.await();
+            for (Iterator<Batch> iterator = claimed.iterator(); iterator.hasNext(); ) {
+                Batch claimedBatch = iterator.next();
+                iterator.remove(); // Awaited, also if it fails
+                claimedBatch.await();
+            }
+        } finally {
+            deferred.addAll(claimed);
+        }
+    }
+
+    /**
+     * The tasks queued by one execution. At most twice as many tasks as there are threads are submitted to the executor
+     * at a time, the others wait in the batch and are submitted as tasks finish. The queue of the executor therefore
+     * does not grow with the number of archives, and a failure stops the tasks not yet submitted.
+     */
+    final class Batch {
+        private final int window = executor.getMaximumPoolSize() * 2;
+
+        /** Tasks not yet submitted */
+        private final Queue<Callable<Void>> waiting = new ArrayDeque<>();
+
+        /** Tasks submitted and not yet awaited */
+        private final Queue<Future<Void>> submitted = new ArrayDeque<>();
+
+        private int running;
+
+        /** Whether no more tasks are submitted, after a failure or cancellation */
+        private boolean stopped;
+
+        /** Whether a task failed, to be reported when the batch is awaited */
+        private boolean failed;
+
+        /** Whether the batch is deferred, to be dropped from the deferred batches once its tasks have succeeded */
+        private boolean handedOver;
+
+        private Batch() {}
+
+        /** Queues a task for execution. The outcome is reported when the batch is awaited. */
+        synchronized void submit(Callable<Void> task) {
+            waiting.add(task);
+            submitWaiting();
+        }
+
+        private synchronized void submitWaiting() {
+            while (!stopped && running < window && !waiting.isEmpty()) {
+                Callable<Void> task = waiting.poll();
+                running++;
+                submitted.add(executor.submit(() -> {
+                    try {
+                        return task.call();
+                    } catch (Exception e) {
+                        fail();
+                        throw e;
+                    } finally {
+                        taskDone();
+                    }
+                }));
+            }
+        }
+
+        private synchronized void taskDone() {
+            running--;
+            submitWaiting();
+            notifyAll();
+            dropIfSucceeded();
+        }
+
+        private synchronized void markDeferred() {
+            handedOver = true;
+            dropIfSucceeded(); // All tasks may have finished already
+        }
+
+        /** Drops a deferred batch whose tasks have all succeeded, there is nothing left to await or report */
+        private synchronized void dropIfSucceeded() {
+            if (handedOver && !failed && running == 0 && waiting.isEmpty()) {
+                deferred.remove(this);
+            }
+        }
+
+        private synchronized void fail() {
+            failed = true;
+            stop();
+        }
+
+        private synchronized void stop() {
+            stopped = true;
+            waiting.clear();
+        }
+
+        /** Gets the next task to wait for, waiting for it to be submitted if needed, or {@code null} if none */
+        private synchronized Future<Void> nextSubmitted() throws InterruptedException {
+            while (submitted.isEmpty() && !waiting.isEmpty() && !stopped) {
+                wait();
+            }
+            return submitted.poll();
+        }
+
+        private void await() throws MojoExecutionException {
+            try {
+                Future<Void> future;
+                while ((future = nextSubmitted()) != null) {
+                    future.get(); // Wait for completion. Result ignored, but may raise any Exception
+                }
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Thread interrupted while waiting for jarsigner to complete", e);
+            } catch (ExecutionException e) {
+                cancel();
+                if (e.getCause() instanceof MojoExecutionException) {
+                    throw (MojoExecutionException) e.getCause();
+                }
+                throw new MojoExecutionException("Error processing archives", e);
+            }
+        }
+
+        /** Cancels the tasks of this batch only */
+        private synchronized void cancel() {
+            stop();
+            submitted.forEach(future -> future.cancel(true));
+        }
+    }
+
+    static ThreadFactory daemonThreadFactory(String threadNamePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        return r -> {
+            Thread thread = new Thread(r, threadNamePrefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * In-process check of the signatures of a signed archive, without digesting the entries of the archive. For each
+ * signature block ({@code META-INF/<name>.RSA}, {@code .DSA} or {@code .EC}) the signature of the signature file
+ * ({@code META-INF/<name>.SF}) is checked using the certificate in the block, and the digest of the manifest in the
+ * signature file is checked against the manifest.
+ *
+ * The digests of the entries in the manifest are not checked, so this is only sufficient for an archive known to be
+ * unchanged since jarsigner signed it. Certificate paths and timestamps are not validated either. Only the kind of
+ * signature blocks jarsigner creates are supported, with the signature directly on the signature file or on signed
+ * attributes containing its digest. For anything else the check fails, so the caller can fall back to
+ * {@code jarsigner -verify}.
+ */
+final class SignatureCheck {
+
+    private static final String[] SIGNATURE_BLOCK_EXTENSIONS = {".RSA", ".DSA", ".EC"};
+
+    private static final String DIGEST_MANIFEST_SUFFIX = "-Digest-Manifest";
+
+    private static final byte[] MESSAGE_DIGEST_OID = Der.objectIdentifier("1.2.840.113549.1.9.4");
+
+    private static final int SIGNED_ATTRIBUTES_TAG = Der.contextSpecific(0);
+
+    /** Digest algorithm names by their encoded OID, used to name the signature algorithm */
+    private static final Map<String, String> DIGEST_ALGORITHMS = new LinkedHashMap<>();
+
+    static {
+        DIGEST_ALGORITHMS.put(oidKey("1.3.14.3.2.26"), "SHA1");
+        DIGEST_ALGORITHMS.put(oidKey("2.16.840.1.101.3.4.2.4"), "SHA224");
+        DIGEST_ALGORITHMS.put(oidKey("2.16.840.1.101.3.4.2.1"), "SHA256");
+        DIGEST_ALGORITHMS.put(oidKey("2.16.840.1.101.3.4.2.2"), "SHA384");
+        DIGEST_ALGORITHMS.put(oidKey("2.16.840.1.101.3.4.2.3"), "SHA512");
+    }
+
+    private SignatureCheck() {
+        // Utility class
+    }
+
+    /**
+     * Checks the signatures of an archive.
+     *
+     * @param archive the archive
+     * @return {@code true} if the archive has at least one signature and all signatures are valid, {@code false} if
+     *         not or if a signature could not be checked
+     * @throws IOException if the archive could not be read
+     */
+    static boolean verify(File archive) throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            byte[] manifest = read(zipFile, JarFile.MANIFEST_NAME);
+            List<ZipEntry> signatureBlocks = getSignatureBlocks(zipFile);
+            if (manifest == null || signatureBlocks.isEmpty()) {
+                return false;
+            }
+            for (ZipEntry signatureBlock : signatureBlocks) {
+                String name = signatureBlock.getName();
+                byte[] signatureFile = read(zipFile, name.substring(0, name.lastIndexOf('.')) + ".SF");
+                if (signatureFile == null
+                        || !verifyManifestDigest(signatureFile, manifest)
+                        || !verifySignature(read(zipFile, name), signatureFile)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the signature files and blocks of an archive, the entries identifying its signatures.
+     *
+     * @param zipFile the archive
+     * @return the entries, ordered by name
+     */
+    static List<ZipEntry> getSignatureEntries(ZipFile zipFile) {
+        List<ZipEntry> entries = new ArrayList<>(getSignatureBlocks(zipFile));
+        for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); ) {
+            ZipEntry entry = e.nextElement();
+            if (isInMetaInf(entry)
+                    && entry.getName().toUpperCase(Locale.ENGLISH).endsWith(".SF")) {
+                entries.add(entry);
+            }
+        }
+        entries.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return entries;
+    }
+
+    private static List<ZipEntry> getSignatureBlocks(ZipFile zipFile) {
+        List<ZipEntry> signatureBlocks = new ArrayList<>();
+        for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); ) {
+            ZipEntry entry = e.nextElement();
+            String name = entry.getName().toUpperCase(Locale.ENGLISH);
+            if (isInMetaInf(entry) && Arrays.stream(SIGNATURE_BLOCK_EXTENSIONS).anyMatch(name::endsWith)) {
+                signatureBlocks.add(entry);
+            }
+        }
+        return signatureBlocks;
+    }
+
+    /** Whether an entry is directly in META-INF, where jarsigner stores the signature files */
+    private static boolean isInMetaInf(ZipEntry entry) {
+        String name = entry.getName();
+        return name.toUpperCase(Locale.ENGLISH).startsWith("META-INF/") && name.indexOf('/', 9) < 0;
+    }
+
+    /** Checks the digest of the whole manifest given in the main section of a signature file */
+    private static boolean verifyManifestDigest(byte[] signatureFile, byte[] manifest)
+            throws IOException, GeneralSecurityException {
+        Attributes attributes = new Manifest(new ByteArrayInputStream(signatureFile)).getMainAttributes();
+        for (Map.Entry<Object, Object> attribute : attributes.entrySet()) {
+            String name = attribute.getKey().toString();
+            if (name.endsWith(DIGEST_MANIFEST_SUFFIX)) {
+                String algorithm = name.substring(0, name.length() - DIGEST_MANIFEST_SUFFIX.length());
+                byte[] expected =
+                        Base64.getDecoder().decode(attribute.getValue().toString());
+                return MessageDigest.isEqual(
+                        expected, MessageDigest.getInstance(algorithm).digest(manifest));
+            }
+        }
+        return false; // Only digests of the manifest sections, not supported
+    }
+
+    /** Checks the signatures of all SignerInfos of a signature block on the signature file */
+    private static boolean verifySignature(byte[] signatureBlock, byte[] signatureFile)
+            throws IOException, GeneralSecurityException {
+        List<Der.Element> signedData = Der.parse(signatureBlock)
+                .getChild(1, Der.contextSpecific(0))
+                .getChild(0, Der.SEQUENCE)
+                .getChildren();
+
+        List<X509Certificate> certificates = new ArrayList<>();
+        CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+        for (Der.Element element : signedData) {
+            if (element.getTag() == Der.contextSpecific(0)) {
+                for (Der.Element certificate : element.getChildren()) {
+                    certificates.add((X509Certificate)
+                            certificateFactory.generateCertificate(new ByteArrayInputStream(certificate.getEncoded())));
+                }
+            }
+        }
+
+        List<Der.Element> signerInfos = signedData.get(signedData.size() - 1).getChildren();
+        if (signerInfos.isEmpty()) {
+            return false;
+        }
+        for (Der.Element signerInfo : signerInfos) {
+            List<Der.Element> children = signerInfo.getChildren();
+            if (children.size() < 5) {
+                return false;
+            }
+            X509Certificate certificate = findCertificate(certificates, children.get(1));
+            String digestAlgorithm = DIGEST_ALGORITHMS.get(FileDigests.toHex(
+                    children.get(2).getChild(0, Der.OBJECT_IDENTIFIER).getEncoded()));
+            Der.Element signedAttributes = children.get(3).getTag() == SIGNED_ATTRIBUTES_TAG ? children.get(3) : null;
+            Der.Element signatureValue = children.get(signedAttributes != null ? 5 : 4);
+            if (certificate == null || digestAlgorithm == null || signatureValue.getTag() != Der.OCTET_STRING) {
+                return false;
+            }
+
+            byte[] signedContent = signatureFile;
+            if (signedAttributes != null) {
+                // The signature is on the attributes, which contain the digest of the signature file (RFC 5652 5.4)
+                byte[] digest = MessageDigest.getInstance(digestAlgorithm.replace("SHA", "SHA-"))
+                        .digest(signatureFile);
+                if (!MessageDigest.isEqual(digest, getMessageDigest(signedAttributes))) {
+                    return false;
+                }
+                byte[] encoded = signedAttributes.getEncoded();
+                encoded[0] = (byte) Der.SET; // Signed with the universal SET OF tag, not the implicit [0] tag
+                signedContent = encoded;
+            }
+
+            String keyAlgorithm = certificate.getPublicKey().getAlgorithm();
+            Signature signature = Signature.getInstance(
+                    digestAlgorithm + "with" + ("EC".equals(keyAlgorithm) ? "ECDSA" : keyAlgorithm));
+            signature.initVerify(certificate.getPublicKey());
+            signature.update(signedContent);
+            if (!signature.verify(signatureValue.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Gets the value of the message-digest attribute of signed attributes, or an empty array if there is none */
+    private static byte[] getMessageDigest(Der.Element signedAttributes) throws IOException {
+        for (Der.Element attribute : signedAttributes.getChildren()) {
+            if (Arrays.equals(
+                    MESSAGE_DIGEST_OID,
+                    attribute.getChild(0, Der.OBJECT_IDENTIFIER).getEncoded())) {
+                return attribute
+                        .getChild(1, Der.SET)
+                        .getChild(0, Der.OCTET_STRING)
+                        .getValue();
+            }
+        }
+        return new byte[0];
+    }
+
+    /** Finds the certificate identified by an IssuerAndSerialNumber */
+    private static X509Certificate findCertificate(List<X509Certificate> certificates, Der.Element issuerAndSerial)
+            throws IOException {
+        byte[] issuer = issuerAndSerial.getChild(0, Der.SEQUENCE).getEncoded();
+        BigInteger serialNumber =
+                new BigInteger(issuerAndSerial.getChild(1, Der.INTEGER).getValue());
+        for (X509Certificate certificate : certificates) {
+            if (certificate.getSerialNumber().equals(serialNumber)
+                    && Arrays.equals(certificate.getIssuerX500Principal().getEncoded(), issuer)) {
+                return certificate;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] read(ZipFile zipFile, String name) throws IOException {
+        ZipEntry entry = zipFile.getEntry(name);
+        if (entry == null) {
+            return null;
+        }
+        return ArchiveRewriter.readEntry(zipFile, entry);
+    }
+
+    private static String oidKey(String oid) {
+        return FileDigests.toHex(Der.objectIdentifier(oid));
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Adds RFC 3161 timestamps to the signatures of an already signed archive. jarsigner can only timestamp while signing,
+ * so this is done by editing the signature block file ({@code META-INF/<name>.RSA}, {@code .DSA} or {@code .EC}),
+ * which is a PKCS #7 SignedData structure. A timestamp token for the signature value of each SignerInfo is added as
+ * the unsigned attribute {@code id-aa-timeStampToken} (RFC 3161, appendix A), the same way jarsigner stores it.
+ *
+ * Unsigned attributes are not covered by the signature, so adding them does not invalidate the signature.
+ */
+class SignatureTimestamper {
+
+    private static final byte[] SIGNED_DATA_OID = Der.objectIdentifier("1.2.840.113549.1.7.2");
+
+    private static final byte[] TIMESTAMP_TOKEN_OID = Der.objectIdentifier("1.2.840.113549.1.9.16.2.14");
+
+    private static final String[] SIGNATURE_BLOCK_EXTENSIONS = {".RSA", ".DSA", ".EC"};
+
+    private static final int UNSIGNED_ATTRIBUTES_TAG = Der.contextSpecific(1);
+
+    private final TsaClient tsaClient;
+
+    SignatureTimestamper(TsaClient tsaClient) {
+        this.tsaClient = tsaClient;
+    }
+
+    /**
+     * Gets the base name of the signature files jarsigner creates, derived the same way as jarsigner does it.
+     *
+     * @param sigfile the configured {@code -sigfile}, or {@code null}
+     * @param alias the keystore alias used for signing
+     * @return the name, like {@code MYALIAS} for {@code META-INF/MYALIAS.SF}
+     */
+    static String getSignatureName(String sigfile, String alias) {
+        String name = sigfile != null ? sigfile : alias;
+        if (name == null) {
+            throw new IllegalArgumentException("Neither sigfile nor alias is set");
+        }
+        name = name.substring(0, Math.min(8, name.length())).toUpperCase(Locale.ENGLISH);
+        StringBuilder result = new StringBuilder(name.length());
+        for (char c : name.toCharArray()) {
+            boolean valid = (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+            result.append(valid ? c : '_');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Timestamps the signatures of a signed archive that are not timestamped yet.
+     *
+     * @param archive the signed archive, updated in place
+     * @param signatureName the base name of the signature files, see {@link #getSignatureName(String, String)}
+     * @param tsaUrl the URL of the TSA server
+     * @param policyId the TSA policy OID to request, or {@code null}
+     * @param digestAlgorithm the digest algorithm for the message imprint, or {@code null} for SHA-384
+     * @return {@code true} if timestamps were added, {@code false} if all signatures already had a timestamp
+     * @throws IOException if the signature block could not be found or read, or timestamping failed
+     */
+    boolean timestamp(File archive, String signatureName, String tsaUrl, String policyId, String digestAlgorithm)
+            throws IOException {
+        String entryName = null;
+        byte[] signatureBlock = null;
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            for (String extension : SIGNATURE_BLOCK_EXTENSIONS) {
+                ZipEntry entry = zipFile.getEntry("META-INF/" + signatureName + extension);
+                if (entry != null) {
+                    entryName = entry.getName();
+                    signatureBlock = ArchiveRewriter.readEntry(zipFile, entry);
+                    break;
+                }
+            }
+        }
+        if (signatureBlock == null) {
+            throw new IOException("No signature block META-INF/" + signatureName + ".(RSA|DSA|EC) in " + archive);
+        }
+
+        byte[] timestamped = addTimestamps(signatureBlock, tsaUrl, policyId, digestAlgorithm);
+        if (timestamped == null) {
+            return false;
+        }
+
+        File content = new File(archive.getParentFile(), archive.getName() + ".timestamped");
+        try {
+            Files.write(content.toPath(), timestamped);
+            ArchiveRewriter.replaceEntries(archive, Collections.singletonMap(entryName, content));
+        } finally {
+            content.delete();
+        }
+        return true;
+    }
+
+    /**
+     * Adds timestamps to the SignerInfos of a signature block that do not have one.
+     *
+     * @return the new signature block, or {@code null} if no timestamp was added
+     */
+    byte[] addTimestamps(byte[] signatureBlock, String tsaUrl, String policyId, String digestAlgorithm)
+            throws IOException {
+        List<Der.Element> contentInfo = Der.parse(signatureBlock).getChildren();
+        if (contentInfo.size() != 2
+                || !Arrays.equals(SIGNED_DATA_OID, contentInfo.get(0).getEncoded())) {
+            throw new IOException("Signature block is not a PKCS #7 SignedData");
+        }
+        List<Der.Element> signedData =
+                contentInfo.get(1).getChild(0, Der.SEQUENCE).getChildren();
+        Der.Element signerInfos = signedData.isEmpty() ? null : signedData.get(signedData.size() - 1);
+        if (signerInfos == null || signerInfos.getTag() != Der.SET) {
+            throw new IOException("Signature block has no SignerInfos");
+        }
+
+        boolean changed = false;
+        List<byte[]> newSignerInfos = new ArrayList<>();
+        for (Der.Element signerInfo : signerInfos.getChildren()) {
+            byte[] newSignerInfo = addTimestamp(signerInfo, tsaUrl, policyId, digestAlgorithm);
+            changed |= newSignerInfo != null;
+            newSignerInfos.add(newSignerInfo != null ? newSignerInfo : signerInfo.getEncoded());
+        }
+        if (!changed) {
+            return null;
+        }
+
+        List<byte[]> newSignedData = new ArrayList<>();
+        for (int i = 0; i < signedData.size() - 1; i++) {
+            newSignedData.add(signedData.get(i).getEncoded());
+        }
+        // Keep the order of the SignerInfos, they are not re-sorted by jarsigner either
+        newSignedData.add(Der.encode(Der.SET, newSignerInfos.toArray(new byte[0][])));
+        return Der.sequence(
+                SIGNED_DATA_OID,
+                Der.encode(Der.contextSpecific(0), Der.sequence(newSignedData.toArray(new byte[0][]))));
+    }
+
+    /** Adds a timestamp to a SignerInfo, returning the new encoding, or {@code null} if it already has one */
+    private byte[] addTimestamp(Der.Element signerInfo, String tsaUrl, String policyId, String digestAlgorithm)
+            throws IOException {
+        List<Der.Element> children = signerInfo.getChildren();
+        Der.Element signature = null;
+        List<byte[]> unsignedAttributes = new ArrayList<>();
+        List<byte[]> newChildren = new ArrayList<>();
+        for (Der.Element child : children) {
+            if (child.getTag() == Der.OCTET_STRING) {
+                signature = child;
+            }
+            if (child.getTag() == UNSIGNED_ATTRIBUTES_TAG) {
+                for (Der.Element attribute : child.getChildren()) {
+                    if (Arrays.equals(
+                            TIMESTAMP_TOKEN_OID,
+                            attribute.getChild(0, Der.OBJECT_IDENTIFIER).getEncoded())) {
+                        return null;
+                    }
+                    unsignedAttributes.add(attribute.getEncoded());
+                }
+            } else {
+                newChildren.add(child.getEncoded());
+            }
+        }
+        if (signature == null) {
+            throw new IOException("SignerInfo has no signature value");
+        }
+
+        byte[] token = tsaClient.getTimestampToken(tsaUrl, policyId, digestAlgorithm, signature.getValue());
+        unsignedAttributes.add(Der.sequence(TIMESTAMP_TOKEN_OID, Der.setOf(Collections.singletonList(token))));
+        newChildren.add(Der.setOf(UNSIGNED_ATTRIBUTES_TAG, unsignedAttributes));
+        return Der.sequence(newChildren.toArray(new byte[0][]));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent cache of signed archives. An entry is keyed by the SHA-256 digest of the archive content before signing
+ * together with the certificates and all options that could affect the signed archive, so signing an unchanged archive
+ * again with the same key and options can be replaced by a copy of the archive signed before.
+ *
+ * The cache is a directory of signed archives, each written to a temporary file that is then moved into place, which
+ * makes it safe to share between concurrent builds. The total size of the archives is bounded by evicting the least
+ * recently used ones, using the last modification time of the files, which is updated on each use.
+ */
+class SignedArchiveCache {
+
+    private static final String EXTENSION = ".jar";
+
+    private final File directory;
+
+    private final long maxSize;
+
+    /**
+     * @param directory the cache directory
+     * @param maxSize the maximum total size of the cached archives, in bytes
+     */
+    SignedArchiveCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Computes the cache key of an archive.
+     *
+     * @param archive the archive to sign
+     * @param options description of the certificates and every option affecting the signed archive
+     * @return the cache key
+     * @throws IOException if the archive could not be read
+     */
+    String getKey(File archive, String options) throws IOException {
+        return FileDigests.sha256(FileDigests.sha256(archive) + "\n" + options);
+    }
+
+    /**
+     * Replaces an archive with the signed archive cached for the key, if any.
+     *
+     * @param key the cache key
+     * @param archive the archive to replace
+     * @return {@code true} if the archive was replaced, {@code false} if there is no cached archive for the key
+     * @throws IOException if the archive could not be replaced
+     */
+    boolean restore(String key, File archive) throws IOException {
+        File cachedArchive = getCachedArchive(key);
+        if (!cachedArchive.isFile()) {
+            return false;
+        }
+        File tempArchive = new File(archive.getParentFile(), archive.getName() + ".cached");
+        try {
+            Files.copy(cachedArchive.toPath(), tempArchive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            return false; // Evicted by a concurrent build
+        }
+        Files.move(tempArchive.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        cachedArchive.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Stores a signed archive for the key, then evicts the least recently used archives if the cache is too large.
+     *
+     * @param key the cache key, computed before the archive was signed
+     * @param archive the signed archive
+     * @throws IOException if the archive could not be stored
+     */
+    void store(String key, File archive) throws IOException {
+        File cachedArchive = getCachedArchive(key);
+        cachedArchive.getParentFile().mkdirs();
+        File tempFile = File.createTempFile(key, ".tmp", cachedArchive.getParentFile());
+        try {
+            Files.copy(archive.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile.toPath(), cachedArchive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        evict();
+    }
+
+    /** Deletes the least recently used archives until the total size is within the maximum size */
+    private void evict() {
+        // The last use time is read once, since other builds may update it while sorting
+        Map<File, Long> lastUsed = new HashMap<>();
+        long size = 0;
+        File[] subDirectories = directory.listFiles(File::isDirectory);
+        for (File subDirectory : subDirectories != null ? subDirectories : new File[0]) {
+            File[] files = subDirectory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+            for (File file : files != null ? files : new File[0]) {
+                lastUsed.put(file, file.lastModified());
+                size += file.length();
+            }
+        }
+        if (size <= maxSize) {
+            return;
+        }
+
+        List<File> cachedArchives = new ArrayList<>(lastUsed.keySet());
+        cachedArchives.sort(Comparator.comparing(lastUsed::get));
+        for (File file : cachedArchives) {
+            if (size <= maxSize) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File getCachedArchive(String key) {
+        // Spread the archives over sub directories to keep directory sizes reasonable
+        return new File(new File(directory, key.substring(0, 2)), key + EXTENSION);
+    }
+}
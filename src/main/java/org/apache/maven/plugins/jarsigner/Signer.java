@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+/**
+ * Configuration of one of several signers of the archives, see the {@code signers} parameter of the sign goal. The
+ * keystore and other parameters are shared by all signers.
+ *
+ * @since 3.1.1
+ */
+public class Signer {
+
+    /**
+     * The keystore alias of the key to sign with. Required.
+     */
+    private String alias;
+
+    /**
+     * The password of the key, or none to use the {@code keypass} parameter. May be encrypted like the
+     * {@code keypass} parameter.
+     */
+    private String keypass;
+
+    /**
+     * The base name of the signature files, or none to derive it from the alias.
+     */
+    private String sigfile;
+
+    /**
+     * URL of the TSA server to timestamp the signature with, or none to use the TSA servers given by the {@code tsa}
+     * or {@code tsacert} parameters. The server is used with the defaults of jarsigner, the {@code tsapolicyid} and
+     * {@code tsadigestalg} parameters do not apply to it.
+     */
+    private String tsa;
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public void setAlias(String alias) {
+        this.alias = alias;
+    }
+
+    public String getKeypass() {
+        return keypass;
+    }
+
+    public void setKeypass(String keypass) {
+        this.keypass = keypass;
+    }
+
+    public String getSigfile() {
+        return sigfile;
+    }
+
+    public void setSigfile(String sigfile) {
+        this.sigfile = sigfile;
+    }
+
+    public String getTsa() {
+        return tsa;
+    }
+
+    public void setTsa(String tsa) {
+        this.tsa = tsa;
+    }
+}
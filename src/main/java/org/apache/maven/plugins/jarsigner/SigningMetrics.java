@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.apache.maven.plugins.jarsigner.TsaSelector.TsaServer;
+
+/**
+ * Metrics of an execution of the plugin, written in the Prometheus text exposition format. The file is meant for the
+ * textfile collector of the Prometheus node exporter, which reads all {@code *.prom} files of a directory. The file is
+ * replaced atomically, so the collector never reads a partially written file.
+ *
+ * Recording is done from several threads without contention, with {@link LongAdder}s.
+ */
+class SigningMetrics {
+
+    private static final String PREFIX = "maven_jarsigner_";
+
+    /** Upper bounds, in seconds, of the buckets of the TSA request duration histogram */
+    private static final double[] LATENCY_BUCKETS = {0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+    private final LongAdder archivesProcessed = new LongAdder();
+
+    private final LongAdder signedBytes = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder backoffNanos = new LongAdder();
+
+    private final Map<String, TsaMetrics> tsaMetrics = new ConcurrentHashMap<>();
+
+    private final Map<String, PoolMetrics> poolMetrics = new ConcurrentHashMap<>();
+
+    /** Registers that an archive has been processed */
+    void archiveProcessed() {
+        archivesProcessed.increment();
+    }
+
+    /** Registers that an archive of the given size has been signed */
+    void signed(long size) {
+        signedBytes.add(size);
+    }
+
+    /** Registers that a failed attempt is retried */
+    void retry() {
+        retries.increment();
+    }
+
+    /** Registers a wait before a retry */
+    void backoff(Duration duration) {
+        backoffNanos.add(duration.toNanos());
+    }
+
+    /**
+     * Registers the outcome of a request to a TSA server, to be used as a {@link TsaSelector.OutcomeListener}.
+     *
+     * @param tsaServer the TSA server used
+     * @param latency the duration of the successful request, {@code null} if it failed
+     */
+    void tsaOutcome(TsaServer tsaServer, Duration latency) {
+        String key = tsaServer.getKey();
+        if (key != null) {
+            tsaMetrics.computeIfAbsent(key, k -> new TsaMetrics()).record(latency);
+        }
+    }
+
+    /**
+     * Registers the use of a thread pool, to calculate how much of the time its threads were busy.
+     *
+     * @param pool the name of the pool
+     * @param threads the number of threads of the pool
+     * @param elapsed the time the pool was in use
+     * @param busy the total time the threads were busy, summed over the threads
+     */
+    void poolUsage(String pool, int threads, Duration elapsed, Duration busy) {
+        PoolMetrics metrics = poolMetrics.computeIfAbsent(pool, k -> new PoolMetrics());
+        metrics.capacityNanos.add(elapsed.toNanos() * threads);
+        metrics.busyNanos.add(busy.toNanos());
+    }
+
+    /**
+     * Writes the metrics, replacing the file if it exists.
+     *
+     * @param file the file to write, should have the extension {@code .prom} to be read by the node exporter
+     * @throws IOException if the file could not be written
+     */
+    void write(File file) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        // Not ending with .prom, so the node exporter does not read it while written
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                write(writer);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Writes the metrics in the Prometheus text exposition format */
+    void write(Writer writer) throws IOException {
+        writeHeader(writer, "archives_processed_total", "counter", "Archives processed");
+        writeSample(writer, "archives_processed_total", "", archivesProcessed.sum());
+        writeHeader(writer, "signed_bytes_total", "counter", "Size of the archives signed");
+        writeSample(writer, "signed_bytes_total", "", signedBytes.sum());
+        writeHeader(writer, "retries_total", "counter", "Failed attempts that were retried");
+        writeSample(writer, "retries_total", "", retries.sum());
+        writeHeader(writer, "retry_backoff_seconds_total", "counter", "Time spent waiting before retries");
+        writeSample(writer, "retry_backoff_seconds_total", "", seconds(backoffNanos.sum()));
+
+        Map<String, TsaMetrics> tsas = new TreeMap<>(tsaMetrics);
+        writeTsaCounter(writer, tsas, "tsa_requests_total", "Requests to TSA servers", m -> m.requests.sum());
+        writeTsaCounter(writer, tsas, "tsa_failures_total", "Failed requests to TSA servers", m -> m.failures.sum());
+        writeHeader(
+                writer, "tsa_request_duration_seconds", "histogram", "Duration of successful requests to TSA servers");
+        for (Map.Entry<String, TsaMetrics> entry : tsas.entrySet()) {
+            String tsaLabel = "tsa=\"" + escape(entry.getKey()) + "\"";
+            TsaMetrics metrics = entry.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                cumulative += metrics.buckets[i].sum();
+                writeSample(
+                        writer,
+                        "tsa_request_duration_seconds_bucket",
+                        tsaLabel + ",le=\"" + LATENCY_BUCKETS[i] + "\"",
+                        cumulative);
+            }
+            long count = metrics.requests.sum() - metrics.failures.sum();
+            writeSample(writer, "tsa_request_duration_seconds_bucket", tsaLabel + ",le=\"+Inf\"", count);
+            writeSample(writer, "tsa_request_duration_seconds_sum", tsaLabel, seconds(metrics.latencyNanos.sum()));
+            writeSample(writer, "tsa_request_duration_seconds_count", tsaLabel, count);
+        }
+
+        writeHeader(
+                writer,
+                "thread_utilization_ratio",
+                "gauge",
+                "Part of the time the threads of a pool were busy while it was in use");
+        for (Map.Entry<String, PoolMetrics> entry : new TreeMap<>(poolMetrics).entrySet()) {
+            long capacity = entry.getValue().capacityNanos.sum();
+            double ratio = capacity > 0 ? (double) entry.getValue().busyNanos.sum() / capacity : 0;
+            writeSample(
+                    writer, "thread_utilization_ratio", "pool=\"" + escape(entry.getKey()) + "\"", Math.min(1, ratio));
+        }
+    }
+
+    private static void writeTsaCounter(
+            Writer writer, Map<String, TsaMetrics> tsas, String name, String help, Function<TsaMetrics, Long> value)
+            throws IOException {
+        writeHeader(writer, name, "counter", help);
+        for (Map.Entry<String, TsaMetrics> entry : tsas.entrySet()) {
+            writeSample(writer, name, "tsa=\"" + escape(entry.getKey()) + "\"", value.apply(entry.getValue()));
+        }
+    }
+
+    private static void writeHeader(Writer writer, String name, String type, String help) throws IOException {
+        writer.write("# HELP " + PREFIX + name + " " + help + "\n");
+        writer.write("# TYPE " + PREFIX + name + " " + type + "\n");
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, Number value) throws IOException {
+        writer.write(PREFIX + name + (labels.isEmpty() ? "" : "{" + labels + "}") + " " + value + "\n");
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    /** Escapes a label value, as defined by the text exposition format */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /** The requests to a single TSA server */
+    private static class TsaMetrics {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        /** The number of successful requests per bucket, not cumulative. Slower than the last bucket not counted */
+        private final LongAdder[] buckets = new LongAdder[LATENCY_BUCKETS.length];
+
+        TsaMetrics() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(Duration latency) {
+            requests.increment();
+            if (latency == null) {
+                failures.increment();
+                return;
+            }
+            latencyNanos.add(latency.toNanos());
+            double latencySeconds = seconds(latency.toNanos());
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                if (latencySeconds <= LATENCY_BUCKETS[i]) {
+                    buckets[i].increment();
+                    return;
+                }
+            }
+        }
+    }
+
+    /** The use of a single thread pool */
+    private static class PoolMetrics {
+        private final LongAdder capacityNanos = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Client of the Time-Stamp Protocol (TSP) defined in RFC 3161. Requests a timestamp token for some data from a Time
+ * Stamping Authority (TSA) server using HTTP, the same way jarsigner does it when the {@code -tsa} option is used.
+ *
+ * The returned token is checked to be for the requested data (the message imprint) and the request (the nonce). The
+ * signature of the TSA on the token is not validated here, that is done by {@code jarsigner -verify}.
+ */
+class TsaClient {
+
+    /** The default of {@code jarsigner -tsadigestalg} since JDK 19 */
+    private static final String DEFAULT_DIGEST_ALGORITHM = "SHA-384";
+
+    private static final Map<String, String> DIGEST_ALGORITHM_OIDS = new HashMap<>();
+
+    static {
+        DIGEST_ALGORITHM_OIDS.put("SHA-1", "1.3.14.3.2.26");
+        DIGEST_ALGORITHM_OIDS.put("SHA-224", "2.16.840.1.101.3.4.2.4");
+        DIGEST_ALGORITHM_OIDS.put("SHA-256", "2.16.840.1.101.3.4.2.1");
+        DIGEST_ALGORITHM_OIDS.put("SHA-384", "2.16.840.1.101.3.4.2.2");
+        DIGEST_ALGORITHM_OIDS.put("SHA-512", "2.16.840.1.101.3.4.2.3");
+    }
+
+    /** PKIStatus values of a TimeStampResp that contain a token */
+    private static final int STATUS_GRANTED = 0;
+
+    private static final int STATUS_GRANTED_WITH_MODS = 1;
+
+    private final Function<URL, Proxy> proxySelector;
+
+    private final int timeoutMillis;
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param proxySelector gives the proxy to connect through, for the URL of a TSA server
+     * @param timeout connect and read timeout for requests
+     */
+    TsaClient(Function<URL, Proxy> proxySelector, Duration timeout) {
+        this.proxySelector = proxySelector;
+        this.timeoutMillis = (int) Math.min(Integer.MAX_VALUE, timeout.toMillis());
+    }
+
+    /**
+     * Requests a timestamp token for some data.
+     *
+     * @param tsaUrl the URL of the TSA server
+     * @param policyId the policy OID to request, or {@code null} to use the default of the server
+     * @param digestAlgorithm the digest algorithm for the message imprint, or {@code null} for SHA-384
+     * @param data the data to timestamp
+     * @return the DER encoded timestamp token, a PKCS #7 ContentInfo
+     * @throws IOException if the request failed or the response did not contain a valid token for the request
+     */
+    byte[] getTimestampToken(String tsaUrl, String policyId, String digestAlgorithm, byte[] data) throws IOException {
+        String algorithm =
+                digestAlgorithm != null ? digestAlgorithm.toUpperCase(Locale.ENGLISH) : DEFAULT_DIGEST_ALGORITHM;
+        String algorithmOid = DIGEST_ALGORITHM_OIDS.get(algorithm);
+        if (algorithmOid == null) {
+            throw new IOException("Unsupported TSA digest algorithm " + digestAlgorithm);
+        }
+
+        MessageDigest digest = FileDigests.newDigest(algorithm);
+        byte[] messageImprint = Der.sequence(
+                Der.sequence(Der.objectIdentifier(algorithmOid), Der.nullValue()),
+                Der.octetString(digest.digest(data)));
+        BigInteger nonce = new BigInteger(64, random);
+
+        byte[] request = Der.sequence(
+                Der.integer(BigInteger.ONE),
+                messageImprint,
+                policyId != null ? Der.objectIdentifier(policyId) : new byte[0],
+                Der.integer(nonce),
+                Der.booleanValue(true)); // Request the TSA certificate to be included in the token
+
+        byte[] response = post(tsaUrl, request);
+        return getToken(response, messageImprint, nonce);
+    }
+
+    private byte[] post(String tsaUrl, byte[] request) throws IOException {
+        URL url = new URL(tsaUrl);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection(proxySelector.apply(url));
+        try {
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setDoOutput(true);
+            connection.setUseCaches(false);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/timestamp-query");
+            connection.setFixedLengthStreamingMode(request.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(request);
+            }
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("TSA server " + tsaUrl + " responded with HTTP status " + responseCode);
+            }
+            try (InputStream in = connection.getInputStream()) {
+                return readAll(in);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Gets the token of a TimeStampResp, after checking that it was granted and matches the request. A malformed
+     * response fails with an {@link IOException}, like a failed request, so it is retried or another server is used.
+     */
+    private static byte[] getToken(byte[] response, byte[] messageImprint, BigInteger nonce) throws IOException {
+        Der.Element timeStampResp = Der.parse(response);
+        int status = timeStampResp
+                .getChild(0, Der.SEQUENCE)
+                .getChild(0, Der.INTEGER)
+                .getInteger()
+                .intValue();
+        if ((status != STATUS_GRANTED && status != STATUS_GRANTED_WITH_MODS)
+                || timeStampResp.getChildren().size() < 2) {
+            throw new IOException("Timestamp request rejected by TSA server, status " + status);
+        }
+
+        Der.Element token = timeStampResp.getChild(1, Der.SEQUENCE);
+        Der.Element tstInfo = getTstInfo(token);
+        if (!Arrays.equals(messageImprint, tstInfo.getChild(2, Der.SEQUENCE).getEncoded())) {
+            throw new IOException("Timestamp token does not match the request, wrong message imprint");
+        }
+        // Optional fields (accuracy, ordering, nonce...) follow after version, policy, imprint, serial and time
+        List<Der.Element> fields = tstInfo.getChildren();
+        for (int i = 5; i < fields.size(); i++) {
+            if (fields.get(i).getTag() == Der.INTEGER
+                    && nonce.equals(fields.get(i).getInteger())) {
+                return token.getEncoded();
+            }
+        }
+        throw new IOException("Timestamp token does not match the request, wrong nonce");
+    }
+
+    /** Gets the TSTInfo from a timestamp token, the content of the SignedData of the token */
+    private static Der.Element getTstInfo(Der.Element token) throws IOException {
+        Der.Element signedData = token.getChild(1, Der.contextSpecific(0)).getChild(0, Der.SEQUENCE);
+        Der.Element encapsulatedContent = signedData.getChild(2, Der.SEQUENCE);
+        Der.Element content =
+                encapsulatedContent.getChild(1, Der.contextSpecific(0)).getChild(0, Der.OCTET_STRING);
+        return Der.parse(content.getValue());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Properties;
+
+import org.apache.maven.plugins.jarsigner.TsaSelector.TsaServer;
+
+/**
+ * File with statistics of TSA servers, kept across builds. Used to let a {@link TsaSelector} start with knowledge about
+ * which TSA servers have been failing or slow recently, instead of rediscovering it in every build.
+ *
+ * The file is a properties file with the number of failures and successes, the average latency and the time of the
+ * last update for each TSA server. The counts decay with a half-life of {@link #HALF_LIFE}, so old failures are
+ * forgotten. The file is locked while read or updated, so several builds may share it.
+ */
+class TsaScoreboard {
+
+    /** Time after which a failure or success only counts half */
+    static final Duration HALF_LIFE = Duration.ofHours(6);
+
+    /** File locks are held by the JVM, so threads in the same JVM must be serialized separately */
+    private static final Object LOCK = new Object();
+
+    private static final String FAILURES = ".failures";
+
+    private static final String SUCCESSES = ".successes";
+
+    private static final String LATENCY_MILLIS = ".latencyMillis";
+
+    private static final String UPDATED = ".updated";
+
+    private final File file;
+
+    TsaScoreboard(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Adds the statistics of the file to the servers of a selector. Does nothing if already done for the selector.
+     *
+     * @param tsaSelector the selector
+     * @param nowMillis the current time
+     * @throws IOException if reading the file fails
+     */
+    void seed(TsaSelector tsaSelector, long nowMillis) throws IOException {
+        if (!file.exists() || !tsaSelector.markSeeded()) {
+            return;
+        }
+        Properties statistics;
+        synchronized (LOCK) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                    FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+                statistics = read(channel);
+            }
+        }
+
+        for (TsaServer tsaServer : tsaSelector.getServers()) {
+            String key = tsaServer.getKey();
+            if (key != null && statistics.containsKey(key + UPDATED)) {
+                double decay = getDecay(statistics, key, nowMillis);
+                int failures = (int) Math.round(getDouble(statistics, key + FAILURES) * decay);
+                // A server that only failed has no latency, it must not look like the fastest one
+                long latencyMillis = statistics.containsKey(key + LATENCY_MILLIS)
+                        ? (long) getDouble(statistics, key + LATENCY_MILLIS)
+                        : -1;
+                tsaSelector.seed(tsaServer, failures, latencyMillis);
+            }
+        }
+    }
+
+    /**
+     * Adds the statistics of the servers of a selector, that have not been added before, to the file.
+     *
+     * @param tsaSelector the selector
+     * @param nowMillis the current time
+     * @throws IOException if reading or writing the file fails
+     */
+    void update(TsaSelector tsaSelector, long nowMillis) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+        synchronized (LOCK) {
+            try (FileChannel channel = FileChannel.open(
+                            file.toPath(),
+                            StandardOpenOption.READ,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.CREATE);
+                    FileLock lock = channel.lock()) {
+                Properties statistics = read(channel);
+                boolean changed = false;
+                for (TsaServer tsaServer : tsaSelector.getServers()) {
+                    String key = tsaServer.getKey();
+                    long failures = tsaServer.takeUnreportedFailures();
+                    long successes = tsaServer.takeUnreportedSuccesses();
+                    if (key != null && (failures > 0 || successes > 0)) {
+                        update(statistics, key, failures, successes, tsaServer.getLatencyMillis(), nowMillis);
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    write(channel, statistics);
+                }
+            }
+        }
+    }
+
+    private static void update(
+            Properties statistics, String key, long failures, long successes, long latencyMillis, long nowMillis) {
+        double decay = statistics.containsKey(key + UPDATED) ? getDecay(statistics, key, nowMillis) : 0;
+        double oldLatencyMillis = getDouble(statistics, key + LATENCY_MILLIS);
+        statistics.setProperty(
+                key + FAILURES, String.valueOf(getDouble(statistics, key + FAILURES) * decay + failures));
+        statistics.setProperty(
+                key + SUCCESSES, String.valueOf(getDouble(statistics, key + SUCCESSES) * decay + successes));
+        if (latencyMillis >= 0) {
+            long newLatencyMillis =
+                    oldLatencyMillis > 0 ? Math.round((oldLatencyMillis + latencyMillis) / 2) : latencyMillis;
+            statistics.setProperty(key + LATENCY_MILLIS, String.valueOf(newLatencyMillis));
+        }
+        statistics.setProperty(key + UPDATED, String.valueOf(nowMillis));
+    }
+
+    /** Gets the factor to multiply old counts with, based on the time since the last update */
+    private static double getDecay(Properties statistics, String key, long nowMillis) {
+        long ageMillis = Math.max(0, nowMillis - (long) getDouble(statistics, key + UPDATED));
+        return Math.pow(0.5, (double) ageMillis / HALF_LIFE.toMillis());
+    }
+
+    private static double getDouble(Properties statistics, String key) {
+        try {
+            return Double.parseDouble(statistics.getProperty(key, "0"));
+        } catch (NumberFormatException e) {
+            return 0; // Ignore broken values, they will be replaced
+        }
+    }
+
+    private static Properties read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // Read until full
+        }
+        Properties statistics = new Properties();
+        statistics.load(new ByteArrayInputStream(buffer.array(), 0, buffer.position()));
+        return statistics;
+    }
+
+    private static void write(FileChannel channel, Properties statistics) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        statistics.store(out, "TSA server statistics of maven-jarsigner-plugin");
+        channel.truncate(0);
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+}
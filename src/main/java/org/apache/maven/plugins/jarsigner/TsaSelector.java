@@ -18,10 +18,14 @@
  */
 package org.apache.maven.plugins.jarsigner;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Helper class to select a Time Stamping Authority (TSA) server along with parameters to send. The protocol is defined
@@ -50,15 +54,39 @@ import java.util.concurrent.atomic.AtomicInteger;
  * {@code SHA-384}. A TSA server might reject the chosen algorithm, but typically most TSA servers supports the "common"
  * ones (like SHA-256, SHA-384 and SHA-512). In most cases there is no need for the end-user to specify this because the
  * jarsigner tool choose a good default.
+ *
+ * A server is selected by leasing it. The lease is used to report the outcome of using the server, so the selection
+ * does not depend on the thread reporting it. The health of the servers is kept in {@link LongAdder}s that threads
+ * update without contention, and the servers ordered from best to worst are published as an immutable snapshot.
+ * Reporting an outcome only marks the snapshot as outdated. It is replaced when leasing a server, right away after a
+ * failure and at most once per {@link #RANKING_INTERVAL} after a change of latency, so threads rarely synchronize.
  */
 class TsaSelector {
 
-    /** The current TsaServer in use (if any). One per thread */
-    private final ThreadLocal<TsaServer> currentTsaServer = new ThreadLocal<>();
-
-    /** List of TSA servers. Will at minimum contain a dummy/empty value */
+    /** List of TSA servers, in the configured order. Will at minimum contain a dummy/empty value */
     private final List<TsaServer> tsaServers;
 
+    /** Minimum time between updates of the ranking after a change of latency */
+    static final Duration RANKING_INTERVAL = Duration.ofSeconds(1);
+
+    /** Snapshot of the servers ordered from best to worst, replaced when the health of a server changes */
+    private volatile List<TsaServer> ranking;
+
+    /** Whether a server has failed, or statistics have been seeded, since the ranking was updated */
+    private final AtomicBoolean failureChanged = new AtomicBoolean();
+
+    /** Whether the latency of a server has changed since the ranking was updated */
+    private final AtomicBoolean latencyChanged = new AtomicBoolean();
+
+    /** When the ranking was last updated, in {@link System#nanoTime()} */
+    private volatile long rankingNanos = System.nanoTime();
+
+    /** Whether statistics from earlier builds have been added */
+    private final AtomicBoolean seeded = new AtomicBoolean();
+
+    /** Whether the servers have been probed */
+    private final AtomicBoolean probed = new AtomicBoolean();
+
     TsaSelector(String[] tsa, String[] tsacert, String[] tsapolicyid, String tsadigestalg) {
         List<TsaServer> tsaServersTmp = new ArrayList<>();
 
@@ -70,45 +98,236 @@ class TsaSelector {
         }
 
         if (tsaServersTmp.isEmpty()) {
-            tsaServersTmp.add(TsaServer.EMPTY);
+            tsaServersTmp.add(new TsaServer(null, null, null, null));
         }
         this.tsaServers = Collections.unmodifiableList(tsaServersTmp);
+        this.ranking = tsaServers;
     }
 
     /**
-     * Gets the next "best" TSA server to use.
+     * Leases the "best" TSA server to use.
      *
-     * Uses a "best effort" approach without any synchronization. It may not select the "snapshot-consistent" best TSA
-     * server, but good enough.
+     * @return the lease, to report the outcome of using the server to
      */
-    TsaServer getServer() {
-        TsaServer best = tsaServers.get(0);
-        for (int i = 1; i < tsaServers.size(); i++) {
-            if (best.failureCount.get() > tsaServers.get(i).failureCount.get()) {
-                best = tsaServers.get(i);
+    Lease lease() {
+        return select(getRanking().get(0), false);
+    }
+
+    /**
+     * Leases the "best" TSA server other than the given one, to use in parallel with it.
+     *
+     * @param exclude the TSA server not to select
+     * @return the lease, or {@code null} if there is no other TSA server
+     */
+    Lease leaseOther(TsaServer exclude) {
+        for (TsaServer tsaServer : getRanking()) {
+            if (tsaServer != exclude) {
+                return select(tsaServer, true);
             }
         }
-        currentTsaServer.set(best);
-        return best;
+        return null;
+    }
+
+    /** Leases a server selected by health, recording the selection for Java Flight Recorder */
+    private Lease select(TsaServer tsaServer, boolean hedge) {
+        if (tsaServer.getKey() != null) {
+            FlightRecorderEvents.TSA_SELECTION
+                    .begin()
+                    .set("tsaUrl", tsaServer.getKey())
+                    .set("failureCount", tsaServer.getFailureCount())
+                    .set("latency", tsaServer.getLatencyMillis())
+                    .set("hedge", hedge)
+                    .commit();
+        }
+        return new Lease(tsaServer);
+    }
+
+    /**
+     * Leases a specific TSA server, for example to probe it.
+     *
+     * @param tsaServer one of the servers of this selector
+     * @return the lease
+     */
+    Lease leaseOf(TsaServer tsaServer) {
+        return new Lease(tsaServer);
+    }
+
+    /**
+     * Adds statistics from earlier builds to a server.
+     *
+     * @param tsaServer one of the servers of this selector
+     * @param failures the number of failures to add
+     * @param latencyMillis the latency to use if none is known yet, or -1 if not known
+     */
+    void seed(TsaServer tsaServer, long failures, long latencyMillis) {
+        tsaServer.failureCount.add(failures);
+        tsaServer.reportedFailureCount.addAndGet(failures);
+        tsaServer.latencyMillis.compareAndSet(-1, latencyMillis);
+        failureChanged.set(true);
+    }
+
+    /**
+     * Marks that statistics from earlier builds are added, which should only be done once also when the selector is
+     * shared by several executions.
+     *
+     * @return {@code true} if not marked before
+     */
+    boolean markSeeded() {
+        return seeded.compareAndSet(false, true);
+    }
+
+    /**
+     * Marks that the servers are probed, which should only be done once also when the selector is shared by several
+     * executions.
+     *
+     * @return {@code true} if not marked before
+     */
+    boolean markProbed() {
+        return probed.compareAndSet(false, true);
+    }
+
+    /** Gets all TSA servers, in the configured order */
+    List<TsaServer> getServers() {
+        return tsaServers;
+    }
+
+    /** Gets the servers ordered from best to worst, updating the snapshot first if it is due */
+    private List<TsaServer> getRanking() {
+        if (isRankingDue()) {
+            updateRanking();
+        }
+        return ranking;
+    }
+
+    private boolean isRankingDue() {
+        return failureChanged.get()
+                || (latencyChanged.get() && System.nanoTime() - rankingNanos >= RANKING_INTERVAL.toNanos());
+    }
+
+    /**
+     * Publishes a new snapshot of the servers ordered by health, unless another thread has just done it. The sort is
+     * stable, so servers with the same health keep the configured order.
+     */
+    private synchronized void updateRanking() {
+        if (!isRankingDue()) {
+            return;
+        }
+        // Cleared before reading the health values, so that changes while sorting cause a new update
+        failureChanged.set(false);
+        latencyChanged.set(false);
+        rankingNanos = System.nanoTime();
+
+        // Sort on a copy of the health values, since they may change while sorting
+        List<long[]> health = new ArrayList<>();
+        for (int i = 0; i < tsaServers.size(); i++) {
+            TsaServer tsaServer = tsaServers.get(i);
+            long latency = tsaServer.getLatencyMillis() < 0 ? Long.MAX_VALUE : tsaServer.getLatencyMillis();
+            health.add(new long[] {tsaServer.getFailureCount(), latency, i});
+        }
+        // Fewer failures first, then lower latency, with unknown latency last
+        health.sort(Comparator.<long[]>comparingLong(h -> h[0]).thenComparingLong(h -> h[1]));
+
+        List<TsaServer> newRanking = new ArrayList<>();
+        for (long[] h : health) {
+            newRanking.add(tsaServers.get((int) h[2]));
+        }
+        ranking = Collections.unmodifiableList(newRanking);
     }
 
     /**
-     * Register that the current used TsaServer was involved in a jarsigner execution that failed. This could be a
-     * problem with the TsaServer, but it could also be other factors unrelated to the TsaServer. Regardless of the
-     * cause of the failure it is registered as a failure for the current used TsaServer to be used when determining the
-     * next TsaServer to try.
+     * A TSA server selected for use, to report the outcome of using it to. Only the first outcome reported is
+     * registered.
      */
-    void registerFailure() {
-        if (currentTsaServer.get() != null) {
-            currentTsaServer.get().failureCount.incrementAndGet();
+    final class Lease {
+        private final TsaServer tsaServer;
+        private final AtomicBoolean reported = new AtomicBoolean();
+        private volatile OutcomeListener listener;
+
+        private Lease(TsaServer tsaServer) {
+            this.tsaServer = tsaServer;
+        }
+
+        TsaServer getServer() {
+            return tsaServer;
+        }
+
+        /**
+         * Sets a listener to also report the outcome to, since the selector may be shared by several executions.
+         *
+         * @param listener the listener
+         * @return this lease
+         */
+        Lease withListener(OutcomeListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Register that the server was used in a successful execution.
+         *
+         * @param latency the time the execution took
+         */
+        void success(Duration latency) {
+            if (reported.compareAndSet(false, true)) {
+                tsaServer.successCount.increment();
+                long millis = latency.toMillis();
+                // Exponentially weighted moving average
+                tsaServer.latencyMillis.updateAndGet(
+                        previous -> previous < 0 ? millis : (previous * 7 + millis * 3) / 10);
+                latencyChanged.set(true);
+                notifyListener(latency);
+            }
+        }
+
+        /**
+         * Register that the server was involved in an execution that failed. This could be a problem with the server,
+         * but it could also be other factors unrelated to the server. Regardless of the cause it is registered as a
+         * failure for the server, to be used when determining the next server to use.
+         */
+        void failure() {
+            if (reported.compareAndSet(false, true)) {
+                tsaServer.failureCount.increment();
+                failureChanged.set(true);
+                notifyListener(null);
+            }
+        }
+
+        /**
+         * Releases the lease without an outcome, for example when the execution was cancelled because another server
+         * used in parallel finished first. Nothing is registered for the server.
+         */
+        void cancel() {
+            reported.set(true);
+        }
+
+        private void notifyListener(Duration latency) {
+            OutcomeListener currentListener = listener;
+            if (currentListener != null) {
+                currentListener.outcome(tsaServer, latency);
+            }
         }
     }
 
+    /** Receives the outcome reported to a lease */
+    @FunctionalInterface
+    interface OutcomeListener {
+        /**
+         * @param tsaServer the TSA server of the lease
+         * @param latency the time the successful execution took, {@code null} if it failed
+         */
+        void outcome(TsaServer tsaServer, Duration latency);
+    }
+
     /** Representation of a single TSA server and the parameters to use for it */
     static class TsaServer {
-        private static final TsaServer EMPTY = new TsaServer(null, null, null, null);
+        private final LongAdder failureCount = new LongAdder();
+        private final LongAdder successCount = new LongAdder();
+        /** Moving average of the duration of successful executions, -1 if not known */
+        private final AtomicLong latencyMillis = new AtomicLong(-1);
+        /** The part of the counts that are from earlier builds, or have been saved for later builds */
+        private final AtomicLong reportedFailureCount = new AtomicLong();
 
-        private final AtomicInteger failureCount = new AtomicInteger(0);
+        private final AtomicLong reportedSuccessCount = new AtomicLong();
         private final String tsaUrl;
         private final String tsaAlias;
         private final String tsaPolicyId;
@@ -136,5 +355,37 @@ class TsaSelector {
         String getTsaDigestAlt() {
             return tsaDigestAlt;
         }
+
+        /** Gets a key identifying the server across builds, or {@code null} if there is no TSA server */
+        String getKey() {
+            if (tsaUrl != null) {
+                return tsaUrl;
+            }
+            return tsaAlias != null ? "tsacert:" + tsaAlias : null;
+        }
+
+        long getFailureCount() {
+            return failureCount.sum();
+        }
+
+        long getSuccessCount() {
+            return successCount.sum();
+        }
+
+        long getLatencyMillis() {
+            return latencyMillis.get();
+        }
+
+        /** Gets the number of failures not reported before, and marks them as reported */
+        long takeUnreportedFailures() {
+            long failures = failureCount.sum();
+            return failures - reportedFailureCount.getAndSet(failures);
+        }
+
+        /** Gets the number of successes not reported before, and marks them as reported */
+        long takeUnreportedSuccesses() {
+            long successes = successCount.sum();
+            return successes - reportedSuccessCount.getAndSet(successes);
+        }
     }
 }
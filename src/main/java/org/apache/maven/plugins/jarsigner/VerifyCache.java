@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Persistent cache of successful archive verifications. An entry is keyed by the SHA-256 digest of the archive content
+ * together with all options that could affect the verification outcome, so an unchanged archive verified with the same
+ * options and the same JDK does not need to be verified again. Only successful verifications are stored.
+ *
+ * The cache is a directory of empty marker files, which makes it safe to share between concurrent builds.
+ */
+class VerifyCache {
+
+    private final File directory;
+
+    VerifyCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Computes the cache key of an archive.
+     *
+     * @param archive the archive to verify
+     * @param options description of every option affecting the verification outcome
+     * @return the cache key
+     * @throws IOException if the archive could not be read
+     */
+    String getKey(File archive, String options) throws IOException {
+        return FileDigests.sha256(FileDigests.sha256(archive) + "\n" + options);
+    }
+
+    /** Checks if a successful verification has been recorded for the key */
+    boolean contains(String key) {
+        return getMarkerFile(key).isFile();
+    }
+
+    /** Records a successful verification for the key */
+    void add(String key) throws IOException {
+        File markerFile = getMarkerFile(key);
+        markerFile.getParentFile().mkdirs();
+        File tempFile = File.createTempFile(key, ".tmp", markerFile.getParentFile());
+        Files.move(tempFile.toPath(), markerFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private File getMarkerFile(String key) {
+        // Spread the markers over sub directories to keep directory sizes reasonable
+        return new File(new File(directory, key.substring(0, 2)), key);
+    }
+}
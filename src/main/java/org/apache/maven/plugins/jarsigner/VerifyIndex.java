@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * Index of the archives of a project verified successfully, by path. For each archive the size, last modification time
+ * and content digest are recorded along with the verification options, so an archive unchanged since its verification
+ * does not need to be verified again. The size and last modification time are compared first, the content digest is
+ * only computed when the last modification time differs, so an archive that is only touched is skipped as well.
+ *
+ * Unlike the {@link VerifyCache} the index is a single file, meant to be local to the project and used by one build at
+ * a time.
+ */
+class VerifyIndex {
+
+    private final File file;
+
+    private final Properties entries = new Properties();
+
+    private boolean modified;
+
+    /**
+     * @param file the index file, loaded if it exists
+     * @throws IOException if the existing index file could not be read
+     */
+    VerifyIndex(File file) throws IOException {
+        this.file = file;
+        if (file.isFile()) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                entries.load(in);
+            }
+        }
+    }
+
+    /**
+     * Checks if an archive was verified successfully with the same options, and is unchanged since.
+     *
+     * @param archive the archive
+     * @param options description of every option affecting the verification outcome
+     * @return {@code true} if the archive does not need to be verified again
+     * @throws IOException if the archive could not be read
+     */
+    boolean isVerified(File archive, String options) throws IOException {
+        String[] entry = getEntry(archive);
+        if (entry == null
+                || !entry[3].equals(FileDigests.sha256(options))
+                || Long.parseLong(entry[0]) != archive.length()) {
+            return false;
+        }
+        if (Long.parseLong(entry[1]) == archive.lastModified()) {
+            return true;
+        }
+        if (entry[2].equals(FileDigests.sha256(archive))) {
+            // Touched but not changed, remember the new time to not compute the digest again
+            put(archive, entry[2], entry[3]);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a successful verification of an archive.
+     *
+     * @param archive the archive
+     * @param options description of every option affecting the verification outcome
+     * @throws IOException if the archive could not be read
+     */
+    void add(File archive, String options) throws IOException {
+        put(archive, FileDigests.sha256(archive), FileDigests.sha256(options));
+    }
+
+    /**
+     * Writes the index file, if changed.
+     *
+     * @throws IOException if the index file could not be written
+     */
+    void save() throws IOException {
+        if (modified) {
+            Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+            try (OutputStream out = Files.newOutputStream(file.toPath())) {
+                entries.store(out, "Archives verified by the jarsigner verify goal");
+            }
+            modified = false;
+        }
+    }
+
+    private void put(File archive, String contentDigest, String optionsDigest) {
+        String value = String.join(
+                ":",
+                String.valueOf(archive.length()),
+                String.valueOf(archive.lastModified()),
+                contentDigest,
+                optionsDigest);
+        entries.setProperty(archive.getAbsolutePath(), value);
+        modified = true;
+    }
+
+    /**
+     * Gets the size, last modification time, content digest and options digest recorded for an archive, or
+     * {@code null} if none or a malformed entry is recorded, like one edited by hand
+     */
+    private String[] getEntry(File archive) {
+        String value = entries.getProperty(archive.getAbsolutePath());
+        if (value == null) {
+            return null;
+        }
+        String[] entry = value.split(":");
+        if (entry.length != 4) {
+            return null;
+        }
+        try {
+            Long.parseLong(entry[0]);
+            Long.parseLong(entry[1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return entry;
+    }
+}
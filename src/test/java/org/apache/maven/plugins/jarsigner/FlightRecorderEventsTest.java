@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.jarsigner.JarSigner;
+import org.apache.maven.shared.jarsigner.JarSignerSignRequest;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.apache.maven.plugins.jarsigner.TestJavaToolResults.RESULT_OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The JFR API is used by reflection also here, since the tests are compiled for Java 8 as well.
+ */
+public class FlightRecorderEventsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testNotRecording() {
+        // No-op events when no recording is running
+        FlightRecorderEvents.ARCHIVE
+                .begin()
+                .set("archive", "a.jar")
+                .set("size", 1L)
+                .commit();
+    }
+
+    @Test
+    public void testRecording() throws Exception {
+        Object recording = startRecording();
+
+        FlightRecorderEvents.SIGN_ATTEMPT
+                .begin()
+                .set("archive", "a.jar")
+                .set("size", 42L)
+                .set("tsaUrl", "http://tsa.example.com")
+                .set("attempt", 2)
+                .set("exitCode", 1)
+                .commit();
+        FlightRecorderEvents.RETRY_WAIT.begin().set("attempt", 2).commit();
+
+        List<?> events = stopRecording(recording);
+        List<String> names = new ArrayList<>();
+        Object attempt = null;
+        for (Object event : events) {
+            String name = getName(event);
+            names.add(name);
+            if (name.endsWith(".SignAttempt")) {
+                attempt = event;
+            }
+        }
+        assertEquals(2, names.size());
+        assertTrue(names.contains("org.apache.maven.plugins.jarsigner.RetryWait"));
+
+        assertEquals("a.jar", getValue(attempt, "archive"));
+        assertEquals(42L, getValue(attempt, "size"));
+        assertEquals("http://tsa.example.com", getValue(attempt, "tsaUrl"));
+        assertEquals(2, getValue(attempt, "attempt"));
+        assertEquals(1, getValue(attempt, "exitCode"));
+    }
+
+    /** A hedge selection is only recorded when a hedged attempt is started, not when the first attempt is in time */
+    @Test(timeout = 30000)
+    public void testNoHedgeSelectionWithoutHedgedAttempt() throws Exception {
+        File projectDir = folder.newFolder("dummy-project");
+        File archiveDirectory = new File(projectDir, "archives");
+        archiveDirectory.mkdir();
+        for (int i = 0; i < 6; i++) {
+            TestArtifacts.createDummyZipFile(new File(archiveDirectory, "archive" + i + ".jar"));
+        }
+        // The first five archives build up a latency of about 200 ms, the sixth is signed well within it
+        JarSigner jarSigner = mock(JarSigner.class);
+        AtomicInteger count = new AtomicInteger();
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).then(invocation -> {
+            if (count.incrementAndGet() <= 5) {
+                Thread.sleep(200);
+            }
+            JarSignerSignRequest request = (JarSignerSignRequest) invocation.getArguments()[0];
+            if (request.getSignedjar() != null) {
+                Files.copy(request.getArchive().toPath(), request.getSignedjar().toPath());
+            }
+            return RESULT_OK;
+        });
+        Map<String, String> configuration = new LinkedHashMap<>();
+        configuration.put("processMainArtifact", "false");
+        configuration.put("archiveDirectory", archiveDirectory.getPath());
+        configuration.put("tsa", "http://tsa1.example.com,http://tsa2.example.com");
+        configuration.put("hedgePercentile", "50");
+        MojoTestCreator<JarsignerSignMojo> mojoTestCreator =
+                new MojoTestCreator<>(JarsignerSignMojo.class, mock(MavenProject.class), projectDir, jarSigner);
+        mojoTestCreator.setLog(mock(Log.class));
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+        Object recording = startRecording();
+
+        mojo.execute();
+
+        List<Object> hedges = new ArrayList<>();
+        List<Object> selections = new ArrayList<>();
+        for (Object event : stopRecording(recording)) {
+            if (getName(event).endsWith(".TsaSelection")) {
+                selections.add(event);
+                if (Boolean.TRUE.equals(getValue(event, "hedge"))) {
+                    hedges.add(event);
+                }
+            }
+        }
+        assertEquals(6, selections.size());
+        assertEquals(Collections.emptyList(), hedges);
+        verify(jarSigner, times(6)).execute(any());
+    }
+
+    /** Starts a recording of the events of the plugin, skipping the test if JFR is not available */
+    private static Object startRecording() throws Exception {
+        Class<?> recordingClass;
+        try {
+            recordingClass = Class.forName("jdk.jfr.Recording");
+        } catch (ClassNotFoundException e) {
+            Assume.assumeNoException(e);
+            return null;
+        }
+        Object recording = recordingClass.getConstructor().newInstance();
+        recordingClass.getMethod("enable", String.class).invoke(recording, "org.apache.maven.plugins.jarsigner.*");
+        recordingClass.getMethod("start").invoke(recording);
+        return recording;
+    }
+
+    /** Stops a recording and reads its events */
+    private List<?> stopRecording(Object recording) throws Exception {
+        Class<?> recordingClass = recording.getClass();
+        recordingClass.getMethod("stop").invoke(recording);
+        Path file = folder.newFile().toPath();
+        recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+        recordingClass.getMethod("close").invoke(recording);
+
+        return (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+                .getMethod("readAllEvents", Path.class)
+                .invoke(null, file);
+    }
+
+    private static String getName(Object event) throws Exception {
+        Object eventType = event.getClass().getMethod("getEventType").invoke(event);
+        return (String) eventType.getClass().getMethod("getName").invoke(eventType);
+    }
+
+    private static Object getValue(Object event, String field) throws Exception {
+        return event.getClass().getMethod("getValue", String.class).invoke(event, field);
+    }
+}
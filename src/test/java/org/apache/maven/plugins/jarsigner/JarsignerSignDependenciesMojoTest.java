@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.jarsigner.JarSigner;
+import org.apache.maven.shared.jarsigner.JarSignerSignRequest;
+import org.apache.maven.shared.jarsigner.JarSignerUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.apache.maven.plugins.jarsigner.TestJavaToolResults.RESULT_OK;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JarsignerSignDependenciesMojoTest {
+
+    private static final File KEYSTORE = new File("src/it/keystore");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Locale originalLocale;
+    private MavenProject project = mock(MavenProject.class);
+    private JarSigner jarSigner = mock(JarSigner.class);
+    private File repositoryDir;
+    private File outputDir;
+    private Map<String, String> configuration = new LinkedHashMap<>();
+    private MojoTestCreator<JarsignerSignDependenciesMojo> mojoTestCreator;
+
+    @Before
+    public void setUp() throws Exception {
+        originalLocale = Locale.getDefault();
+        Locale.setDefault(Locale.ENGLISH); // For English ResourceBundle to test log messages
+        File projectDir = folder.newFolder("dummy-project");
+        repositoryDir = folder.newFolder("repository");
+        outputDir = new File(projectDir, "target/signed-dependencies");
+        mojoTestCreator = new MojoTestCreator<JarsignerSignDependenciesMojo>(
+                JarsignerSignDependenciesMojo.class, project, projectDir, jarSigner);
+        when(jarSigner.execute(any(JarSignerSignRequest.class))).thenAnswer(invocation -> {
+            JarSignerSignRequest request = invocation.getArgument(0);
+            TestArtifacts.createDummySignedJarFile(request.getArchive()); // Simulated signing
+            return RESULT_OK;
+        });
+
+        configuration.put("keystore", KEYSTORE.getAbsolutePath());
+        configuration.put("storepass", "store-passwd");
+        configuration.put("alias", "test-01");
+        configuration.put("keypass", "key-passwd");
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(originalLocale);
+    }
+
+    /** Dependencies are signed in the output directory, and only signed again when changed */
+    @Test
+    public void testSignDependencies() throws Exception {
+        Artifact dependency1 = TestArtifacts.createJarArtifact(repositoryDir, "dependency1.jar", "one");
+        Artifact dependency2 = TestArtifacts.createJarArtifact(repositoryDir, "dependency2.jar", "two");
+        Artifact pom = TestArtifacts.createArtifact(
+                TestArtifacts.createDummyXMLFile(new File(repositoryDir, "dependency3.pom")), "pom", "three");
+        setDependencies(dependency1, dependency2, pom);
+
+        mojoTestCreator.configure(configuration).execute();
+
+        verify(jarSigner, times(2)).execute(any(JarSignerSignRequest.class));
+        assertTrue(JarSignerUtil.isArchiveSigned(new File(outputDir, "dependency1.jar")));
+        assertTrue(JarSignerUtil.isArchiveSigned(new File(outputDir, "dependency2.jar")));
+        assertFalse(JarSignerUtil.isArchiveSigned(dependency1.getFile())); // Not changed in the repository
+
+        // Nothing changed
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(2)).execute(any(JarSignerSignRequest.class));
+
+        // Changed dependency
+        TestArtifacts.createDummySignedJarFile(dependency2.getFile());
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(3)).execute(any(JarSignerSignRequest.class));
+
+        // Changed signing options
+        configuration.put("sigfile", "OTHER");
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(5)).execute(any(JarSignerSignRequest.class));
+    }
+
+    /** Signed dependencies that are no longer dependencies are removed from the output directory */
+    @Test
+    public void testRemovedDependency() throws Exception {
+        Artifact dependency1 = TestArtifacts.createJarArtifact(repositoryDir, "dependency1.jar", "one");
+        Artifact dependency2 = TestArtifacts.createJarArtifact(repositoryDir, "dependency2.jar", "two");
+        setDependencies(dependency1, dependency2);
+        mojoTestCreator.configure(configuration).execute();
+
+        setDependencies(dependency1);
+        mojoTestCreator.configure(configuration).execute();
+
+        String[] files = outputDir.list();
+        Arrays.sort(files);
+        assertArrayEquals(new String[] {".signed-dependencies.properties", "dependency1.jar"}, files);
+    }
+
+    private void setDependencies(Artifact... dependencies) {
+        when(project.getArtifacts()).thenReturn(new LinkedHashSet<>(Arrays.asList(dependencies)));
+    }
+}
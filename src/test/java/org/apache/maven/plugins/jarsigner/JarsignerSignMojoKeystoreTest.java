@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.jarsigner.JarSigner;
+import org.apache.maven.shared.jarsigner.JarSignerSignRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.apache.maven.plugins.jarsigner.TestJavaToolResults.RESULT_OK;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests of the features reading the keystore in the Maven JVM, like the keystore check done before signing, using the
+ * keystore of the integration tests
+ */
+public class JarsignerSignMojoKeystoreTest {
+
+    private static final File KEYSTORE = new File("src/it/keystore");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Locale originalLocale;
+    private MavenProject project = mock(MavenProject.class);
+    private JarSigner jarSigner = mock(JarSigner.class);
+    private Map<String, String> configuration = new LinkedHashMap<>();
+    private MojoTestCreator<JarsignerSignMojo> mojoTestCreator;
+    private Artifact mainArtifact;
+
+    @Before
+    public void setUp() throws Exception {
+        originalLocale = Locale.getDefault();
+        Locale.setDefault(Locale.ENGLISH); // For English ResourceBundle to test log messages
+        File projectDir = folder.newFolder("dummy-project");
+        mojoTestCreator =
+                new MojoTestCreator<JarsignerSignMojo>(JarsignerSignMojo.class, project, projectDir, jarSigner);
+        mainArtifact = TestArtifacts.createJarArtifact(projectDir, "my-project.jar");
+        when(project.getArtifact()).thenReturn(mainArtifact);
+        when(jarSigner.execute(any(JarSignerSignRequest.class))).thenReturn(RESULT_OK);
+
+        configuration.put("keystore", KEYSTORE.getAbsolutePath());
+        configuration.put("storepass", "store-passwd");
+        configuration.put("alias", "test-01");
+        configuration.put("keypass", "key-passwd");
+        configuration.put("checkKeystore", "true");
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(originalLocale);
+    }
+
+    @Test
+    public void testValidKeystore() throws Exception {
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        verify(jarSigner).execute(any(JarSignerSignRequest.class));
+    }
+
+    @Test
+    public void testWrongPasswordsAndAlias() throws Exception {
+        assertFailsBeforeSigning("storepass", "wrong", "Failed to open keystore");
+        assertFailsBeforeSigning("alias", "wrong", "Alias 'wrong' not found");
+        assertFailsBeforeSigning("keypass", "wrong", "Failed to get the private key");
+        assertFailsBeforeSigning("keystore", "missing-keystore", "not found");
+    }
+
+    @Test
+    public void testCertchain() throws Exception {
+        File certchain = folder.newFile("certchain.pem");
+        Files.write(certchain.toPath(), "not a certificate".getBytes(StandardCharsets.UTF_8));
+        assertFailsBeforeSigning("certchain", certchain.getPath(), "Failed to read certchain");
+
+        // Not checked by default, when the keystore check is disabled
+        configuration.remove("checkKeystore");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+        mojo.execute();
+        verify(jarSigner).execute(any(JarSignerSignRequest.class));
+    }
+
+    /** An archive signed before in the same way is taken from the cache, without executing jarsigner */
+    @Test
+    public void testSignedArchiveCache() throws Exception {
+        File archive = mainArtifact.getFile();
+        byte[] unsigned = Files.readAllBytes(archive.toPath());
+        when(jarSigner.execute(any(JarSignerSignRequest.class))).thenAnswer(invocation -> {
+            TestArtifacts.createDummySignedJarFile(archive); // Simulated signing
+            return RESULT_OK;
+        });
+        configuration.put(
+                "signedArchiveCacheDirectory", folder.newFolder("cache").getPath());
+
+        mojoTestCreator.configure(configuration).execute();
+        byte[] signed = Files.readAllBytes(archive.toPath());
+
+        Files.write(archive.toPath(), unsigned);
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(1)).execute(any(JarSignerSignRequest.class));
+        assertArrayEquals(signed, Files.readAllBytes(archive.toPath()));
+
+        // Changed signing options
+        Files.write(archive.toPath(), unsigned);
+        configuration.put("sigfile", "OTHER");
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(2)).execute(any(JarSignerSignRequest.class));
+    }
+
+    /** With -signedjar the archive is not signed, so it must neither be stored in nor restored from the cache */
+    @Test
+    public void testSignedArchiveCacheWithSignedjar() throws Exception {
+        configuration.put(
+                "signedArchiveCacheDirectory", folder.newFolder("cache").getPath());
+        configuration.put("arguments", "-signedjar,my-project_signed.jar");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        MojoExecutionException mojoException = assertThrows(MojoExecutionException.class, mojo::execute);
+        assertThat(mojoException.getMessage(), containsString("signedArchiveCacheDirectory"));
+    }
+
+    /** The least recently used archives are evicted when the cache is too large */
+    @Test
+    public void testSignedArchiveCacheEviction() throws Exception {
+        File cacheDirectory = folder.newFolder("cache");
+        SignedArchiveCache cache = new SignedArchiveCache(cacheDirectory, 3000);
+        File archive = folder.newFile("signed.jar");
+        Files.write(archive.toPath(), new byte[1000]);
+
+        cache.store("aa01", archive);
+        cache.store("bb02", archive);
+        new File(cacheDirectory, "aa/aa01.jar").setLastModified(System.currentTimeMillis() - 60_000);
+        new File(cacheDirectory, "bb/bb02.jar").setLastModified(System.currentTimeMillis() - 120_000);
+        assertTrue(cache.restore("bb02", archive)); // Now the most recently used
+        cache.store("cc03", archive);
+        cache.store("dd04", archive);
+
+        assertFalse(new File(cacheDirectory, "aa/aa01.jar").exists());
+        assertTrue(new File(cacheDirectory, "bb/bb02.jar").exists());
+        assertFalse(cache.restore("aa01", archive));
+        assertTrue(cache.restore("dd04", archive));
+    }
+
+    private void assertFailsBeforeSigning(String parameter, String value, String expectedMessage) throws Exception {
+        String originalValue = configuration.put(parameter, value);
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        MojoExecutionException mojoException = assertThrows(MojoExecutionException.class, mojo::execute);
+        assertThat(mojoException.getMessage(), containsString(expectedMessage));
+        verify(jarSigner, never()).execute(any(JarSignerSignRequest.class));
+
+        if (originalValue != null) {
+            configuration.put(parameter, originalValue);
+        }
+    }
+}
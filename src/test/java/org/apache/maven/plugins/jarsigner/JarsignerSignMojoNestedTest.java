@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.jarsigner.JarSigner;
+import org.apache.maven.shared.jarsigner.JarSignerSignRequest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.apache.maven.plugins.jarsigner.TestJavaToolResults.RESULT_OK;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JarsignerSignMojoNestedTest {
+    private static final String SIGNATURE_ENTRY = "META-INF/TEST.SF";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MavenProject project = mock(MavenProject.class);
+    private JarSigner jarSigner = mock(JarSigner.class);
+    private File projectDir;
+    private Map<String, String> configuration = new LinkedHashMap<>();
+    private MojoTestCreator<JarsignerSignMojo> mojoTestCreator;
+    private List<String> signedArchives = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws Exception {
+        projectDir = folder.newFolder("dummy-project");
+        configuration.put("processMainArtifact", "false");
+        mojoTestCreator =
+                new MojoTestCreator<JarsignerSignMojo>(JarsignerSignMojo.class, project, projectDir, jarSigner);
+        mojoTestCreator.setLog(mock(Log.class));
+
+        // "Sign" by adding a signature file entry to the archive
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).then(invocation -> {
+            File archive = ((JarSignerSignRequest) invocation.getArguments()[0]).getArchive();
+            signedArchives.add(archive.getName());
+            addEntry(archive, SIGNATURE_ENTRY);
+            return RESULT_OK;
+        });
+    }
+
+    @Test
+    public void testNestedArchivesSignedAndWrittenBack() throws Exception {
+        File archiveDirectory = new File(projectDir, "archives");
+        archiveDirectory.mkdir();
+        File war = new File(archiveDirectory, "webapp.war");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war))) {
+            putEntry(out, "WEB-INF/classes/App.class", "class".getBytes(), ZipEntry.DEFLATED);
+            putEntry(out, "WEB-INF/lib/deflated.jar", createJar("deflated-entry.txt"), ZipEntry.DEFLATED);
+            putEntry(out, "WEB-INF/lib/stored.jar", createJar("stored-entry.txt"), ZipEntry.STORED);
+            putEntry(out, "WEB-INF/lib/excluded.jar", createJar("excluded-entry.txt"), ZipEntry.DEFLATED);
+            putEntry(out, "WEB-INF/lib/not-a-jar.jar", "text".getBytes(), ZipEntry.DEFLATED);
+        }
+
+        configuration.put("archiveDirectory", archiveDirectory.getPath());
+        configuration.put("nestedIncludes", "WEB-INF/lib/*.jar");
+        configuration.put("nestedExcludes", "**/excluded.jar");
+        configuration.put("threadCount", "2");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        // Nested archives are signed before the outer archive
+        assertEquals(3, signedArchives.size());
+        assertTrue(signedArchives.subList(0, 2).containsAll(Arrays.asList("deflated.jar", "stored.jar")));
+        assertEquals("webapp.war", signedArchives.get(2));
+
+        try (ZipFile zipFile = new ZipFile(war)) {
+            List<String> names = new ArrayList<>();
+            zipFile.stream().forEach(entry -> names.add(entry.getName()));
+            // Order of the original entries is kept
+            assertEquals(
+                    Arrays.asList(
+                            "WEB-INF/classes/App.class",
+                            "WEB-INF/lib/deflated.jar",
+                            "WEB-INF/lib/stored.jar",
+                            "WEB-INF/lib/excluded.jar",
+                            "WEB-INF/lib/not-a-jar.jar",
+                            SIGNATURE_ENTRY),
+                    names);
+
+            assertTrue(nestedEntries(zipFile, "WEB-INF/lib/deflated.jar").contains(SIGNATURE_ENTRY));
+            assertTrue(nestedEntries(zipFile, "WEB-INF/lib/stored.jar").contains(SIGNATURE_ENTRY));
+            assertFalse(nestedEntries(zipFile, "WEB-INF/lib/excluded.jar").contains(SIGNATURE_ENTRY));
+            assertEquals(
+                    ZipEntry.STORED, zipFile.getEntry("WEB-INF/lib/stored.jar").getMethod());
+            assertEquals(
+                    ZipEntry.DEFLATED,
+                    zipFile.getEntry("WEB-INF/lib/deflated.jar").getMethod());
+        }
+    }
+
+    /** A {@code **} directory matches zero directories too, and the temporary nested archives get no checksum files */
+    @Test
+    public void testNestedArchivesAtAnyDepthWithoutChecksums() throws Exception {
+        File archiveDirectory = new File(projectDir, "archives");
+        archiveDirectory.mkdir();
+        File jar = new File(archiveDirectory, "app.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            putEntry(out, "root.jar", createJar("root-entry.txt"), ZipEntry.DEFLATED);
+            putEntry(out, "BOOT-INF/lib/library.jar", createJar("library-entry.txt"), ZipEntry.STORED);
+        }
+        // With one thread, the first nested archive is completed before the second one is signed
+        List<File> checksumFiles = Collections.synchronizedList(new ArrayList<>());
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).then(invocation -> {
+            File archive = ((JarSignerSignRequest) invocation.getArguments()[0]).getArchive();
+            signedArchives.add(archive.getName());
+            File previousDirectory = new File(archive.getParentFile().getParentFile(), "0");
+            File[] previousFiles = previousDirectory.listFiles((dir, name) -> name.endsWith(".sha256"));
+            if (previousFiles != null) {
+                checksumFiles.addAll(Arrays.asList(previousFiles));
+            }
+            addEntry(archive, SIGNATURE_ENTRY);
+            return RESULT_OK;
+        });
+
+        configuration.put("archiveDirectory", archiveDirectory.getPath());
+        configuration.put("nestedIncludes", "**/*.jar");
+        configuration.put("checksumAlgorithms", "SHA-256");
+        configuration.put("threadCount", "1");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        assertEquals(Arrays.asList("root.jar", "library.jar", "app.jar"), signedArchives);
+        assertEquals(Collections.emptyList(), checksumFiles);
+        assertTrue(new File(archiveDirectory, "app.jar.sha256").isFile());
+    }
+
+    /** Only a {@code **} directory outside of a group is made optional, since glob groups cannot be nested */
+    @Test
+    public void testNestedPatternWithGroup() throws Exception {
+        File archiveDirectory = new File(projectDir, "archives");
+        archiveDirectory.mkdir();
+        File war = new File(archiveDirectory, "webapp.war");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war))) {
+            putEntry(out, "WEB-INF/lib/direct.jar", createJar("direct-entry.txt"), ZipEntry.DEFLATED);
+            putEntry(out, "WEB-INF/lib/sub/deep.jar", createJar("deep-entry.txt"), ZipEntry.DEFLATED);
+            putEntry(out, "lib/other.jar", createJar("other-entry.txt"), ZipEntry.DEFLATED);
+        }
+        // Not through the mojo configuration, which would split the pattern at the comma of the group
+        List<NestedArchives.NestedArchive> nestedArchives = NestedArchives.extract(
+                war, new String[] {"**/{WEB-INF/lib/**/*.jar,none}"}, new String[0], folder.newFolder("nested"));
+
+        assertEquals(1, nestedArchives.size());
+        assertEquals("WEB-INF/lib/sub/deep.jar", nestedArchives.get(0).getEntryName());
+        assertEquals("{**/,}{a,**/b}", NestedArchives.toGlob("**/{a,**/b}"));
+        assertEquals("a\\{{**/,}b", NestedArchives.toGlob("a\\{**/b"));
+    }
+
+    @Test
+    public void testNoNestedArchivesByDefault() throws Exception {
+        File archiveDirectory = new File(projectDir, "archives");
+        archiveDirectory.mkdir();
+        File war = new File(archiveDirectory, "webapp.war");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war))) {
+            putEntry(out, "WEB-INF/lib/nested.jar", createJar("entry.txt"), ZipEntry.DEFLATED);
+        }
+        configuration.put("archiveDirectory", archiveDirectory.getPath());
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        assertEquals(Collections.singletonList("webapp.war"), signedArchives);
+    }
+
+    private static List<String> nestedEntries(ZipFile zipFile, String entryName) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream in = new ZipInputStream(zipFile.getInputStream(zipFile.getEntry(entryName)))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+
+    private static byte[] createJar(String entryName) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            putEntry(out, entryName, "content".getBytes(), ZipEntry.DEFLATED);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, byte[] content, int method) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    /** Adds an empty entry last in an archive */
+    private static void addEntry(File archive, String entryName) throws IOException {
+        File temp = new File(archive.getPath() + ".tmp");
+        try (ZipFile zipFile = new ZipFile(archive);
+                ZipOutputStream out = new ZipOutputStream(new FileOutputStream(temp))) {
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                byte[] content = TestArtifacts.readAllBytes(zipFile.getInputStream(entry));
+                putEntry(out, entry.getName(), content, entry.getMethod());
+            }
+            putEntry(out, entryName, new byte[0], ZipEntry.DEFLATED);
+        }
+        assertTrue(archive.delete());
+        assertTrue(temp.renameTo(archive));
+    }
+}
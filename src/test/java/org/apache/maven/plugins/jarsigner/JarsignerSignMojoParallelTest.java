@@ -20,22 +20,33 @@ package org.apache.maven.plugins.jarsigner;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.jarsigner.JarSigner;
 import org.apache.maven.shared.jarsigner.JarSignerSignRequest;
+import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -187,6 +198,41 @@ public class JarsignerSignMojoParallelTest {
         assertThat(mojoException.getMessage(), containsString(String.valueOf("Failed executing 'jarsigner ")));
     }
 
+    /** Many more archives than the submission window, which is refilled as archives are done */
+    @Test(timeout = 30000)
+    public void test100Files3Parallel() throws Exception {
+        configuration.put("archiveDirectory", createArchives(100).getPath());
+        configuration.put("threadCount", "3");
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger submitted = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        AtomicInteger maxUnfinished = new AtomicInteger();
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).then(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(5); // Blocks long enough for more requests to be submitted, if the window allows it
+            running.decrementAndGet();
+            finished.incrementAndGet();
+            return RESULT_OK;
+        });
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+        mojo.setExecutorFactory(threads ->
+                new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()) {
+                    @Override
+                    public void execute(Runnable command) {
+                        maxUnfinished.accumulateAndGet(submitted.incrementAndGet() - finished.get(), Math::max);
+                        super.execute(command);
+                    }
+                });
+
+        mojo.execute();
+
+        verify(jarSigner, times(100)).execute(any());
+        assertEquals(100, submitted.get());
+        assertTrue(maxRunning.get() <= 3);
+        assertTrue("Unfinished requests: " + maxUnfinished.get(), maxUnfinished.get() <= 2 * 3);
+    }
+
     @Test
     public void testInvalidThreadCount() throws Exception {
         Artifact mainArtifact = TestArtifacts.createJarArtifact(projectDir, "my-project.jar");
@@ -203,6 +249,78 @@ public class JarsignerSignMojoParallelTest {
         verify(log).warn(contains("Was '0'"));
     }
 
+    @Test(timeout = 30000)
+    public void testHedgedAttemptWithOtherTsa() throws Exception {
+        File archiveDirectory = createArchives(6);
+        configuration.put("archiveDirectory", archiveDirectory.getPath());
+        configuration.put("threadCount", "1");
+        configuration.put("tsa", "http://slow.example.com,http://fast.example.com");
+        configuration.put("hedgePercentile", "50");
+
+        // The first five archives build up the latency statistics, the first attempt for the sixth hangs
+        List<JarSignerSignRequest> requests = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).then(invocation -> {
+            JarSignerSignRequest request = (JarSignerSignRequest) invocation.getArguments()[0];
+            requests.add(request);
+            if (requests.size() == 6) {
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return RESULT_ERROR;
+            }
+            if (request.getSignedjar() != null) {
+                Files.write(request.getSignedjar().toPath(), "signed".getBytes(StandardCharsets.UTF_8));
+            }
+            return RESULT_OK;
+        });
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        assertEquals(7, requests.size());
+        JarSignerSignRequest hedged = requests.get(6);
+        assertEquals("http://fast.example.com", hedged.getTsaLocation());
+        assertEquals(requests.get(5).getArchive(), hedged.getArchive());
+        assertEquals("signed", new String(Files.readAllBytes(hedged.getArchive().toPath()), StandardCharsets.UTF_8));
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS)); // The hanging attempt was cancelled
+        assertEquals(6, archiveDirectory.list().length); // No temporary files left
+        verify(log).info(contains("starting a hedged attempt"));
+    }
+
+    @Test(timeout = 30000)
+    public void testAttemptTimeoutStartsWithinSessionForkLimit() throws Exception {
+        MavenSession session = mock(MavenSession.class);
+        when(session.getRepositorySession()).thenReturn(new DefaultRepositorySystemSession());
+        mojoTestCreator.setSession(session);
+        configuration.put("archiveDirectory", createArchives(2).getPath());
+        configuration.put("threadCount", "2");
+        configuration.put("sessionForkLimit", "1");
+        configuration.put("attemptTimeoutSeconds", "1");
+        configuration.put("maxTries", "1");
+
+        // Each attempt takes most of the timeout, so waiting for the other attempt to finish must not count
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).then(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(600);
+            } finally {
+                running.decrementAndGet();
+            }
+            return RESULT_OK;
+        });
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        verify(jarSigner, times(2)).execute(any());
+        assertEquals(1, maxRunning.get());
+    }
+
     private File createArchives(int numberOfArchives) throws IOException {
         File archiveDirectory = new File(projectDir, "my_archive_dir");
         archiveDirectory.mkdir();
@@ -19,10 +19,19 @@
 package org.apache.maven.plugins.jarsigner;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.maven.artifact.Artifact;
@@ -33,6 +42,7 @@ import org.apache.maven.plugins.jarsigner.JarsignerSignMojo.WaitStrategy;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.jarsigner.JarSigner;
 import org.apache.maven.shared.jarsigner.JarSignerSignRequest;
+import org.apache.maven.shared.utils.cli.CommandLineException;
 import org.apache.maven.shared.utils.cli.javatool.JavaToolResult;
 import org.junit.After;
 import org.junit.Before;
@@ -47,8 +57,12 @@ import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.Mockito.argThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.atMost;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -96,7 +110,7 @@ public class JarsignerSignMojoRetryTest {
 
         verify(jarSigner)
                 .execute(argThat(request -> request.getArchive().getPath().endsWith("my-project.jar")));
-        verify(waitStrategy, times(0)).waitAfterFailure(0, Duration.ofSeconds(0));
+        verify(waitStrategy, times(0)).waitAfterFailure(0, Duration.ofSeconds(0), 0);
     }
 
     @Test
@@ -109,7 +123,26 @@ public class JarsignerSignMojoRetryTest {
             mojo.execute();
         });
         verify(jarSigner, times(1)).execute(any());
-        verify(waitStrategy, times(0)).waitAfterFailure(0, Duration.ofSeconds(0));
+        verify(waitStrategy, times(0)).waitAfterFailure(0, Duration.ofSeconds(0), 0);
+    }
+
+    @Test
+    public void testMetricsFile() throws Exception {
+        when(jarSigner.execute(any(JarSignerSignRequest.class)))
+                .thenReturn(RESULT_ERROR)
+                .thenReturn(RESULT_OK);
+        File metricsFile = new File(projectDir, "target/jarsigner.prom");
+        configuration.put("maxTries", "2");
+        configuration.put("metricsFile", metricsFile.getPath());
+        mojoTestCreator.setWaitStrategy(waitStrategy);
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        String metrics = new String(Files.readAllBytes(metricsFile.toPath()), StandardCharsets.UTF_8);
+        assertThat(metrics, containsString("\nmaven_jarsigner_archives_processed_total 1\n"));
+        assertThat(metrics, containsString("\nmaven_jarsigner_retries_total 1\n"));
+        assertThat(metrics, containsString("\nmaven_jarsigner_thread_utilization_ratio{pool=\"sign\"} "));
     }
 
     @Test
@@ -124,7 +157,7 @@ public class JarsignerSignMojoRetryTest {
         mojo.execute();
 
         verify(jarSigner, times(2)).execute(any());
-        verify(waitStrategy, times(1)).waitAfterFailure(0, Duration.ofSeconds(0));
+        verify(waitStrategy, times(1)).waitAfterFailure(0, Duration.ofSeconds(0), 0);
     }
 
     @Test
@@ -139,7 +172,58 @@ public class JarsignerSignMojoRetryTest {
             mojo.execute();
         });
         verify(jarSigner, times(2)).execute(any());
-        verify(waitStrategy, times(1)).waitAfterFailure(0, Duration.ofSeconds(0));
+        verify(waitStrategy, times(1)).waitAfterFailure(0, Duration.ofSeconds(0), 0);
+    }
+
+    @Test(timeout = 30000)
+    public void testAttemptTimeoutRetriedWithNextTsa() throws Exception {
+        List<String> tsaUrls = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(jarSigner.execute(any(JarSignerSignRequest.class)))
+                .then(invocation -> {
+                    tsaUrls.add(((JarSignerSignRequest) invocation.getArguments()[0]).getTsaLocation());
+                    try {
+                        new CountDownLatch(1).await(); // Hangs until the attempt is aborted
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    Thread.sleep(200); // Like destroying the jarsigner process, the retry must wait for it
+                    tsaUrls.add("aborted");
+                    return RESULT_ERROR;
+                })
+                .then(invocation -> {
+                    tsaUrls.add(((JarSignerSignRequest) invocation.getArguments()[0]).getTsaLocation());
+                    return RESULT_OK;
+                });
+        configuration.put("maxTries", "2");
+        configuration.put("attemptTimeoutSeconds", "1");
+        configuration.put("tsa", "http://hanging.example.com,http://working.example.com");
+        mojoTestCreator.setWaitStrategy(waitStrategy);
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        assertEquals(Arrays.asList("http://hanging.example.com", "aborted", "http://working.example.com"), tsaUrls);
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        verify(log).warn(contains("did not finish within 1 seconds"));
+        verify(waitStrategy, times(1)).waitAfterFailure(0, Duration.ofSeconds(0), 0);
+    }
+
+    @Test
+    public void testExecutionExceptionIsFailure() throws Exception {
+        JavaToolResult resultWithException = new JavaToolResult();
+        resultWithException.setExecutionException(new CommandLineException("Process could not be started"));
+        when(jarSigner.execute(any(JarSignerSignRequest.class))).thenReturn(resultWithException);
+        configuration.put("maxTries", "2");
+        mojoTestCreator.setWaitStrategy(waitStrategy);
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        MojoExecutionException mojoException = assertThrows(MojoExecutionException.class, () -> {
+            mojo.execute();
+        });
+
+        assertThat(mojoException.getMessage(), containsString("Process could not be started"));
+        verify(jarSigner, times(2)).execute(any());
     }
 
     @Test
@@ -190,8 +274,8 @@ public class JarsignerSignMojoRetryTest {
 
         mojo.execute();
 
-        verify(waitStrategy, times(1)).waitAfterFailure(0, Duration.ofSeconds(30));
-        verify(waitStrategy, times(1)).waitAfterFailure(1, Duration.ofSeconds(30));
+        verify(waitStrategy, times(1)).waitAfterFailure(0, Duration.ofSeconds(30), 0);
+        verify(waitStrategy, times(1)).waitAfterFailure(1, Duration.ofSeconds(30), 0);
     }
 
     @Test
@@ -207,7 +291,7 @@ public class JarsignerSignMojoRetryTest {
 
         mojo.execute();
 
-        verify(waitStrategy).waitAfterFailure(0, Duration.ofSeconds(0));
+        verify(waitStrategy).waitAfterFailure(0, Duration.ofSeconds(0), 0);
         verify(jarSigner, times(2)).execute(any());
         verify(log).warn(contains("Invalid maxRetryDelaySeconds"));
         verify(log).warn(contains("-5"));
@@ -264,6 +348,61 @@ public class JarsignerSignMojoRetryTest {
         assertThat(mojoException.getMessage(), containsString("interrupted while waiting after failure"));
     }
 
+    @Test
+    public void testWaitStrategyWithJitter() throws Exception {
+        configuration.put("retryJitter", "true");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+        AtomicLong sleepValue = new AtomicLong();
+        Sleeper sleeper = value -> sleepValue.set(value);
+
+        long previous = mojo.waitAfterFailure(0, Duration.ofSeconds(100), 0, sleeper);
+        assertEquals(previous, sleepValue.get());
+        // The first delay is random as well, between the base delay and three times the base delay
+        assertTrue("first delay " + previous, previous >= 1000 && previous <= 3000);
+
+        for (int attempt = 1; attempt < 20; attempt++) {
+            long delay = mojo.waitAfterFailure(attempt, Duration.ofSeconds(100), previous, sleeper);
+            assertEquals(delay, sleepValue.get());
+            assertTrue(delay >= 1000);
+            assertTrue(delay <= Math.min(100_000, previous * 3));
+            previous = delay;
+        }
+
+        // A new archive starts over
+        long delay = mojo.waitAfterFailure(0, Duration.ofSeconds(100), 0, sleeper);
+        assertTrue("first delay " + delay, delay >= 1000 && delay <= 3000);
+    }
+
+    @Test
+    public void testRetryBudgetExhausted() throws Exception {
+        when(jarSigner.execute(any(JarSignerSignRequest.class))).thenReturn(RESULT_ERROR);
+        configuration.put("processMainArtifact", "false");
+        configuration.put("archiveDirectory", createArchives(10).getPath());
+        configuration.put("maxTries", "3");
+        configuration.put("threadCount", "10");
+        configuration.put("retryBudgetPercent", "20");
+        mojoTestCreator.setWaitStrategy(waitStrategy);
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        assertThrows(MojoExecutionException.class, () -> {
+            mojo.execute();
+        });
+
+        // At most 10 first attempts and the budget of 2 retries, instead of 30 executions
+        verify(jarSigner, atMost(12)).execute(any());
+        verify(waitStrategy, atMost(2)).waitAfterFailure(anyInt(), any(), anyLong());
+        verify(log, atLeastOnce()).warn(contains("retry budget of 20% is used up"));
+    }
+
+    private File createArchives(int numberOfArchives) throws IOException {
+        File archiveDirectory = new File(projectDir, "my_archive_dir");
+        archiveDirectory.mkdir();
+        for (int i = 0; i < numberOfArchives; i++) {
+            TestArtifacts.createDummyZipFile(new File(archiveDirectory, "archive" + i + ".jar"));
+        }
+        return archiveDirectory;
+    }
+
     /** Check that the error returned from a re-try scenario where all execution fails is the "correct" error */
     @Test
     public void testLastErrorReturned() throws Exception {
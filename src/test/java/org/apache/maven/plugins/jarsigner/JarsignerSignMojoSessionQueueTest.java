@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.jarsigner.JarSigner;
+import org.apache.maven.shared.jarsigner.JarSignerRequest;
+import org.apache.maven.shared.jarsigner.JarSignerSignRequest;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.apache.maven.plugins.jarsigner.TestJavaToolResults.RESULT_ERROR;
+import static org.apache.maven.plugins.jarsigner.TestJavaToolResults.RESULT_OK;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.*;
+
+public class JarsignerSignMojoSessionQueueTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MavenProject project = mock(MavenProject.class);
+    private JarSigner jarSigner = mock(JarSigner.class);
+    private MavenSession session = mock(MavenSession.class);
+    private Log log = mock(Log.class);
+    private File projectDir;
+    private MojoTestCreator<JarsignerSignMojo> mojoTestCreator;
+
+    @Before
+    public void setUp() throws Exception {
+        projectDir = folder.newFolder("dummy-project");
+        when(session.getRepositorySession()).thenReturn(new DefaultRepositorySystemSession());
+        mojoTestCreator =
+                new MojoTestCreator<JarsignerSignMojo>(JarsignerSignMojo.class, project, projectDir, jarSigner);
+        mojoTestCreator.setLog(log);
+        mojoTestCreator.setSession(session);
+    }
+
+    @Test(timeout = 30000)
+    public void testDeferredModuleAwaitedByLastModule() throws Exception {
+        // Block signing of all archives until released
+        Semaphore semaphore = new Semaphore(0);
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).then(invocation -> {
+            semaphore.acquire();
+            return RESULT_OK;
+        });
+
+        JarsignerSignMojo firstModule = mojoTestCreator.configure(moduleConfiguration("module1", 3, false));
+        JarsignerSignMojo lastModule = mojoTestCreator.configure(moduleConfiguration("module2", 2, true));
+
+        firstModule.execute(); // Must return even though no archive can be signed yet
+
+        semaphore.release(5);
+        lastModule.execute(); // Barrier, waits for the archives of both modules
+
+        verify(jarSigner, times(5)).execute(any());
+        verify(jarSigner, times(3))
+                .execute(argThat(request ->
+                        request.getArchive().getParentFile().getName().equals("module1")));
+    }
+
+    /** Deferred batches whose archives are all signed are dropped, their number does not grow with the modules */
+    @Test(timeout = 30000)
+    public void testSucceededDeferredBatchesDropped() throws Exception {
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).thenReturn(RESULT_OK);
+
+        for (int i = 0; i < 5; i++) {
+            mojoTestCreator
+                    .configure(moduleConfiguration("module" + i, 2, false))
+                    .execute();
+        }
+
+        SessionSigningQueue queue =
+                (SessionSigningQueue) session.getRepositorySession().getData().get(SessionSigningQueue.class);
+        while (queue.getDeferredBatchCount() > 0) {
+            Thread.sleep(10); // Until the archives are signed in the background
+        }
+        verify(jarSigner, times(10)).execute(any());
+    }
+
+    @Test(timeout = 30000)
+    public void testFailureInDeferredModuleReportedByBarrier() throws Exception {
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).then(invocation -> {
+            JarSignerSignRequest request = (JarSignerSignRequest) invocation.getArguments()[0];
+            return request.getArchive().getName().equals("archive1.jar") ? RESULT_ERROR : RESULT_OK;
+        });
+
+        JarsignerSignMojo firstModule = mojoTestCreator.configure(moduleConfiguration("module1", 2, false));
+        firstModule.execute();
+
+        Map<String, String> barrierConfiguration = new LinkedHashMap<>();
+        barrierConfiguration.put("processMainArtifact", "false");
+        barrierConfiguration.put("sessionQueue", "true");
+        JarsignerSignMojo barrier = mojoTestCreator.configure(barrierConfiguration);
+
+        MojoExecutionException mojoException = assertThrows(MojoExecutionException.class, () -> {
+            barrier.execute();
+        });
+        assertThat(mojoException.getMessage(), containsString("Failed executing 'jarsigner "));
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentExecutionsAwaitOwnArchives() throws Exception {
+        // Block signing of the archives of module1 until released
+        Semaphore semaphore = new Semaphore(0);
+        CountDownLatch module1Started = new CountDownLatch(2);
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).then(invocation -> {
+            if (isOfModule(invocation.getArgument(0), "module1")) {
+                module1Started.countDown();
+                semaphore.acquire();
+            }
+            return RESULT_OK;
+        });
+
+        JarsignerSignMojo module1 = mojoTestCreator.configure(moduleConfiguration("module1", 2, true, 4));
+        JarsignerSignMojo module2 = mojoTestCreator.configure(moduleConfiguration("module2", 2, true, 4));
+        FutureTask<Void> module1Execution = new FutureTask<>(() -> {
+            module1.execute();
+            return null;
+        });
+        new Thread(module1Execution).start();
+        module1Started.await();
+
+        module2.execute(); // Must not wait for the archives of module1
+        assertFalse(module1Execution.isDone());
+
+        semaphore.release(2);
+        module1Execution.get();
+        verify(jarSigner, times(4)).execute(any());
+    }
+
+    @Test(timeout = 30000)
+    public void testFailureCancelsOnlyOwnArchives() throws Exception {
+        // Block signing of the archives of module2 until released, fail signing of module1
+        Semaphore semaphore = new Semaphore(0);
+        CountDownLatch module2Started = new CountDownLatch(2);
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).then(invocation -> {
+            if (isOfModule(invocation.getArgument(0), "module1")) {
+                return RESULT_ERROR;
+            }
+            module2Started.countDown();
+            semaphore.acquire();
+            return RESULT_OK;
+        });
+
+        JarsignerSignMojo module1 = mojoTestCreator.configure(moduleConfiguration("module1", 1, true, 4));
+        JarsignerSignMojo module2 = mojoTestCreator.configure(moduleConfiguration("module2", 2, true, 4));
+        FutureTask<Void> module2Execution = new FutureTask<>(() -> {
+            module2.execute();
+            return null;
+        });
+        new Thread(module2Execution).start();
+        module2Started.await();
+
+        assertThrows(MojoExecutionException.class, module1::execute);
+
+        semaphore.release(2);
+        module2Execution.get(); // Succeeds, its archives were not cancelled
+        verify(jarSigner, times(2)).execute(argThat(request -> isOfModule(request, "module2")));
+    }
+
+    @Test(timeout = 30000)
+    public void testArchivesSubmittedInWindow() throws Exception {
+        AtomicInteger maxQueued = new AtomicInteger();
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).then(invocation -> {
+            SessionSigningQueue queue = (SessionSigningQueue)
+                    session.getRepositorySession().getData().get(SessionSigningQueue.class);
+            maxQueued.accumulateAndGet(queue.getQueuedTaskCount(), Math::max);
+            return RESULT_OK;
+        });
+
+        mojoTestCreator.configure(moduleConfiguration("module1", 20, true, 2)).execute();
+
+        verify(jarSigner, times(20)).execute(any());
+        // Window of twice the number of threads, of which at least the calling one is running
+        assertTrue("queued " + maxQueued.get(), maxQueued.get() <= 3);
+    }
+
+    @Test
+    public void testDeferTimestampingNotAllowed() throws Exception {
+        Map<String, String> configuration = moduleConfiguration("module1", 1, true);
+        configuration.put("alias", "myalias");
+        configuration.put("tsa", "http://url1.com");
+        configuration.put("deferTimestamping", "true");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        MojoExecutionException mojoException = assertThrows(MojoExecutionException.class, mojo::execute);
+        assertThat(mojoException.getMessage(), containsString("cannot be combined with deferTimestamping"));
+        verify(jarSigner, never()).execute(any());
+    }
+
+    @Test(timeout = 30000)
+    public void testQueueAndTsaSelectorSharedWithinSession() throws Exception {
+        when(jarSigner.execute(isA(JarSignerSignRequest.class))).thenReturn(RESULT_OK);
+        Map<String, String> configuration = moduleConfiguration("module1", 1, true);
+        configuration.put("threadCount", "3");
+        mojoTestCreator.configure(configuration).execute();
+        mojoTestCreator.configure(moduleConfiguration("module2", 1, true)).execute();
+
+        SessionSigningQueue queue =
+                (SessionSigningQueue) session.getRepositorySession().getData().get(SessionSigningQueue.class);
+        assertEquals(3, queue.getThreadCount());
+        verify(log).warn("Ignoring threadCount 1, the session queue already uses 3 thread(s)");
+
+        String[] tsa = {"http://url1.com", "http://url2.com"};
+        String[] empty = {};
+        TsaSelector tsaSelector = queue.getTsaSelector(tsa, empty, empty, null);
+        assertSame(tsaSelector, queue.getTsaSelector(tsa.clone(), empty, empty, null));
+        assertNotSame(tsaSelector, queue.getTsaSelector(tsa, empty, empty, "SHA-512"));
+        verify(jarSigner, timeout(Duration.ofSeconds(10).toMillis()).times(2)).execute(any());
+    }
+
+    private static boolean isOfModule(JarSignerRequest request, String moduleName) {
+        return request.getArchive().getParentFile().getName().equals(moduleName);
+    }
+
+    private Map<String, String> moduleConfiguration(
+            String moduleName, int numberOfArchives, boolean await, int threadCount) throws IOException {
+        Map<String, String> configuration = moduleConfiguration(moduleName, numberOfArchives, await);
+        configuration.put("threadCount", String.valueOf(threadCount));
+        return configuration;
+    }
+
+    private Map<String, String> moduleConfiguration(String moduleName, int numberOfArchives, boolean await)
+            throws IOException {
+        Map<String, String> configuration = new LinkedHashMap<>();
+        configuration.put("processMainArtifact", "false");
+        configuration.put(
+                "archiveDirectory", createArchives(moduleName, numberOfArchives).getPath());
+        configuration.put("sessionQueue", "true");
+        configuration.put("awaitSessionQueue", String.valueOf(await));
+        return configuration;
+    }
+
+    private File createArchives(String moduleName, int numberOfArchives) throws IOException {
+        File archiveDirectory = new File(projectDir, moduleName);
+        archiveDirectory.mkdir();
+        for (int i = 0; i < numberOfArchives; i++) {
+            TestArtifacts.createDummyZipFile(new File(archiveDirectory, "archive" + i + ".jar"));
+        }
+        return archiveDirectory;
+    }
+}
@@ -19,11 +19,21 @@
 package org.apache.maven.plugins.jarsigner;
 
 import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipFile;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -397,6 +407,241 @@ public class JarsignerSignMojoTest {
         verify(jarSigner).execute(MockitoHamcrest.argThat(RequestMatchers.hasStorepass("mystorepass")));
     }
 
+    /** Make sure passwords are only decrypted once, not for every archive */
+    @Test
+    public void testPasswordsDecryptedOnce() throws Exception {
+        Artifact mainArtifact = TestArtifacts.createJarArtifact(projectDir, "my-project.jar");
+        when(project.getArtifact()).thenReturn(mainArtifact);
+        when(project.getAttachedArtifacts())
+                .thenReturn(Arrays.asList(
+                        TestArtifacts.createJarArtifact(projectDir, "my-project-sources.jar", "sources"),
+                        TestArtifacts.createJarArtifact(projectDir, "my-project-javadoc.jar", "javadoc")));
+        when(jarSigner.execute(any(JarSignerSignRequest.class))).thenReturn(RESULT_OK);
+
+        configuration.put("keypass", "mykeypass_encrypted");
+        configuration.put("storepass", "mystorepass_encrypted");
+
+        AtomicInteger decryptions = new AtomicInteger();
+        mojoTestCreator.setSecDispatcher(str -> {
+            decryptions.incrementAndGet();
+            return str.replace("_encrypted", "");
+        });
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        verify(jarSigner, times(3)).execute(MockitoHamcrest.argThat(RequestMatchers.hasKeypass("mykeypass")));
+        assertEquals(2, decryptions.get()); // keypass and storepass
+    }
+
+    /** Checksum files are written next to the signed archive, one for each configured algorithm */
+    @Test
+    public void testChecksumFiles() throws Exception {
+        Artifact mainArtifact = TestArtifacts.createJarArtifact(projectDir, "my-project.jar");
+        when(project.getArtifact()).thenReturn(mainArtifact);
+        when(jarSigner.execute(any(JarSignerSignRequest.class))).thenReturn(RESULT_OK);
+        configuration.put("checksumAlgorithms", "SHA-256,SHA-512");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        byte[] content = Files.readAllBytes(mainArtifact.getFile().toPath());
+        File sha256 = new File(projectDir, "my-project.jar.sha256");
+        File sha512 = new File(projectDir, "my-project.jar.sha512");
+        assertEquals(
+                FileDigests.toHex(MessageDigest.getInstance("SHA-256").digest(content)),
+                new String(Files.readAllBytes(sha256.toPath()), StandardCharsets.US_ASCII));
+        assertEquals(
+                FileDigests.toHex(MessageDigest.getInstance("SHA-512").digest(content)),
+                new String(Files.readAllBytes(sha512.toPath()), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testInvalidChecksumAlgorithm() throws Exception {
+        configuration.put("checksumAlgorithms", "SHA-999");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        MojoExecutionException mojoException = assertThrows(MojoExecutionException.class, mojo::execute);
+        assertThat(mojoException.getMessage(), containsString("SHA-999"));
+    }
+
+    /** With -signedjar the archive is not signed, so there is nothing to compute checksums of */
+    @Test
+    public void testChecksumFilesWithSignedjar() throws Exception {
+        configuration.put("checksumAlgorithms", "SHA-256");
+        configuration.put("arguments", "-signedjar,my-project_signed.jar");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        MojoExecutionException mojoException = assertThrows(MojoExecutionException.class, mojo::execute);
+        assertThat(mojoException.getMessage(), containsString("checksumAlgorithms"));
+        verify(jarSigner, times(0)).execute(any()); // Should not try to sign anything
+    }
+
+    /** Only the signature files are removed, the digests in the manifest are kept for jarsigner to check */
+    @Test
+    public void testKeepManifestDigests() throws Exception {
+        File signedJar = TestArtifacts.createSignedJarFile(
+                new File(projectDir, "my-project.jar"), new File(folder.getRoot(), "keystore.p12"));
+        when(project.getArtifact()).thenReturn(TestArtifacts.createArtifact(signedJar));
+        when(jarSigner.execute(any(JarSignerSignRequest.class))).thenReturn(RESULT_OK);
+        configuration.put("removeExistingSignatures", "true");
+        configuration.put("keepManifestDigests", "true");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        assertFalse(JarSignerUtil.isArchiveSigned(signedJar));
+        try (ZipFile zipFile = new ZipFile(signedJar)) {
+            assertNotNull(zipFile.getEntry("dummy-entry.txt"));
+            String manifest = new String(
+                    TestArtifacts.readAllBytes(zipFile.getInputStream(zipFile.getEntry("META-INF/MANIFEST.MF"))),
+                    StandardCharsets.UTF_8);
+            assertThat(manifest, containsString("Name: dummy-entry.txt"));
+            assertThat(manifest, containsString("-Digest: "));
+        }
+    }
+
+    /** An archive without signature files is not rewritten when keeping the manifest digests */
+    @Test
+    public void testKeepManifestDigestsUnsignedArchive() throws Exception {
+        Artifact mainArtifact = TestArtifacts.createJarArtifact(projectDir, "my-project.jar");
+        when(project.getArtifact()).thenReturn(mainArtifact);
+        when(jarSigner.execute(any(JarSignerSignRequest.class))).thenReturn(RESULT_OK);
+        mainArtifact.getFile().setLastModified(1_000_000_000_000L);
+        configuration.put("removeExistingSignatures", "true");
+        configuration.put("keepManifestDigests", "true");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        assertEquals(1_000_000_000_000L, mainArtifact.getFile().lastModified());
+    }
+
+    /** The manifest and signature files get the output timestamp, as local time of UTC like Maven archivers do */
+    @Test
+    public void testOutputTimestamp() throws Exception {
+        File signedJar = TestArtifacts.createSignedJarFile(
+                new File(projectDir, "my-project.jar"), new File(folder.getRoot(), "keystore.p12"));
+        when(project.getArtifact()).thenReturn(TestArtifacts.createArtifact(signedJar));
+        when(jarSigner.execute(any(JarSignerSignRequest.class))).thenReturn(RESULT_OK);
+        configuration.put("outputTimestamp", "2020-01-01T12:00:00+02:00");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        mojo.execute();
+
+        LocalDateTime expected = LocalDateTime.of(2020, 1, 1, 10, 0);
+        try (ZipFile zipFile = new ZipFile(signedJar)) {
+            for (String name : Arrays.asList("META-INF/MANIFEST.MF", "META-INF/TEST.SF", "META-INF/TEST.RSA")) {
+                long time = zipFile.getEntry(name).getTime();
+                assertEquals(
+                        name, expected, LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()));
+            }
+            assertNotEquals(
+                    expected,
+                    LocalDateTime.ofInstant(
+                            Instant.ofEpochMilli(
+                                    zipFile.getEntry("dummy-entry.txt").getTime()),
+                            ZoneId.systemDefault()));
+        }
+        assertTrue(SignatureCheck.verify(signedJar));
+    }
+
+    /** The archive is only rewritten if outputTimestamp is set and the times differ, at the precision of archives */
+    @Test
+    public void testOutputTimestampRewritesOnlyIfChanged() throws Exception {
+        File signedJar = TestArtifacts.createSignedJarFile(
+                new File(projectDir, "my-project.jar"), new File(folder.getRoot(), "keystore.p12"));
+        when(project.getArtifact()).thenReturn(TestArtifacts.createArtifact(signedJar));
+        when(jarSigner.execute(any(JarSignerSignRequest.class))).thenReturn(RESULT_OK);
+        long lastModified = signedJar.lastModified() - 60_000;
+        signedJar.setLastModified(lastModified);
+
+        mojoTestCreator.configure(configuration).execute();
+        assertEquals("Not rewritten by default", lastModified, signedJar.lastModified());
+
+        configuration.put("outputTimestamp", "2020-01-01T12:00:01+02:00"); // Odd seconds are not stored
+        mojoTestCreator.configure(configuration).execute();
+        assertNotEquals(lastModified, signedJar.lastModified());
+
+        signedJar.setLastModified(lastModified);
+        mojoTestCreator.configure(configuration).execute();
+        assertEquals("Not rewritten again", lastModified, signedJar.lastModified());
+    }
+
+    @Test
+    public void testOutputTimestampWithSignedjar() throws Exception {
+        configuration.put("outputTimestamp", "1700000000");
+        configuration.put("arguments", "-signedjar,my-project_signed.jar");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        MojoExecutionException mojoException = assertThrows(MojoExecutionException.class, mojo::execute);
+        assertThat(mojoException.getMessage(), containsString("outputTimestamp"));
+    }
+
+    @Test
+    public void testInvalidOutputTimestamp() throws Exception {
+        configuration.put("outputTimestamp", "yesterday");
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+        MojoExecutionException mojoException = assertThrows(MojoExecutionException.class, mojo::execute);
+        assertThat(mojoException.getMessage(), containsString("yesterday"));
+    }
+
+    /** Each archive is signed by each of the signers, one after the other */
+    @Test
+    public void testSigners() throws Exception {
+        Artifact mainArtifact = TestArtifacts.createJarArtifact(projectDir, "my-project.jar");
+        when(project.getArtifact()).thenReturn(mainArtifact);
+        List<String> executions = new ArrayList<>();
+        when(jarSigner.execute(any(JarSignerSignRequest.class))).thenAnswer(invocation -> {
+            JarSignerSignRequest request = invocation.getArgument(0);
+            // The request is reused for the signers, so record what it was at each execution
+            executions.add(request.getAlias() + "," + request.getKeypass() + "," + request.getSigfile() + ","
+                    + request.getTsaLocation() + "," + request.getTsadigestalg());
+            return RESULT_OK;
+        });
+        configuration.put("keypass", "mykeypass_encrypted");
+        configuration.put("tsa", "http://mojo-tsa");
+        configuration.put("tsadigestalg", "SHA-512");
+        mojoTestCreator.setSecDispatcher(str -> str != null ? str.replace("_encrypted", "") : null);
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+        setSigners(
+                mojo,
+                createSigner("legacy", null, null, null),
+                createSigner("new", "ec_encrypted", "NEWSIG", "http://signer-tsa"));
+
+        mojo.execute();
+
+        assertEquals(
+                Arrays.asList("legacy,mykeypass,null,http://mojo-tsa,SHA-512", "new,ec,NEWSIG,http://signer-tsa,null"),
+                executions);
+    }
+
+    @Test
+    public void testSignerWithoutAlias() throws Exception {
+        JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+        setSigners(mojo, createSigner(null, null, null, null));
+
+        MojoExecutionException mojoException = assertThrows(MojoExecutionException.class, mojo::execute);
+        assertThat(mojoException.getMessage(), containsString("alias"));
+    }
+
+    private static Signer createSigner(String alias, String keypass, String sigfile, String tsa) {
+        Signer signer = new Signer();
+        signer.setAlias(alias);
+        signer.setKeypass(keypass);
+        signer.setSigfile(sigfile);
+        signer.setTsa(tsa);
+        return signer;
+    }
+
+    /** Sets the signers parameter, not supported by the MojoTestCreator since it is not a simple type */
+    private static void setSigners(JarsignerSignMojo mojo, Signer... signers) throws Exception {
+        Field field = JarsignerSignMojo.class.getDeclaredField("signers");
+        field.setAccessible(true);
+        field.set(mojo, signers);
+    }
+
     /** Make sure that a customer file encoding to jarsigner can be set and that it does not get duplicated */
     @Test
     public void testSetCustomFileEncoding() throws Exception {
@@ -19,18 +19,29 @@
 package org.apache.maven.plugins.jarsigner;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.jarsigner.JarSigner;
 import org.apache.maven.shared.jarsigner.JarSignerSignRequest;
+import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -185,6 +196,118 @@ public class JarsignerSignMojoTsaTest {
         verify(log).warn(contains("2 TSA URLs specified. Only first will be used because maxTries is set to 1"));
     }
 
+    @Test
+    public void testTsaProbe() throws Exception {
+        try (TestTsaServer tsaServer = new TestTsaServer()) {
+            when(jarSigner.execute(any(JarSignerSignRequest.class))).thenReturn(RESULT_OK);
+            // Nothing listens to port 1 on localhost, so the first server is not reachable
+            configuration.put("tsa", "http://127.0.0.1:1/tsa," + tsaServer.getUrl());
+            configuration.put("tsaProbe", "true");
+            configuration.put("maxTries", "2");
+            JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+            mojo.execute();
+
+            ArgumentCaptor<JarSignerSignRequest> requestArgument = ArgumentCaptor.forClass(JarSignerSignRequest.class);
+            verify(jarSigner).execute(requestArgument.capture());
+            assertEquals(tsaServer.getUrl(), requestArgument.getValue().getTsaLocation());
+            assertEquals(1, tsaServer.getRequestCount());
+            verify(log).warn(contains("TSA server http://127.0.0.1:1/tsa probe failed"));
+            verify(log).info(contains("TSA server " + tsaServer.getUrl() + " responded"));
+        }
+    }
+
+    @Test
+    public void testDeferTimestamping() throws Exception {
+        try (TestTsaServer tsaServer = new TestTsaServer()) {
+            tsaServer.failNextRequests(1);
+            List<JarSignerSignRequest> requests = new ArrayList<>();
+            // "Sign" by replacing the archive with one only having a signature block
+            when(jarSigner.execute(any(JarSignerSignRequest.class))).then(invocation -> {
+                JarSignerSignRequest request = (JarSignerSignRequest) invocation.getArguments()[0];
+                requests.add(request);
+                try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(request.getArchive()))) {
+                    out.putNextEntry(new ZipEntry("META-INF/MYALIAS.RSA"));
+                    out.write(TestTsaServer.createSignatureBlock(new byte[] {1, 2, 3}));
+                }
+                return RESULT_OK;
+            });
+            configuration.put("alias", "myalias");
+            configuration.put("tsa", tsaServer.getUrl());
+            configuration.put("deferTimestamping", "true");
+            configuration.put("maxTries", "2");
+            JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+            mojo.execute();
+
+            // Signed without TSA, and then timestamped after one failed timestamp request
+            assertEquals(1, requests.size());
+            assertNull(requests.get(0).getTsaLocation());
+            assertEquals(2, tsaServer.getRequestCount());
+            verify(log).warn(contains("Failed to timestamp"));
+            try (ZipFile zipFile = new ZipFile(project.getArtifact().getFile())) {
+                byte[] signatureBlock =
+                        TestArtifacts.readAllBytes(zipFile.getInputStream(zipFile.getEntry("META-INF/MYALIAS.RSA")));
+                assertNotNull(TestTsaServer.getTimestampToken(signatureBlock));
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testDeferTimestampingWithinSessionForkLimit() throws Exception {
+        MavenSession session = mock(MavenSession.class);
+        when(session.getRepositorySession()).thenReturn(new DefaultRepositorySystemSession());
+        mojoTestCreator.setSession(session);
+        try (TestTsaServer tsaServer = new TestTsaServer()) {
+            // Once signed, another execution takes the only slot before the timestamping can
+            CountDownLatch otherStarted = new CountDownLatch(1);
+            CountDownLatch otherDone = new CountDownLatch(1);
+            when(jarSigner.execute(any(JarSignerSignRequest.class))).then(invocation -> {
+                JarSignerSignRequest request = (JarSignerSignRequest) invocation.getArguments()[0];
+                try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(request.getArchive()))) {
+                    out.putNextEntry(new ZipEntry("META-INF/MYALIAS.RSA"));
+                    out.write(TestTsaServer.createSignatureBlock(new byte[] {1, 2, 3}));
+                }
+                SessionForkLimiter limiter = SessionScoped.computeIfAbsent(session, SessionForkLimiter.class, null);
+                Thread other = new Thread(() -> {
+                    try (SessionForkLimiter.Permit permit = SessionForkLimiter.acquire(limiter.limit(jarSigner))) {
+                        otherStarted.countDown();
+                        otherDone.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                other.start();
+                while (other.getState() != Thread.State.WAITING) {
+                    Thread.sleep(10); // Queued for the slot, which is granted in order
+                }
+                return RESULT_OK;
+            });
+            configuration.put("alias", "myalias");
+            configuration.put("tsa", tsaServer.getUrl());
+            configuration.put("deferTimestamping", "true");
+            configuration.put("sessionForkLimit", "1");
+            JarsignerSignMojo mojo = mojoTestCreator.configure(configuration);
+
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<Void> future = executor.submit(() -> {
+                    mojo.execute();
+                    return null;
+                });
+                assertTrue(otherStarted.await(10, TimeUnit.SECONDS));
+                Thread.sleep(300);
+                assertEquals(0, tsaServer.getRequestCount());
+
+                otherDone.countDown();
+                future.get(10, TimeUnit.SECONDS);
+                assertEquals(1, tsaServer.getRequestCount());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
     @Test
     public void testVerifyMultipleTsacertButNoRetry() throws Exception {
         when(jarSigner.execute(any(JarSignerSignRequest.class))).thenReturn(RESULT_OK);
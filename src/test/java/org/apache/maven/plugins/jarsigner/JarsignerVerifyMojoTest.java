@@ -19,15 +19,22 @@
 package org.apache.maven.plugins.jarsigner;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.jarsigner.JarSigner;
 import org.apache.maven.shared.jarsigner.JarSignerVerifyRequest;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -44,6 +51,7 @@ import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -163,4 +171,174 @@ public class JarsignerVerifyMojoTest {
                 mojoException.getMessage(),
                 containsString(mainArtifact.getFile().getPath()));
     }
+
+    /** Archives verified successfully before are not verified again while unchanged */
+    @Test
+    public void testVerifyCache() throws Exception {
+        Artifact mainArtifact = TestArtifacts.createJarArtifact(dummyMavenProjectDir, "my-project.jar");
+        when(project.getArtifact()).thenReturn(mainArtifact);
+        when(jarSigner.execute(any(JarSignerVerifyRequest.class))).thenReturn(RESULT_OK);
+        configuration.put(
+                "verifyCacheDirectory", folder.newFolder("verify-cache").getPath());
+
+        mojoTestCreator.configure(configuration).execute();
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(1)).execute(any());
+
+        // Changed verification options
+        configuration.put("certs", "true");
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(2)).execute(any());
+
+        // Changed archive content
+        TestArtifacts.createDummySignedJarFile(mainArtifact.getFile());
+        mojoTestCreator.configure(configuration).execute();
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(3)).execute(any());
+    }
+
+    /** A keystore replaced at the same path invalidates earlier verifications */
+    @Test
+    public void testVerifyCacheKeystoreReplaced() throws Exception {
+        Artifact mainArtifact = TestArtifacts.createJarArtifact(dummyMavenProjectDir, "my-project.jar");
+        when(project.getArtifact()).thenReturn(mainArtifact);
+        when(jarSigner.execute(any(JarSignerVerifyRequest.class))).thenReturn(RESULT_OK);
+        File keystore = folder.newFile("truststore.p12");
+        Files.write(keystore.toPath(), new byte[] {1});
+        configuration.put("keystore", keystore.getPath());
+        configuration.put(
+                "verifyCacheDirectory", folder.newFolder("verify-cache").getPath());
+
+        mojoTestCreator.configure(configuration).execute();
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(1)).execute(any());
+
+        Files.write(keystore.toPath(), new byte[] {2});
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(2)).execute(any());
+    }
+
+    /** Failed verifications are not cached */
+    @Test
+    public void testVerifyCacheFailureNotCached() throws Exception {
+        Artifact mainArtifact = TestArtifacts.createJarArtifact(dummyMavenProjectDir, "my-project.jar");
+        when(project.getArtifact()).thenReturn(mainArtifact);
+        when(jarSigner.execute(any(JarSignerVerifyRequest.class))).thenReturn(RESULT_ERROR);
+        configuration.put(
+                "verifyCacheDirectory", folder.newFolder("verify-cache").getPath());
+
+        assertThrows(
+                MojoExecutionException.class,
+                () -> mojoTestCreator.configure(configuration).execute());
+        assertThrows(
+                MojoExecutionException.class,
+                () -> mojoTestCreator.configure(configuration).execute());
+        verify(jarSigner, times(2)).execute(any());
+    }
+
+    /** Only new or changed archives are verified again */
+    @Test
+    public void testIncrementalVerify() throws Exception {
+        Artifact mainArtifact = TestArtifacts.createJarArtifact(dummyMavenProjectDir, "my-project.jar");
+        File archive = mainArtifact.getFile();
+        when(project.getArtifact()).thenReturn(mainArtifact);
+        when(jarSigner.execute(any(JarSignerVerifyRequest.class))).thenReturn(RESULT_OK);
+        configuration.put("incrementalVerify", "true");
+
+        mojoTestCreator.configure(configuration).execute();
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(1)).execute(any());
+        assertTrue(new File(dummyMavenProjectDir, "target/jarsigner-verify.properties").isFile());
+
+        // Touched, but same content
+        archive.setLastModified(archive.lastModified() - 10_000);
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(1)).execute(any());
+
+        // Changed verification options
+        configuration.put("certs", "true");
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(2)).execute(any());
+
+        // Changed archive content
+        TestArtifacts.createDummySignedJarFile(archive);
+        mojoTestCreator.configure(configuration).execute();
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(3)).execute(any());
+    }
+
+    /** Archives signed earlier in the same session are checked without jarsigner while unchanged */
+    @Test
+    public void testSignedInSession() throws Exception {
+        File signedJar = TestArtifacts.createSignedJarFile(
+                new File(dummyMavenProjectDir, "my-project.jar"),
+                new File(folder.newFolder("keystore"), "keystore.p12"));
+        Artifact mainArtifact = TestArtifacts.createArtifact(signedJar);
+        when(project.getArtifact()).thenReturn(mainArtifact);
+        when(jarSigner.execute(any())).thenReturn(RESULT_OK);
+        PluginExecution verifyExecution = new PluginExecution();
+        verifyExecution.addGoal("verify");
+        Xpp3Dom verifyConfiguration = new Xpp3Dom("configuration");
+        Xpp3Dom reuseSessionSigning = new Xpp3Dom("reuseSessionSigning");
+        reuseSessionSigning.setValue("true");
+        verifyConfiguration.addChild(reuseSessionSigning);
+        verifyExecution.setConfiguration(verifyConfiguration);
+        Plugin plugin = new Plugin();
+        plugin.setArtifactId("maven-jarsigner-plugin");
+        plugin.addExecution(verifyExecution);
+        when(project.getBuildPlugins()).thenReturn(Collections.singletonList(plugin));
+        signInSession(createSession(project));
+
+        // Verified by jarsigner by default
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(1)).execute(any(JarSignerVerifyRequest.class));
+
+        configuration.put("reuseSessionSigning", "true");
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(1)).execute(any(JarSignerVerifyRequest.class));
+
+        // Verified by jarsigner when arguments are given, or when the archive has changed
+        configuration.put("arguments", "-strict");
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(2)).execute(any(JarSignerVerifyRequest.class));
+
+        configuration.remove("arguments");
+        assertTrue(signedJar.setLastModified(signedJar.lastModified() - 10000));
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(3)).execute(any(JarSignerVerifyRequest.class));
+    }
+
+    /** Signed archives are not recorded when no verification of the build reuses the signing */
+    @Test
+    public void testSignedInSessionNotRecorded() throws Exception {
+        File signedJar = TestArtifacts.createSignedJarFile(
+                new File(dummyMavenProjectDir, "my-project.jar"),
+                new File(folder.newFolder("keystore"), "keystore.p12"));
+        when(project.getArtifact()).thenReturn(TestArtifacts.createArtifact(signedJar));
+        when(jarSigner.execute(any())).thenReturn(RESULT_OK);
+        MavenSession session = createSession(project);
+        signInSession(session);
+
+        assertFalse(SessionSignedArchives.isReuseConfigured(session));
+        configuration.put("reuseSessionSigning", "true");
+        mojoTestCreator.configure(configuration).execute();
+        verify(jarSigner, times(1)).execute(any(JarSignerVerifyRequest.class));
+    }
+
+    private MavenSession createSession(MavenProject project) {
+        MavenSession session = mock(MavenSession.class);
+        when(session.getRepositorySession()).thenReturn(new DefaultRepositorySystemSession());
+        when(session.getProjects()).thenReturn(Collections.singletonList(project));
+        return session;
+    }
+
+    /** Executes the sign goal in the session, and this test's verify goal in the same session */
+    private void signInSession(MavenSession session) throws Exception {
+        MojoTestCreator<JarsignerSignMojo> signMojoTestCreator =
+                new MojoTestCreator<>(JarsignerSignMojo.class, project, dummyMavenProjectDir, jarSigner);
+        signMojoTestCreator.setLog(log);
+        signMojoTestCreator.setSession(session);
+        signMojoTestCreator.configure(new LinkedHashMap<>()).execute(); // Signing is simulated, the jar is signed
+        mojoTestCreator.setSession(session);
+    }
 }
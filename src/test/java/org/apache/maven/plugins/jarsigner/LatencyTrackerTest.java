@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyTrackerTest {
+    private LatencyTracker latencyTracker = new LatencyTracker();
+
+    @Test
+    public void testNoPercentileWithTooFewSamples() {
+        for (int i = 1; i < LatencyTracker.MIN_SAMPLES; i++) {
+            latencyTracker.record(Duration.ofSeconds(i));
+        }
+        assertNull(latencyTracker.getPercentile(50));
+    }
+
+    @Test
+    public void testPercentile() {
+        for (int i = 10; i >= 1; i--) {
+            latencyTracker.record(Duration.ofSeconds(i));
+        }
+        assertEquals(Duration.ofSeconds(5), latencyTracker.getPercentile(50));
+        assertEquals(Duration.ofSeconds(9), latencyTracker.getPercentile(90));
+        assertEquals(Duration.ofSeconds(10), latencyTracker.getPercentile(99));
+        assertEquals(Duration.ofSeconds(1), latencyTracker.getPercentile(1));
+    }
+
+    @Test
+    public void testOnlyMostRecentSamplesUsed() {
+        for (int i = 0; i < 100; i++) {
+            latencyTracker.record(Duration.ofSeconds(100));
+        }
+        for (int i = 0; i < 100; i++) {
+            latencyTracker.record(Duration.ofSeconds(1));
+        }
+        assertEquals(Duration.ofSeconds(1), latencyTracker.getPercentile(99));
+    }
+}
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.Mojo;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.jarsigner.JarsignerSignMojo.WaitStrategy;
@@ -53,6 +54,7 @@ public class MojoTestCreator<T extends AbstractJarsignerMojo> {
     private ToolchainManager toolchainManager;
     private SecDispatcher securityDispatcher;
     private WaitStrategy waitStrategy;
+    private MavenSession session;
     private Log log;
     private List<Field> fields;
 
@@ -79,6 +81,10 @@ public class MojoTestCreator<T extends AbstractJarsignerMojo> {
         this.waitStrategy = waitStrategy;
     }
 
+    public void setSession(MavenSession session) {
+        this.session = session;
+    }
+
     public void setLog(Log log) {
         this.log = log;
     }
@@ -97,6 +103,9 @@ public class MojoTestCreator<T extends AbstractJarsignerMojo> {
         if (toolchainManager != null) {
             setAttribute(mojo, "toolchainManager", toolchainManager);
         }
+        if (session != null) {
+            setAttribute(mojo, "session", session);
+        }
         if (waitStrategy != null) {
             ((JarsignerSignMojo) mojo).setWaitStrategy(waitStrategy);
         }
@@ -168,6 +177,9 @@ public class MojoTestCreator<T extends AbstractJarsignerMojo> {
     private String substituteParameterValueVariables(String parameterValue) {
         parameterValue = parameterValue.replaceAll(
                 Pattern.quote("${project.basedir}"), Matcher.quoteReplacement(projectDir.getPath()));
+        parameterValue = parameterValue.replaceAll(
+                Pattern.quote("${project.build.directory}"),
+                Matcher.quoteReplacement(new File(projectDir, "target").getPath()));
         return parameterValue;
     }
 
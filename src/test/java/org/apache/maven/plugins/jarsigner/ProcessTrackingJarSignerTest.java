@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.maven.shared.jarsigner.JarSignerRequest;
+import org.apache.maven.shared.jarsigner.JarSignerSignRequest;
+import org.apache.maven.shared.utils.cli.Commandline;
+import org.apache.maven.shared.utils.cli.javatool.JavaToolResult;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessTrackingJarSignerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Forked instead of jarsigner, runs until killed. Optionally ignores requests to terminate */
+    public static class Sleeper {
+        public static void main(String[] args) throws Exception {
+            File dir = new File(args[0]);
+            boolean ignoreTerminate = args.length > 1;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    new File(dir, "terminating").createNewFile();
+                    if (ignoreTerminate) {
+                        Thread.sleep(60000);
+                    }
+                } catch (Exception e) {
+                    // Just terminate
+                }
+            }));
+            new File(dir, "started").createNewFile();
+            Thread.sleep(60000);
+        }
+    }
+
+    /** Forked instead of jarsigner, copies its input to a file until the end of the input */
+    public static class InputCopier {
+        public static void main(String[] args) throws Exception {
+            Files.copy(System.in, Paths.get(args[0]));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testSystemInputStreamFed() throws Exception {
+        File copy = new File(folder.getRoot(), "input.txt");
+        ProcessTrackingJarSigner jarSigner = new ProcessTrackingJarSigner(10000) {
+            @Override
+            protected Commandline createCommandLine(JarSignerRequest request, String javaToolFile) {
+                Commandline cli = new Commandline();
+                cli.setExecutable(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+                cli.addArguments("-cp", System.getProperty("java.class.path"), InputCopier.class.getName());
+                cli.addArguments(copy.getPath());
+                return cli;
+            }
+
+            @Override
+            protected InputStream createSystemInputStream() {
+                return new ByteArrayInputStream("changeit".getBytes(StandardCharsets.UTF_8));
+            }
+        };
+        JarSignerSignRequest request = new JarSignerSignRequest();
+        request.setArchive(new File(folder.getRoot(), "archive.jar"));
+
+        JavaToolResult result = jarSigner.execute(request);
+
+        assertEquals(0, result.getExitCode()); // The input was closed at its end
+        assertEquals("changeit", new String(Files.readAllBytes(copy.toPath()), StandardCharsets.UTF_8));
+        assertEquals(0, jarSigner.getProcessCount());
+    }
+
+    @Test(timeout = 30000)
+    public void testInterruptDestroysProcess() throws Exception {
+        ProcessTrackingJarSigner jarSigner = new SleeperJarSigner(10000, false);
+        long start = System.nanoTime();
+        assertInterruptTerminates(jarSigner);
+        // Terminated on request, without waiting for the grace period
+        assertTrue(System.nanoTime() - start < 10_000_000_000L);
+    }
+
+    @Test(timeout = 30000)
+    public void testInterruptKillsProcessIgnoringTerminate() throws Exception {
+        assertInterruptTerminates(new SleeperJarSigner(500, true));
+    }
+
+    private void assertInterruptTerminates(ProcessTrackingJarSigner jarSigner) throws Exception {
+        File dir = folder.getRoot();
+        AtomicReference<JavaToolResult> result = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                JarSignerSignRequest request = new JarSignerSignRequest();
+                request.setArchive(new File(dir, "archive.jar"));
+                result.set(jarSigner.execute(request));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        while (!new File(dir, "started").exists()) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, jarSigner.getProcessCount());
+
+        thread.interrupt();
+        thread.join();
+
+        assertEquals(0, jarSigner.getProcessCount());
+        assertNotNull(result.get().getExecutionException());
+        assertTrue("asked to terminate first", new File(dir, "terminating").exists());
+    }
+
+    private static class SleeperJarSigner extends ProcessTrackingJarSigner {
+        private final boolean ignoreTerminate;
+
+        SleeperJarSigner(long destroyGraceMillis, boolean ignoreTerminate) {
+            super(destroyGraceMillis);
+            this.ignoreTerminate = ignoreTerminate;
+        }
+
+        @Override
+        protected Commandline createCommandLine(JarSignerRequest request, String javaToolFile) {
+            Commandline cli = new Commandline();
+            cli.setExecutable(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+            cli.addArguments("-cp", System.getProperty("java.class.path"), Sleeper.class.getName());
+            cli.addArguments(request.getArchive().getParent());
+            if (ignoreTerminate) {
+                cli.addArguments("ignore");
+            }
+            return cli;
+        }
+    }
+}
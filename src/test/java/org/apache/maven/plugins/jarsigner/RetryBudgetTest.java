@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RetryBudgetTest {
+
+    @Test
+    public void testNoLimit() {
+        RetryBudget retryBudget = new RetryBudget(0, 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(retryBudget.tryAcquireRetry());
+        }
+    }
+
+    @Test
+    public void testPercentOfRequests() {
+        RetryBudget retryBudget = new RetryBudget(20, 0);
+        for (int i = 0; i < 10; i++) {
+            retryBudget.registerRequest();
+        }
+        assertTrue(retryBudget.tryAcquireRetry());
+        assertTrue(retryBudget.tryAcquireRetry());
+        assertFalse(retryBudget.tryAcquireRetry());
+
+        // More requests give more budget
+        for (int i = 0; i < 5; i++) {
+            retryBudget.registerRequest();
+        }
+        assertTrue(retryBudget.tryAcquireRetry());
+        assertFalse(retryBudget.tryAcquireRetry());
+    }
+
+    @Test
+    public void testMinRetries() {
+        RetryBudget retryBudget = new RetryBudget(20, 2);
+        retryBudget.registerRequest();
+        assertTrue(retryBudget.tryAcquireRetry());
+        assertTrue(retryBudget.tryAcquireRetry());
+        assertFalse(retryBudget.tryAcquireRetry());
+    }
+}
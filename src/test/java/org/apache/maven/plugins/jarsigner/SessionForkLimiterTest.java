@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.shared.jarsigner.JarSigner;
+import org.apache.maven.shared.jarsigner.JarSignerSignRequest;
+import org.apache.maven.shared.utils.cli.javatool.JavaToolException;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.apache.maven.plugins.jarsigner.TestJavaToolResults.RESULT_OK;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SessionForkLimiterTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 30000)
+    public void testLimitSharedBetweenJarSigners() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        JarSigner jarSigner = mock(JarSigner.class);
+        when(jarSigner.execute(any())).then(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            release.await();
+            running.decrementAndGet();
+            return RESULT_OK;
+        });
+
+        // Two "modules" each wrapping the JarSigner, sharing one limit
+        SessionForkLimiter forkLimiter = new SessionForkLimiter(2);
+        JarSigner module1 = forkLimiter.limit(jarSigner);
+        JarSigner module2 = forkLimiter.limit(jarSigner);
+
+        Future<?> f1 = executor.submit(() -> module1.execute(new JarSignerSignRequest()));
+        Future<?> f2 = executor.submit(() -> module1.execute(new JarSignerSignRequest()));
+        Future<?> f3 = executor.submit(() -> module2.execute(new JarSignerSignRequest()));
+        Future<?> f4 = executor.submit(() -> module2.execute(new JarSignerSignRequest()));
+
+        // Only two may be started while the first ones are blocked
+        verify(jarSigner, timeout(10000).times(2)).execute(any());
+        Thread.sleep(200);
+        verify(jarSigner, times(2)).execute(any());
+
+        release.countDown();
+        for (Future<?> future : new Future<?>[] {f1, f2, f3, f4}) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        verify(jarSigner, times(4)).execute(any());
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testInterruptedWhileWaiting() throws Exception {
+        SessionForkLimiter forkLimiter = new SessionForkLimiter(1);
+        JarSigner limited = forkLimiter.limit(mock(JarSigner.class));
+
+        Thread.currentThread().interrupt();
+        assertThrows(JavaToolException.class, () -> limited.execute(new JarSignerSignRequest()));
+        assertTrue(Thread.interrupted()); // Interrupt status is kept (and cleared here)
+    }
+}
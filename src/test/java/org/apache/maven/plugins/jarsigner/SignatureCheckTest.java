@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.ZipFile;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SignatureCheckTest {
+
+    @ClassRule
+    public static TemporaryFolder keystoreFolder = new TemporaryFolder();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File signJar() throws Exception {
+        return TestArtifacts.createSignedJarFile(
+                folder.newFile("signed.jar"), new File(keystoreFolder.getRoot(), "keystore.p12"));
+    }
+
+    @Test
+    public void testValidSignature() throws Exception {
+        assertTrue(SignatureCheck.verify(signJar()));
+    }
+
+    @Test
+    public void testNotSigned() throws Exception {
+        assertFalse(SignatureCheck.verify(TestArtifacts.createDummyZipFile(folder.newFile("unsigned.jar"))));
+        assertFalse(SignatureCheck.verify(TestArtifacts.createDummySignedJarFile(folder.newFile("dummy.jar"))));
+    }
+
+    @Test
+    public void testChangedSignatureFile() throws Exception {
+        File archive = signJar();
+        String signatureFile;
+        try (ZipFile zipFile = new ZipFile(archive);
+                InputStream in = zipFile.getInputStream(zipFile.getEntry("META-INF/TEST.SF"))) {
+            signatureFile = new String(TestArtifacts.readAllBytes(in), StandardCharsets.UTF_8);
+        }
+
+        // A valid manifest digest, but no longer the signed content
+        File changed = folder.newFile("TEST.SF");
+        Files.write(
+                changed.toPath(),
+                signatureFile
+                        .replace("Signature-Version: 1.0", "Signature-Version: 1.1")
+                        .getBytes(StandardCharsets.UTF_8));
+        ArchiveRewriter.replaceEntries(archive, Collections.singletonMap("META-INF/TEST.SF", changed));
+
+        assertFalse(SignatureCheck.verify(archive));
+    }
+}
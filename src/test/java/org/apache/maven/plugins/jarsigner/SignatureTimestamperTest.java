@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.Proxy;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class SignatureTimestamperTest {
+    private static final byte[] SIGNATURE = {1, 2, 3, 4, 5, 6, 7, 8};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestTsaServer tsaServer;
+    private SignatureTimestamper timestamper =
+            new SignatureTimestamper(new TsaClient(url -> Proxy.NO_PROXY, Duration.ofSeconds(10)));
+
+    @Before
+    public void setUp() throws Exception {
+        tsaServer = new TestTsaServer();
+    }
+
+    @After
+    public void tearDown() {
+        tsaServer.close();
+    }
+
+    @Test
+    public void testTimestampAddedToSignerInfo() throws Exception {
+        File archive = folder.newFile("archive.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.putNextEntry(new ZipEntry("META-INF/MYALIAS.SF"));
+            out.putNextEntry(new ZipEntry("META-INF/MYALIAS.RSA"));
+            out.write(TestTsaServer.createSignatureBlock(SIGNATURE));
+            out.putNextEntry(new ZipEntry("App.class"));
+        }
+
+        assertTrue(timestamper.timestamp(archive, "MYALIAS", tsaServer.getUrl(), null, "SHA-256"));
+
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            List<String> names = Collections.list(zipFile.entries()).stream()
+                    .map(ZipEntry::getName)
+                    .collect(Collectors.toList());
+            assertEquals(
+                    Arrays.asList("META-INF/MANIFEST.MF", "META-INF/MYALIAS.SF", "META-INF/MYALIAS.RSA", "App.class"),
+                    names);
+            byte[] signatureBlock;
+            try (InputStream in = zipFile.getInputStream(zipFile.getEntry("META-INF/MYALIAS.RSA"))) {
+                signatureBlock = TestArtifacts.readAllBytes(in);
+            }
+            Der.Element token = TestTsaServer.getTimestampToken(signatureBlock);
+            assertNotNull(token);
+
+            // The timestamp is for the signature value
+            byte[] expectedImprint = Der.sequence(
+                    Der.sequence(Der.objectIdentifier("2.16.840.1.101.3.4.2.1"), Der.nullValue()),
+                    Der.octetString(MessageDigest.getInstance("SHA-256").digest(SIGNATURE)));
+            assertArrayEquals(expectedImprint, TestTsaServer.getMessageImprint(token));
+        }
+
+        // Already timestamped signatures are left as they are
+        assertFalse(timestamper.timestamp(archive, "MYALIAS", tsaServer.getUrl(), null, "SHA-256"));
+        assertEquals(1, tsaServer.getRequestCount());
+    }
+
+    /** Like jarsigner, SHA-384 is used for the message imprint if no digest algorithm is given */
+    @Test
+    public void testDefaultDigestAlgorithm() throws Exception {
+        byte[] signatureBlock = timestamper.addTimestamps(
+                TestTsaServer.createSignatureBlock(SIGNATURE), tsaServer.getUrl(), null, null);
+
+        byte[] expectedImprint = Der.sequence(
+                Der.sequence(Der.objectIdentifier("2.16.840.1.101.3.4.2.2"), Der.nullValue()),
+                Der.octetString(MessageDigest.getInstance("SHA-384").digest(SIGNATURE)));
+        assertArrayEquals(
+                expectedImprint, TestTsaServer.getMessageImprint(TestTsaServer.getTimestampToken(signatureBlock)));
+    }
+
+    /** A malformed response fails like a failed request, so it is retried or another TSA server is used */
+    @Test
+    public void testMalformedResponse() throws Exception {
+        File archive = folder.newFile("archive.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            out.putNextEntry(new ZipEntry("META-INF/MYALIAS.RSA"));
+            out.write(TestTsaServer.createSignatureBlock(SIGNATURE));
+        }
+        List<byte[]> responses = Arrays.asList(
+                Der.sequence(),
+                Der.sequence(Der.sequence(Der.encode(Der.INTEGER))),
+                TestTsaServer.createResponseWithTstInfo(Der.sequence(Der.integer(BigInteger.ONE))));
+
+        for (byte[] response : responses) {
+            tsaServer.respondNextWith(response);
+            assertThrows(
+                    IOException.class, () -> timestamper.timestamp(archive, "MYALIAS", tsaServer.getUrl(), null, null));
+        }
+        assertEquals(responses.size(), tsaServer.getRequestCount());
+    }
+
+    @Test
+    public void testEmptySignedData() throws Exception {
+        byte[] signatureBlock = Der.sequence(
+                Der.objectIdentifier("1.2.840.113549.1.7.2"), Der.encode(Der.contextSpecific(0), Der.sequence()));
+
+        assertThrows(
+                IOException.class, () -> timestamper.addTimestamps(signatureBlock, tsaServer.getUrl(), null, null));
+        assertEquals(0, tsaServer.getRequestCount());
+    }
+
+    @Test
+    public void testMissingSignatureBlock() throws Exception {
+        File archive = folder.newFile("archive.jar");
+        TestArtifacts.createDummyZipFile(archive);
+
+        try {
+            timestamper.timestamp(archive, "MYALIAS", tsaServer.getUrl(), null, null);
+            fail("Expected failure");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("META-INF/MYALIAS"));
+        }
+        assertEquals(0, tsaServer.getRequestCount());
+    }
+
+    @Test
+    public void testGetSignatureName() {
+        assertEquals("MY_ALIAS", SignatureTimestamper.getSignatureName(null, "my.alias-with-long-name"));
+        assertEquals("SIGN-1", SignatureTimestamper.getSignatureName("sign-1", "myalias"));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+
+import org.apache.maven.plugins.jarsigner.TsaSelector.TsaServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SigningMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SigningMetrics metrics = new SigningMetrics();
+
+    @Test
+    public void testCounters() throws Exception {
+        metrics.archiveProcessed();
+        metrics.archiveProcessed();
+        metrics.signed(1000);
+        metrics.signed(24);
+        metrics.retry();
+        metrics.backoff(Duration.ofMillis(1500));
+
+        String text = write();
+
+        assertThat(text, containsString("# TYPE maven_jarsigner_archives_processed_total counter\n"));
+        assertThat(text, containsString("\nmaven_jarsigner_archives_processed_total 2\n"));
+        assertThat(text, containsString("\nmaven_jarsigner_signed_bytes_total 1024\n"));
+        assertThat(text, containsString("\nmaven_jarsigner_retries_total 1\n"));
+        assertThat(text, containsString("\nmaven_jarsigner_retry_backoff_seconds_total 1.5\n"));
+    }
+
+    @Test
+    public void testTsaHistogram() throws Exception {
+        TsaSelector tsaSelector =
+                new TsaSelector(new String[] {"http://tsa\"1", "http://tsa2"}, new String[0], new String[0], null);
+        TsaServer tsa1 = tsaSelector.getServers().get(0);
+        TsaServer tsa2 = tsaSelector.getServers().get(1);
+        tsaSelector.leaseOf(tsa1).withListener(metrics::tsaOutcome).success(Duration.ofMillis(200));
+        tsaSelector.leaseOf(tsa1).withListener(metrics::tsaOutcome).success(Duration.ofSeconds(3));
+        tsaSelector.leaseOf(tsa1).withListener(metrics::tsaOutcome).success(Duration.ofSeconds(100));
+        tsaSelector.leaseOf(tsa2).withListener(metrics::tsaOutcome).failure();
+
+        String text = write();
+
+        assertThat(text, containsString("\nmaven_jarsigner_tsa_requests_total{tsa=\"http://tsa\\\"1\"} 3\n"));
+        assertThat(text, containsString("\nmaven_jarsigner_tsa_requests_total{tsa=\"http://tsa2\"} 1\n"));
+        assertThat(text, containsString("\nmaven_jarsigner_tsa_failures_total{tsa=\"http://tsa\\\"1\"} 0\n"));
+        assertThat(text, containsString("\nmaven_jarsigner_tsa_failures_total{tsa=\"http://tsa2\"} 1\n"));
+        String bucket = "maven_jarsigner_tsa_request_duration_seconds_bucket{tsa=\"http://tsa\\\"1\",le=";
+        assertThat(text, containsString("\n" + bucket + "\"0.1\"} 0\n"));
+        assertThat(text, containsString("\n" + bucket + "\"0.25\"} 1\n"));
+        assertThat(text, containsString("\n" + bucket + "\"5.0\"} 2\n"));
+        assertThat(text, containsString("\n" + bucket + "\"60.0\"} 2\n"));
+        assertThat(text, containsString("\n" + bucket + "\"+Inf\"} 3\n"));
+        assertThat(
+                text,
+                containsString("\nmaven_jarsigner_tsa_request_duration_seconds_sum{tsa=\"http://tsa\\\"1\"} 103.2\n"));
+        assertThat(
+                text, containsString("\nmaven_jarsigner_tsa_request_duration_seconds_count{tsa=\"http://tsa2\"} 0\n"));
+    }
+
+    @Test
+    public void testThreadUtilization() throws Exception {
+        metrics.poolUsage("sign", 4, Duration.ofSeconds(10), Duration.ofSeconds(30));
+        metrics.poolUsage("sign", 4, Duration.ofSeconds(10), Duration.ofSeconds(10));
+
+        assertThat(write(), containsString("\nmaven_jarsigner_thread_utilization_ratio{pool=\"sign\"} 0.5\n"));
+    }
+
+    @Test
+    public void testWriteFile() throws Exception {
+        metrics.archiveProcessed();
+        File file = new File(folder.getRoot(), "textfile/jarsigner.prom");
+
+        metrics.write(file);
+        metrics.archiveProcessed();
+        metrics.write(file); // Replaced
+
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertEquals(write(), text);
+        assertArrayEquals(new String[] {"jarsigner.prom"}, file.getParentFile().list());
+    }
+
+    private String write() throws Exception {
+        StringWriter writer = new StringWriter();
+        metrics.write(writer);
+        return writer.toString();
+    }
+}
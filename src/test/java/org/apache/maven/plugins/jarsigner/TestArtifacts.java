@@ -18,10 +18,16 @@
  */
 package org.apache.maven.plugins.jarsigner;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -90,6 +96,57 @@ class TestArtifacts {
         return jarFile;
     }
 
+    /**
+     * Create a JAR signed by the jarsigner tool of the running JDK. The key is generated into the given keystore,
+     * unless it exists already.
+     */
+    static File createSignedJarFile(File jarFile, File keystore) throws IOException, InterruptedException {
+        if (!keystore.exists()) {
+            runJdkTool(
+                    "keytool",
+                    "-genkeypair",
+                    "-keystore",
+                    keystore.getPath(),
+                    "-storepass",
+                    "changeit",
+                    "-alias",
+                    "test",
+                    "-keyalg",
+                    "RSA",
+                    "-keysize",
+                    "2048",
+                    "-dname",
+                    "CN=Test",
+                    "-validity",
+                    "1");
+        }
+        createDummyZipFile(jarFile);
+        runJdkTool("jarsigner", "-keystore", keystore.getPath(), "-storepass", "changeit", jarFile.getPath(), "test");
+        return jarFile;
+    }
+
+    private static void runJdkTool(String tool, String... arguments) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), tool).getPath());
+        command.addAll(Arrays.asList(arguments));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(readAllBytes(process.getInputStream()), Charset.defaultCharset());
+        if (process.waitFor() != 0) {
+            throw new IOException(tool + " failed: " + output);
+        }
+    }
+
+    /** Reads all bytes of a stream, like {@code InputStream.readAllBytes()} of Java 9 */
+    static byte[] readAllBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
     /** Create a dummy XML file, for example to simulate a pom.xml file */
     static File createDummyXMLFile(File xmlFile) throws IOException {
         Files.write(xmlFile.toPath(), "<project/>".getBytes());
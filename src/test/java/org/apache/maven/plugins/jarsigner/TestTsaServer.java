@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test utility acting as an RFC 3161 TSA server on localhost. Responds with a synthetic timestamp token, that has the
+ * structure of a real token but is not signed. Also creates synthetic signature blocks to timestamp.
+ */
+class TestTsaServer implements AutoCloseable {
+    private static final byte[] SIGNED_DATA_OID = Der.objectIdentifier("1.2.840.113549.1.7.2");
+    private static final byte[] TST_INFO_OID = Der.objectIdentifier("1.2.840.113549.1.9.16.1.4");
+    private static final byte[] DATA_OID = Der.objectIdentifier("1.2.840.113549.1.7.1");
+    static final String POLICY_ID = "1.2.3.4.5";
+
+    private final HttpServer server;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private volatile byte[] nextResponse;
+
+    TestTsaServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/tsa";
+    }
+
+    int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /** Makes the next request succeed with HTTP status 200, but with the given response instead of a token */
+    void respondNextWith(byte[] response) {
+        nextResponse = response;
+    }
+
+    /** Makes the next requests fail with HTTP status 500 */
+    void failNextRequests(int count) {
+        failuresLeft.set(count);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        byte[] response;
+        int status;
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] request = TestArtifacts.readAllBytes(in);
+            if (failuresLeft.getAndDecrement() > 0) {
+                status = 500;
+                response = "Failure".getBytes(StandardCharsets.UTF_8);
+            } else if (nextResponse != null) {
+                status = 200;
+                response = nextResponse;
+                nextResponse = null;
+            } else {
+                status = 200;
+                response = createResponse(request);
+            }
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/timestamp-reply");
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    /** Creates a TimeStampResp with a token for the message imprint and nonce of a TimeStampReq */
+    private static byte[] createResponse(byte[] request) throws IOException {
+        List<Der.Element> requestElements = Der.parse(request).getChildren();
+        byte[] messageImprint = requestElements.get(1).getEncoded();
+        byte[] nonce = new byte[0];
+        for (Der.Element element : requestElements.subList(2, requestElements.size())) {
+            if (element.getTag() == Der.INTEGER) {
+                nonce = element.getEncoded();
+            }
+        }
+
+        byte[] tstInfo = Der.sequence(
+                Der.integer(BigInteger.ONE),
+                Der.objectIdentifier(POLICY_ID),
+                messageImprint,
+                Der.integer(BigInteger.valueOf(4711)),
+                Der.encode(Der.GENERALIZED_TIME, "20240101120000Z".getBytes(StandardCharsets.US_ASCII)),
+                nonce);
+        return createResponseWithTstInfo(tstInfo);
+    }
+
+    /** Creates a granted TimeStampResp with a token having the given TSTInfo */
+    static byte[] createResponseWithTstInfo(byte[] tstInfo) {
+        byte[] token = Der.sequence(
+                SIGNED_DATA_OID,
+                Der.encode(
+                        Der.contextSpecific(0),
+                        Der.sequence(
+                                Der.integer(BigInteger.valueOf(3)),
+                                Der.setOf(new ArrayList<>()),
+                                Der.sequence(
+                                        TST_INFO_OID, Der.encode(Der.contextSpecific(0), Der.octetString(tstInfo))),
+                                Der.setOf(new ArrayList<>()))));
+        return Der.sequence(Der.sequence(Der.integer(BigInteger.ZERO)), token);
+    }
+
+    /** Creates a PKCS #7 signature block with a single SignerInfo, having the given signature value */
+    static byte[] createSignatureBlock(byte[] signature) {
+        byte[] sha256 = Der.sequence(Der.objectIdentifier("2.16.840.1.101.3.4.2.1"), Der.nullValue());
+        byte[] signerInfo = Der.sequence(
+                Der.integer(BigInteger.ONE),
+                Der.sequence(Der.sequence(), Der.integer(BigInteger.TEN)), // issuerAndSerialNumber
+                sha256,
+                Der.sequence(Der.objectIdentifier("1.2.840.113549.1.1.11"), Der.nullValue()),
+                Der.octetString(signature));
+        return Der.sequence(
+                SIGNED_DATA_OID,
+                Der.encode(
+                        Der.contextSpecific(0),
+                        Der.sequence(
+                                Der.integer(BigInteger.ONE),
+                                Der.encode(Der.SET, sha256),
+                                Der.sequence(DATA_OID),
+                                Der.encode(Der.SET, signerInfo))));
+    }
+
+    /** Gets the timestamp token of the single SignerInfo of a signature block, or {@code null} if it has none */
+    static Der.Element getTimestampToken(byte[] signatureBlock) throws IOException {
+        List<Der.Element> signedData = Der.parse(signatureBlock)
+                .getChild(1, Der.contextSpecific(0))
+                .getChild(0, Der.SEQUENCE)
+                .getChildren();
+        List<Der.Element> signerInfo =
+                signedData.get(signedData.size() - 1).getChild(0, Der.SEQUENCE).getChildren();
+        Der.Element last = signerInfo.get(signerInfo.size() - 1);
+        if (last.getTag() != Der.contextSpecific(1)) {
+            return null;
+        }
+        Der.Element attribute = last.getChild(0, Der.SEQUENCE);
+        return attribute.getChild(1, Der.SET).getChildren().get(0);
+    }
+
+    /** Gets the message imprint of a (synthetic) timestamp token */
+    static byte[] getMessageImprint(Der.Element token) throws IOException {
+        Der.Element content = token.getChild(1, Der.contextSpecific(0))
+                .getChild(0, Der.SEQUENCE)
+                .getChild(2, Der.SEQUENCE)
+                .getChild(1, Der.contextSpecific(0))
+                .getChild(0, Der.OCTET_STRING);
+        return Der.parse(content.getValue()).getChild(2, Der.SEQUENCE).getEncoded();
+    }
+}
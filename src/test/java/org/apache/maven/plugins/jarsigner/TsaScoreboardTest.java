@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Properties;
+
+import org.apache.maven.plugins.jarsigner.TsaSelector.TsaServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TsaScoreboardTest {
+    private static final String[] EMPTY = new String[0];
+    private static final String[] URLS = {"http://url1.com", "http://url2.com"};
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSeedFromEarlierBuild() throws Exception {
+        TsaScoreboard tsaScoreboard = new TsaScoreboard(new File(folder.getRoot(), "dir/scoreboard.properties"));
+
+        TsaSelector earlierBuild = new TsaSelector(URLS, EMPTY, EMPTY, null);
+        TsaServer failing = earlierBuild.getServers().get(0);
+        earlierBuild.leaseOf(failing).failure();
+        earlierBuild.leaseOf(failing).failure();
+        earlierBuild.leaseOf(earlierBuild.getServers().get(1)).success(Duration.ofMillis(300));
+        tsaScoreboard.update(earlierBuild, NOW);
+
+        TsaSelector tsaSelector = new TsaSelector(URLS, EMPTY, EMPTY, null);
+        tsaScoreboard.seed(tsaSelector, NOW);
+
+        assertEquals("http://url2.com", tsaSelector.lease().getServer().getTsaUrl());
+        assertEquals(2L, tsaSelector.getServers().get(0).getFailureCount());
+        assertEquals(300, tsaSelector.getServers().get(1).getLatencyMillis());
+
+        // Seeding again, like another execution sharing the selector, does not add the failures again
+        tsaScoreboard.seed(tsaSelector, NOW);
+        assertEquals(2L, tsaSelector.getServers().get(0).getFailureCount());
+    }
+
+    @Test
+    public void testFailuresDecay() throws Exception {
+        TsaScoreboard tsaScoreboard = new TsaScoreboard(folder.newFile("scoreboard.properties"));
+        TsaSelector earlierBuild = new TsaSelector(URLS, EMPTY, EMPTY, null);
+        for (int i = 0; i < 4; i++) {
+            earlierBuild.leaseOf(earlierBuild.getServers().get(0)).failure();
+        }
+        tsaScoreboard.update(earlierBuild, NOW);
+
+        TsaSelector tsaSelector = new TsaSelector(URLS, EMPTY, EMPTY, null);
+        tsaScoreboard.seed(
+                tsaSelector, NOW + TsaScoreboard.HALF_LIFE.multipliedBy(2).toMillis());
+
+        assertEquals(1L, tsaSelector.getServers().get(0).getFailureCount());
+    }
+
+    /** A server with only failures recorded has an unknown latency, so it is not ranked as the fastest */
+    @Test
+    public void testSeedFailuresOnly() throws Exception {
+        TsaScoreboard tsaScoreboard = new TsaScoreboard(folder.newFile("scoreboard.properties"));
+        TsaSelector earlierBuild = new TsaSelector(URLS, EMPTY, EMPTY, null);
+        earlierBuild.leaseOf(earlierBuild.getServers().get(0)).failure();
+        earlierBuild.leaseOf(earlierBuild.getServers().get(1)).success(Duration.ofMillis(300));
+        tsaScoreboard.update(earlierBuild, NOW);
+
+        // The single failure has decayed away, so both servers have no failures
+        TsaSelector tsaSelector = new TsaSelector(URLS, EMPTY, EMPTY, null);
+        tsaScoreboard.seed(
+                tsaSelector, NOW + TsaScoreboard.HALF_LIFE.multipliedBy(2).toMillis());
+
+        assertEquals(0L, tsaSelector.getServers().get(0).getFailureCount());
+        assertEquals(-1, tsaSelector.getServers().get(0).getLatencyMillis());
+        assertEquals("http://url2.com", tsaSelector.lease().getServer().getTsaUrl());
+    }
+
+    @Test
+    public void testOnlyNewStatisticsAdded() throws Exception {
+        File file = folder.newFile("scoreboard.properties");
+        TsaScoreboard tsaScoreboard = new TsaScoreboard(file);
+        TsaSelector tsaSelector = new TsaSelector(URLS, EMPTY, EMPTY, null);
+        tsaSelector.leaseOf(tsaSelector.getServers().get(0)).failure();
+        tsaScoreboard.update(tsaSelector, NOW);
+        tsaSelector.leaseOf(tsaSelector.getServers().get(0)).failure();
+        tsaScoreboard.update(tsaSelector, NOW);
+        tsaScoreboard.update(tsaSelector, NOW);
+
+        Properties statistics = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            statistics.load(in);
+        }
+        assertEquals(2.0, Double.parseDouble(statistics.getProperty("http://url1.com.failures")), 0.001);
+        assertNull(statistics.getProperty("http://url2.com.failures"));
+    }
+}
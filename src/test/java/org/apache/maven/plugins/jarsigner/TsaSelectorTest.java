@@ -18,6 +18,9 @@
  */
 package org.apache.maven.plugins.jarsigner;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -39,41 +42,58 @@ public class TsaSelectorTest {
     @Test
     public void testNullInit() {
         tsaSelector = new TsaSelector(EMPTY, EMPTY, EMPTY, null);
-        tsaServer = tsaSelector.getServer();
+        tsaServer = tsaSelector.lease().getServer();
         assertNull(tsaServer.getTsaUrl());
         assertNull(tsaServer.getTsaAlias());
         assertNull(tsaServer.getTsaPolicyId());
         assertNull(tsaServer.getTsaDigestAlt());
 
         // Make sure "next" server also contains null values
-        tsaServer = tsaSelector.getServer();
+        tsaServer = tsaSelector.lease().getServer();
         assertNull(tsaServer.getTsaUrl());
         assertNull(tsaServer.getTsaAlias());
         assertNull(tsaServer.getTsaPolicyId());
         assertNull(tsaServer.getTsaDigestAlt());
     }
 
+    @Test
+    public void testServerOtherThan() {
+        tsaSelector = new TsaSelector(
+                new String[] {"http://url1.com", "http://url2.com", "http://url3.com"}, EMPTY, EMPTY, null);
+        tsaServer = tsaSelector.lease().getServer();
+        assertEquals(
+                "http://url2.com", tsaSelector.leaseOther(tsaServer).getServer().getTsaUrl());
+
+        tsaSelector.leaseOther(tsaServer).failure();
+        assertEquals(
+                "http://url3.com", tsaSelector.leaseOther(tsaServer).getServer().getTsaUrl());
+
+        // No other server when there is only one
+        tsaSelector = new TsaSelector(new String[] {"http://url1.com"}, EMPTY, EMPTY, null);
+        assertNull(tsaSelector.leaseOther(tsaSelector.lease().getServer()));
+    }
+
     @Test
     public void testFailureCount() {
         tsaSelector = new TsaSelector(
                 new String[] {"http://url1.com", "http://url2.com", "http://url3.com"}, EMPTY, EMPTY, null);
 
-        tsaServer = tsaSelector.getServer();
+        tsaServer = tsaSelector.lease().getServer();
         assertEquals("http://url1.com", tsaServer.getTsaUrl());
         assertNull(tsaServer.getTsaAlias());
         assertNull(tsaServer.getTsaPolicyId());
         assertNull(tsaServer.getTsaDigestAlt());
 
-        tsaSelector.registerFailure();
+        tsaSelector.leaseOf(tsaServer).failure();
 
-        tsaServer = tsaSelector.getServer();
+        tsaServer = tsaSelector.lease().getServer();
         assertEquals("http://url2.com", tsaServer.getTsaUrl());
         assertNull(tsaServer.getTsaAlias());
         assertNull(tsaServer.getTsaPolicyId());
         assertNull(tsaServer.getTsaDigestAlt());
 
         // Should get same server again
-        tsaServer = tsaSelector.getServer();
+        tsaServer = tsaSelector.lease().getServer();
         assertEquals("http://url2.com", tsaServer.getTsaUrl());
         assertNull(tsaServer.getTsaAlias());
         assertNull(tsaServer.getTsaPolicyId());
@@ -88,25 +108,25 @@ public class TsaSelectorTest {
                 new String[] {"http://url1.com", "http://url2.com", "http://url3.com"}, EMPTY, EMPTY, null);
 
         // Register a single failure on the first URL so that the threads will use URL 2
-        TsaServer serverThreadMain = tsaSelector.getServer();
-        tsaSelector.registerFailure();
+        TsaSelector.Lease leaseMain = tsaSelector.lease();
+        leaseMain.failure();
 
         CountDownLatch doneSignal = new CountDownLatch(2); // Indication that both threads has gotten a server
         Semaphore semaphore = new Semaphore(0); // When the threads may continue executing after gotten a server
 
-        AtomicReference<TsaServer> serverThread1 = new AtomicReference<>();
-        AtomicReference<TsaServer> serverThread2 = new AtomicReference<>();
+        AtomicReference<TsaSelector.Lease> leaseThread1 = new AtomicReference<>();
+        AtomicReference<TsaSelector.Lease> leaseThread2 = new AtomicReference<>();
         executor.submit(() -> {
-            serverThread1.set(tsaSelector.getServer());
+            leaseThread1.set(tsaSelector.lease());
             doneSignal.countDown();
             semaphore.acquireUninterruptibly();
-            tsaSelector.registerFailure();
+            leaseThread1.get().failure();
         });
         executor.submit(() -> {
-            serverThread2.set(tsaSelector.getServer());
+            leaseThread2.set(tsaSelector.lease());
             doneSignal.countDown();
             semaphore.acquireUninterruptibly();
-            tsaSelector.registerFailure();
+            leaseThread2.get().failure();
         });
 
         doneSignal.await(); // Wait until both threads has gotten an TsaServer
@@ -115,31 +135,33 @@ public class TsaSelectorTest {
         executor.shutdown();
         executor.awaitTermination(10, TimeUnit.SECONDS);
 
-        assertEquals("http://url1.com", serverThreadMain.getTsaUrl());
-        assertEquals("http://url2.com", serverThread1.get().getTsaUrl());
-        assertEquals("http://url2.com", serverThread2.get().getTsaUrl());
+        assertEquals("http://url1.com", leaseMain.getServer().getTsaUrl());
+        assertEquals("http://url2.com", leaseThread1.get().getServer().getTsaUrl());
+        assertEquals("http://url2.com", leaseThread2.get().getServer().getTsaUrl());
+        assertEquals(2L, leaseThread1.get().getServer().getFailureCount());
 
         // The best URL is now number 3
-        assertEquals("http://url3.com", tsaSelector.getServer().getTsaUrl());
+        TsaSelector.Lease lease = tsaSelector.lease();
+        assertEquals("http://url3.com", lease.getServer().getTsaUrl());
 
         // Trigger a new failure, now URL 1 is best again.
-        tsaSelector.registerFailure();
-        assertEquals("http://url1.com", tsaSelector.getServer().getTsaUrl());
+        lease.failure();
+        assertEquals("http://url1.com", tsaSelector.lease().getServer().getTsaUrl());
     }
 
     @Test
     public void testDigestAlgoritm() {
         tsaSelector = new TsaSelector(
                 new String[] {"http://url1.com", "http://url2.com", "http://url3.com"}, EMPTY, EMPTY, "SHA-512");
-        tsaServer = tsaSelector.getServer();
+        tsaServer = tsaSelector.lease().getServer();
         assertEquals("http://url1.com", tsaServer.getTsaUrl());
         assertNull(tsaServer.getTsaAlias());
         assertNull(tsaServer.getTsaPolicyId());
         assertEquals("SHA-512", tsaServer.getTsaDigestAlt());
 
         // Make sure that the next URL has the same digest algorithm
-        tsaSelector.registerFailure();
-        tsaServer = tsaSelector.getServer();
+        tsaSelector.leaseOf(tsaServer).failure();
+        tsaServer = tsaSelector.lease().getServer();
         assertEquals("http://url2.com", tsaServer.getTsaUrl());
         assertNull(tsaServer.getTsaAlias());
         assertNull(tsaServer.getTsaPolicyId());
@@ -149,29 +171,47 @@ public class TsaSelectorTest {
     @Test
     public void testKeyStoreAliasAndOid() {
         tsaSelector = new TsaSelector(EMPTY, new String[] {"alias1", "alias2"}, new String[] {"1.1", "1.2"}, null);
-        tsaServer = tsaSelector.getServer();
+        tsaServer = tsaSelector.lease().getServer();
         assertNull(tsaServer.getTsaUrl());
         assertEquals("alias1", tsaServer.getTsaAlias());
         assertEquals("1.1", tsaServer.getTsaPolicyId());
 
-        tsaSelector.registerFailure();
-        tsaServer = tsaSelector.getServer();
+        tsaSelector.leaseOf(tsaServer).failure();
+        tsaServer = tsaSelector.lease().getServer();
         assertNull(tsaServer.getTsaUrl());
         assertEquals("alias2", tsaServer.getTsaAlias());
         assertEquals("1.2", tsaServer.getTsaPolicyId());
     }
 
     @Test
-    public void testFailureRegistrationWithoutCurrent() {
+    public void testLeaseReportedOnce() {
         tsaSelector = new TsaSelector(
                 new String[] {"http://url1.com"}, new String[] {"alias1"}, new String[] {"1.1"}, "SHA-384");
-        tsaSelector.registerFailure(); // Should not throw any exception
+        TsaSelector.Lease lease = tsaSelector.lease();
+        lease.failure();
+        lease.failure(); // Should not be registered again
+        lease.success(Duration.ofMillis(100)); // Should not be registered either
+        assertEquals(1L, lease.getServer().getFailureCount());
+        assertEquals(0L, lease.getServer().getSuccessCount());
 
         // Make sure further execution works
-        tsaServer = tsaSelector.getServer();
+        tsaServer = tsaSelector.lease().getServer();
         assertEquals("http://url1.com", tsaServer.getTsaUrl());
         assertEquals("alias1", tsaServer.getTsaAlias());
         assertEquals("1.1", tsaServer.getTsaPolicyId());
         assertEquals("SHA-384", tsaServer.getTsaDigestAlt());
     }
+
+    @Test
+    public void testCancelledLeaseNotRegistered() {
+        tsaSelector = new TsaSelector(new String[] {"http://url1.com", "http://url2.com"}, EMPTY, EMPTY, null);
+        List<TsaServer> outcomes = new ArrayList<>();
+        TsaSelector.Lease lease = tsaSelector.lease().withListener((server, latency) -> outcomes.add(server));
+        lease.cancel();
+        lease.failure(); // Should not be registered after the cancel
+        assertEquals(0L, lease.getServer().getFailureCount());
+        assertEquals(0L, lease.getServer().getSuccessCount());
+        assertTrue(outcomes.isEmpty());
+        assertEquals("http://url1.com", tsaSelector.lease().getServer().getTsaUrl());
+    }
 }
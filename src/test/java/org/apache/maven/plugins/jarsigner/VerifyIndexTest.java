@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.jarsigner;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class VerifyIndexTest {
+    private static final String OPTIONS = "verbose=false";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testVerified() throws Exception {
+        File indexFile = new File(folder.getRoot(), "dir/verify-index.properties");
+        File archive = TestArtifacts.createDummyZipFile(folder.newFile("my-project.jar"));
+        VerifyIndex verifyIndex = new VerifyIndex(indexFile);
+        assertFalse(verifyIndex.isVerified(archive, OPTIONS));
+
+        verifyIndex.add(archive, OPTIONS);
+        verifyIndex.save();
+
+        verifyIndex = new VerifyIndex(indexFile);
+        assertTrue(verifyIndex.isVerified(archive, OPTIONS));
+        assertFalse(verifyIndex.isVerified(archive, "verbose=true"));
+    }
+
+    /** An entry that cannot be parsed, like one edited by hand, means the archive is not verified */
+    @Test
+    public void testMalformedEntry() throws Exception {
+        File indexFile = folder.newFile("verify-index.properties");
+        File archive = TestArtifacts.createDummyZipFile(folder.newFile("my-project.jar"));
+        String contentDigest = FileDigests.sha256(archive);
+        String optionsDigest = FileDigests.sha256(OPTIONS);
+
+        assertMalformed(
+                indexFile, archive, "size:" + archive.lastModified() + ":" + contentDigest + ":" + optionsDigest);
+        assertMalformed(indexFile, archive, archive.length() + ":time:" + contentDigest + ":" + optionsDigest);
+        assertMalformed(indexFile, archive, archive.length() + ":" + contentDigest + ":" + optionsDigest);
+    }
+
+    private static void assertMalformed(File indexFile, File archive, String value) throws Exception {
+        Properties entries = new Properties();
+        entries.setProperty(archive.getAbsolutePath(), value);
+        try (OutputStream out = Files.newOutputStream(indexFile.toPath())) {
+            entries.store(out, null);
+        }
+
+        VerifyIndex verifyIndex = new VerifyIndex(indexFile);
+        assertFalse(verifyIndex.isVerified(archive, OPTIONS));
+
+        // Replaced by a successful verification
+        verifyIndex.add(archive, OPTIONS);
+        assertTrue(verifyIndex.isVerified(archive, OPTIONS));
+    }
+}